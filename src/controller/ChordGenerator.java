@@ -9,11 +9,6 @@ import notes.types.ChordFunction;
 
 public class ChordGenerator {
 	
-	/**
-	 * The random number generator to use
-	 */
-	private static final Random randomizer = new Random();
-	
 	/**
 	 * Generates a random chord off of a tonic chord.
 	 * 
@@ -22,10 +17,12 @@ public class ChordGenerator {
 	 * 			this one
 	 * @param currentKey
 	 * 			This song's current key
+	 * @param randomizer
+	 * 			The random number generator to use
 	 * @return A random chord
 	 */
 	public static Chord generateChordOffTonic(int beatsUntilLastMeasure,
-			Key currentKey) {
+			Key currentKey, Random randomizer) {
 		TreeMap<Double, ChordFunction> chordFunctions = new TreeMap<>();
 		
 		// If there are two beats until the last measure, you don't want to
@@ -46,7 +43,7 @@ public class ChordGenerator {
 			chordFunctions.put(1.0, ChordFunction.DOMINANT);
 		}
 		
-		return pickAChord(currentKey, chordFunctions);
+		return pickAChord(currentKey, chordFunctions, randomizer);
 	}
 	
 	/**
@@ -57,10 +54,12 @@ public class ChordGenerator {
 	 * 			this one
 	 * @param currentKey
 	 * 			This song's current key
+	 * @param randomizer
+	 * 			The random number generator to use
 	 * @return A random chord
 	 */
 	public static Chord generateChordOffSubdominant(int beatsUntilLastMeasure,
-			Key currentKey) {
+			Key currentKey, Random randomizer) {
 		TreeMap<Double, ChordFunction> chordFunctions = new TreeMap<>();
 		
 		// If the next beat starts the last measure, resolve the half-cadence.
@@ -76,7 +75,7 @@ public class ChordGenerator {
 			chordFunctions.put(1.0, ChordFunction.DOMINANT);
 		}
 		
-		return pickAChord(currentKey, chordFunctions);
+		return pickAChord(currentKey, chordFunctions, randomizer);
 	}
 	
 	/**
@@ -99,10 +98,12 @@ public class ChordGenerator {
 	 * 			this one
 	 * @param currentKey
 	 * 			This song's current key
+	 * @param randomizer
+	 * 			The random number generator to use
 	 * @return A random chord
 	 */
 	public static Chord generateChordOffDominant(int beatsUntilLastMeasure,
-			Key currentKey) {
+			Key currentKey, Random randomizer) {
 		TreeMap<Double, ChordFunction> chordFunctions = new TreeMap<>();
 		
 		// If there is one beat until the last measure, you don't want to
@@ -124,7 +125,7 @@ public class ChordGenerator {
 			chordFunctions.put(1.0, ChordFunction.TONIC);
 		}
 		
-		return pickAChord(currentKey, chordFunctions);
+		return pickAChord(currentKey, chordFunctions, randomizer);
 		
 	}
 	
@@ -135,10 +136,12 @@ public class ChordGenerator {
 	 * 			The current key of the song
 	 * @param chordFunctions
 	 * 			The TreeMap of weighted ChordFunctions to choose from
+	 * @param randomizer
+	 * 			The random number generator to use
 	 * @return A random chord from a random ChordFunction
 	 */
 	private static Chord pickAChord(Key currentKey,
-			TreeMap<Double, ChordFunction> chordFunctions) {
+			TreeMap<Double, ChordFunction> chordFunctions, Random randomizer) {
 		// Use the TreeMap to pick a random ChordFunction
 		Double probability = randomizer.nextDouble();
 		ChordFunction chordFunction
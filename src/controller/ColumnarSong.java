@@ -0,0 +1,320 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import notes.*;
+import notes.scales.Key;
+
+/**
+ * The ColumnarSong class stores a Song as flat arrays instead of Beat
+ * objects.
+ * 
+ * Each voice gets one array of MIDI numbers for the first halves of the beats
+ * and one for the second halves, and every beat gets a chord id and a key id.
+ * The ids index into tables of the Chord and Key objects the song uses. Walking
+ * a voice from start to finish is then a scan over a single byte array.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class ColumnarSong {
+	
+	/**
+	 * The number of voices.
+	 */
+	private int numVoices;
+	
+	/**
+	 * The number of beats.
+	 */
+	private int numBeats;
+	
+	/**
+	 * The tempo, in BPM
+	 */
+	private float beatsPerMinute;
+	
+	/**
+	 * The MIDI numbers played on the first half of each beat, by voice.
+	 */
+	private byte[][] pitchesFirstHalf;
+	
+	/**
+	 * The MIDI numbers played on the second half of each beat, by voice.
+	 */
+	private byte[][] pitchesSecondHalf;
+	
+	/**
+	 * For each beat, a bit per voice saying whether that voice leapt into it.
+	 */
+	private byte[] leaps;
+	
+	/**
+	 * The id of the chord played on each beat.
+	 */
+	private short[] chordIds;
+	
+	/**
+	 * The id of the key each beat was written in.
+	 */
+	private short[] keyIds;
+	
+	/**
+	 * Every chord used by the song, indexed by chord id.
+	 */
+	private Chord[] chords;
+	
+	/**
+	 * Every key used by the song, indexed by key id.
+	 */
+	private Key[] keys;
+	
+	/**
+	 * Constructor. Sets up empty columns for the given number of beats.
+	 * 
+	 * @param numVoices
+	 * 			The number of voices
+	 * @param numBeats
+	 * 			The number of beats
+	 * @param beatsPerMinute
+	 * 			The tempo, in BPM
+	 */
+	private ColumnarSong(int numVoices, int numBeats, float beatsPerMinute) {
+		// A voice's leap flag has to fit in a single byte.
+		if (numVoices > Byte.SIZE) {
+			throw new IllegalArgumentException("Too many voices!");
+		}
+		this.numVoices = numVoices;
+		this.numBeats = numBeats;
+		this.beatsPerMinute = beatsPerMinute;
+		this.pitchesFirstHalf = new byte[numVoices][numBeats];
+		this.pitchesSecondHalf = new byte[numVoices][numBeats];
+		this.leaps = new byte[numBeats];
+		this.chordIds = new short[numBeats];
+		this.keyIds = new short[numBeats];
+	}
+	
+	/**
+	 * Converts a Song into its columnar form.
+	 * 
+	 * @param song
+	 * 			The song to convert
+	 * @return The columnar form of the song
+	 */
+	public static ColumnarSong fromSong(Song song) {
+		return fromBeats(song.getBeatArray(), song.getKeyArray(),
+				song.getNumVoices(), song.getBPM());
+	}
+	
+	/**
+	 * Converts a run of beats into columnar form.
+	 * 
+	 * @param beats
+	 * 			The beats
+	 * @param beatKeys
+	 * 			The key each beat was written in
+	 * @param numVoices
+	 * 			The number of voices
+	 * @param beatsPerMinute
+	 * 			The tempo, in BPM
+	 * @return The columnar form of the beats
+	 */
+	static ColumnarSong fromBeats(Beat[] beats, Key[] beatKeys, int numVoices,
+			float beatsPerMinute) {
+		ColumnarSong ret = new ColumnarSong(numVoices, beats.length,
+				beatsPerMinute);
+		
+		// Chords and keys are shared between beats, so each distinct object
+		// only needs one id.
+		IdentityHashMap<Chord, Short> chordIdMap = new IdentityHashMap<>();
+		IdentityHashMap<Key, Short> keyIdMap = new IdentityHashMap<>();
+		ArrayList<Chord> chordList = new ArrayList<>();
+		ArrayList<Key> keyList = new ArrayList<>();
+		
+		for (int beat = 0; beat < beats.length; beat++) {
+			Note[] firstHalf = beats[beat].getNotesFirstHalf();
+			Note[] secondHalf = beats[beat].getNotesSecondHalf();
+			boolean[] beatLeaps = beats[beat].getLeaps();
+			
+			// Copy every voice's notes into its columns.
+			int leapMask = 0;
+			for (int voice = 0; voice < ret.numVoices; voice++) {
+				ret.pitchesFirstHalf[voice][beat] =
+						(byte) firstHalf[voice].getMidiNumber();
+				ret.pitchesSecondHalf[voice][beat] =
+						(byte) secondHalf[voice].getMidiNumber();
+				if (beatLeaps[voice]) {
+					leapMask |= 1 << voice;
+				}
+			}
+			ret.leaps[beat] = (byte) leapMask;
+			
+			ret.chordIds[beat] = findId(beats[beat].getChord(), chordIdMap,
+					chordList);
+			ret.keyIds[beat] = findId(beatKeys[beat], keyIdMap, keyList);
+		}
+		
+		ret.chords = chordList.toArray(new Chord[chordList.size()]);
+		ret.keys = keyList.toArray(new Key[keyList.size()]);
+		return ret;
+	}
+	
+	/**
+	 * Converts the columns back into a Song.
+	 * 
+	 * @return A Song with the same beats as this one
+	 */
+	public Song toSong() {
+		if (numBeats == 0) {
+			throw new IllegalStateException("Cannot rebuild an empty song!");
+		}
+		Song song = new Song(keys[keyIds[0]], beatsPerMinute, 0);
+		
+		// Rebuild each beat on top of the one before it.
+		Beat prevBeat = null;
+		for (int beat = 0; beat < numBeats; beat++) {
+			Note[] firstHalf = new Note[numVoices];
+			Note[] secondHalf = new Note[numVoices];
+			boolean[] beatLeaps = new boolean[numVoices];
+			for (int voice = 0; voice < numVoices; voice++) {
+				firstHalf[voice] = new Note(pitchesFirstHalf[voice][beat]);
+				secondHalf[voice] = new Note(pitchesSecondHalf[voice][beat]);
+				beatLeaps[voice] = (leaps[beat] & (1 << voice)) != 0;
+			}
+			
+			Beat newBeat = new Beat(chords[chordIds[beat]], prevBeat,
+					firstHalf, secondHalf, beatLeaps);
+			song.appendBeat(newBeat, keys[keyIds[beat]]);
+			prevBeat = newBeat;
+		}
+		
+		return song;
+	}
+	
+	/**
+	 * Fetches the number of voices.
+	 * 
+	 * @return The number of voices
+	 */
+	public int getNumVoices() {
+		return numVoices;
+	}
+	
+	/**
+	 * Fetches the number of beats.
+	 * 
+	 * @return The number of beats
+	 */
+	public int getNumBeats() {
+		return numBeats;
+	}
+	
+	/**
+	 * Fetches the song's BPM.
+	 * 
+	 * @return the song's BPM
+	 */
+	public float getBPM() {
+		return beatsPerMinute;
+	}
+	
+	/**
+	 * Gets the MIDI numbers a voice plays on the first half of each beat.
+	 * The array is shared, not copied, so don't write to it.
+	 * 
+	 * @param voice
+	 * 			The voice to look at
+	 * @return One MIDI number per beat
+	 */
+	public byte[] getPitchesFirstHalf(int voice) {
+		return pitchesFirstHalf[voice];
+	}
+	
+	/**
+	 * Gets the MIDI numbers a voice plays on the second half of each beat.
+	 * The array is shared, not copied, so don't write to it.
+	 * 
+	 * @param voice
+	 * 			The voice to look at
+	 * @return One MIDI number per beat
+	 */
+	public byte[] getPitchesSecondHalf(int voice) {
+		return pitchesSecondHalf[voice];
+	}
+	
+	/**
+	 * Gets the leap flags of each beat, one bit per voice.
+	 * The array is shared, not copied, so don't write to it.
+	 * 
+	 * @return One bitmask per beat
+	 */
+	public byte[] getLeaps() {
+		return leaps;
+	}
+	
+	/**
+	 * Gets the id of the chord played on each beat.
+	 * The array is shared, not copied, so don't write to it.
+	 * 
+	 * @return One chord id per beat
+	 */
+	public short[] getChordIds() {
+		return chordIds;
+	}
+	
+	/**
+	 * Gets the id of the key each beat was written in.
+	 * The array is shared, not copied, so don't write to it.
+	 * 
+	 * @return One key id per beat
+	 */
+	public short[] getKeyIds() {
+		return keyIds;
+	}
+	
+	/**
+	 * Looks up a chord by its id.
+	 * 
+	 * @param chordId
+	 * 			The id from getChordIds()
+	 * @return The chord with that id
+	 */
+	public Chord getChord(int chordId) {
+		return chords[chordId];
+	}
+	
+	/**
+	 * Looks up a key by its id.
+	 * 
+	 * @param keyId
+	 * 			The id from getKeyIds()
+	 * @return The key with that id
+	 */
+	public Key getKey(int keyId) {
+		return keys[keyId];
+	}
+	
+	/**
+	 * Finds the id of an object, giving it the next free id if it doesn't
+	 * have one yet.
+	 * 
+	 * @param value
+	 * 			The object to look up
+	 * @param idMap
+	 * 			The ids handed out so far
+	 * @param table
+	 * 			The objects handed out so far, indexed by id
+	 * @return The object's id
+	 */
+	private static <T> short findId(T value, IdentityHashMap<T, Short> idMap,
+			ArrayList<T> table) {
+		Short id = idMap.get(value);
+		if (id == null) {
+			id = (short) table.size();
+			idMap.put(value, id);
+			table.add(value);
+		}
+		return id;
+	}
+}
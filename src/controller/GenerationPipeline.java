@@ -0,0 +1,378 @@
+package controller;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.MidiEvent;
+
+import notes.*;
+import exceptions.InvalidChordException;
+
+/**
+ * The GenerationPipeline writes a Song in stages, each on its own thread,
+ * so that later beats are being written while earlier ones are ornamented
+ * and turned into MIDI events.
+ * 
+ * The stages are:
+ * 1. Generation, which picks each beat's chord and voices it. The two stay
+ *    together, since a chord that can't be voiced sends the song back to
+ *    pick another one.
+ * 2. Ornamentation, which adds non-chord tones one beat behind.
+ * 3. Encoding, which turns each beat into MIDI events.
+ * 
+ * The stages are connected by bounded queues, so a stage that gets ahead
+ * waits for the one after it to catch up. Generation holds back the last
+ * few beats it writes, since backtracking can still rewrite them, and
+ * backtracking is never allowed past the beats it has handed on.
+ * 
+ * The song itself keeps only the chord tones. The ornamented beats come out
+ * of take().
+ * 
+ * @author Dan Pang
+ *
+ */
+public class GenerationPipeline {
+	
+	/**
+	 * How many of the newest beats to hold back from the later stages, in
+	 * case backtracking rewrites them. A measure is plenty.
+	 */
+	private static final int REWRITE_LAG = 4;
+	
+	/**
+	 * Marks the end of the song in a queue
+	 */
+	private static final EncodedBeat END = new EncodedBeat(-1, null);
+	
+	/**
+	 * How often take() checks whether the pipeline has failed or been
+	 * cancelled while it waits, in milliseconds
+	 */
+	private static final long WAKE_INTERVAL = 20;
+	
+	/**
+	 * The song being written
+	 */
+	private Song song;
+	
+	/**
+	 * The voiced beats, waiting to be ornamented
+	 */
+	private BlockingQueue<EncodedBeat> voiced;
+	
+	/**
+	 * The ornamented beats, waiting to be encoded
+	 */
+	private BlockingQueue<EncodedBeat> ornamented;
+	
+	/**
+	 * The finished beats, waiting to be taken
+	 */
+	private BlockingQueue<EncodedBeat> encoded;
+	
+	/**
+	 * The thread running each stage
+	 */
+	private Thread[] threads;
+	
+	/**
+	 * Whatever stopped a stage, if something did
+	 */
+	private volatile Throwable failure;
+	
+	/**
+	 * Whether the pipeline has been stopped
+	 */
+	private volatile boolean cancelled;
+	
+	/**
+	 * Constructor. Nothing runs until start() is called.
+	 * 
+	 * @param song
+	 * 			The song to write. It's generated up to its planned length.
+	 * @param queueCapacity
+	 * 			How many beats each stage can get ahead of the next one
+	 */
+	public GenerationPipeline(Song song, int queueCapacity) {
+		// Check for valid input
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException(
+					"Queue capacity must be positive!");
+		}
+		
+		this.song = song;
+		this.voiced = new ArrayBlockingQueue<>(queueCapacity);
+		this.ornamented = new ArrayBlockingQueue<>(queueCapacity);
+		this.encoded = new ArrayBlockingQueue<>(queueCapacity);
+		this.threads = new Thread[] {
+			new Thread(new Stage() {
+				@Override
+				void work() throws Exception {
+					generate();
+				}
+			}, "pipeline-generate"),
+			new Thread(new Stage() {
+				@Override
+				void work() throws InterruptedException {
+					ornament();
+				}
+			}, "pipeline-ornament"),
+			new Thread(new Stage() {
+				@Override
+				void work() throws InterruptedException {
+					encode();
+				}
+			}, "pipeline-encode")
+		};
+	}
+	
+	/**
+	 * Starts every stage.
+	 */
+	public void start() {
+		song.setOrnamenting(false);
+		for (Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+	
+	/**
+	 * Waits for the next finished beat. Gives up as soon as a stage fails or
+	 * the pipeline is cancelled, even if beats are still waiting.
+	 * 
+	 * @return The beat, or null once the song is over or cancelled
+	 * @throws InterruptedException
+	 * 			If the thread is interrupted while waiting
+	 * @throws IllegalStateException
+	 * 			If a stage failed
+	 */
+	public EncodedBeat take() throws InterruptedException {
+		while (true) {
+			if (failure != null) {
+				throw new IllegalStateException("Generation failed", failure);
+			}
+			if (cancelled) {
+				return null;
+			}
+			EncodedBeat ret = encoded.poll(WAKE_INTERVAL,
+					TimeUnit.MILLISECONDS);
+			if (ret == END) {
+				// Leave the marker for anyone else waiting. There's room,
+				// since it was just taken out.
+				encoded.offer(END);
+				return null;
+			} else if (ret != null) {
+				return ret;
+			}
+		}
+	}
+	
+	/**
+	 * Stops every stage, and wakes anything waiting in take(). The song is
+	 * left wherever generation got to.
+	 */
+	public void cancel() {
+		cancelled = true;
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+	}
+	
+	/**
+	 * Generates the song, handing each beat on once it's settled.
+	 * 
+	 * @throws InterruptedException
+	 * 			If the stage is cancelled
+	 * @throws InvalidChordException
+	 * 			If the next beat could only be written by rewriting beats
+	 * 			already handed on
+	 */
+	private void generate()
+			throws InterruptedException, InvalidChordException {
+		int plannedBeats = song.getPlannedBeatCount();
+		int handedOn = song.getState().getNumBeats();
+		song.setBacktrackFloor(handedOn);
+		while (song.getState().getNumBeats() < plannedBeats) {
+			song.addBeatAboveFloor();
+			int settled = song.getState().getNumBeats() - REWRITE_LAG;
+			if (settled > handedOn) {
+				handOn(handedOn, settled);
+				handedOn = settled;
+			}
+		}
+		handOn(handedOn, song.getState().getNumBeats());
+		voiced.put(END);
+	}
+	
+	/**
+	 * Hands a run of the song's beats on to ornamentation, and stops
+	 * backtracking from rewriting them.
+	 * 
+	 * @param start
+	 * 			The index of the first beat to hand on
+	 * @param end
+	 * 			The index of the beat after the last one to hand on
+	 * @throws InterruptedException
+	 * 			If the stage is cancelled
+	 */
+	private void handOn(int start, int end) throws InterruptedException {
+		song.setBacktrackFloor(end);
+		
+		// Walk back from the end of the song to pick the beats up.
+		SongState state = song.getState();
+		while (state.getNumBeats() > end) {
+			state = state.getPrevious();
+		}
+		Beat[] beats = new Beat[end - start];
+		for (int indx = beats.length - 1; indx >= 0; indx--) {
+			beats[indx] = state.getLastBeat();
+			state = state.getPrevious();
+		}
+		
+		for (int indx = 0; indx < beats.length; indx++) {
+			voiced.put(new EncodedBeat(start + indx, beats[indx]));
+		}
+	}
+	
+	/**
+	 * Ornaments each beat once the one after it arrives.
+	 * 
+	 * @throws InterruptedException
+	 * 			If the stage is cancelled
+	 */
+	private void ornament() throws InterruptedException {
+		EncodedBeat prev = voiced.take();
+		while (prev != END) {
+			EncodedBeat next = voiced.take();
+			if (next == END) {
+				// The last beat has nothing to lead into.
+				ornamented.put(prev);
+			} else {
+				ornamented.put(new EncodedBeat(prev.index,
+						Ornamenter.ornament(prev.beat, next.beat)));
+			}
+			prev = next;
+		}
+		ornamented.put(END);
+	}
+	
+	/**
+	 * Turns each ornamented beat into MIDI events.
+	 * 
+	 * @throws InterruptedException
+	 * 			If the stage is cancelled
+	 */
+	private void encode() throws InterruptedException {
+		EncodedBeat curr = ornamented.take();
+		while (curr != END) {
+			Note[] firstHalf = curr.beat.getNotesFirstHalf();
+			Note[] secondHalf = curr.beat.getNotesSecondHalf();
+			curr.events = new MidiEvent[firstHalf.length][];
+			for (int voice = 0; voice < firstHalf.length; voice++) {
+				curr.events[voice] = MidiExporter.encodeBeat(
+						firstHalf[voice].getMidiNumber(),
+						secondHalf[voice].getMidiNumber(), curr.index);
+			}
+			encoded.put(curr);
+			curr = ornamented.take();
+		}
+		encoded.put(END);
+	}
+	
+	/**
+	 * Runs a stage, and stops the whole pipeline if it fails so that
+	 * nothing waits forever.
+	 */
+	private abstract class Stage implements Runnable {
+		
+		/**
+		 * Runs the stage.
+		 */
+		@Override
+		public void run() {
+			try {
+				work();
+			} catch (InterruptedException ex) {
+				// Cancelled. Nobody is waiting on the rest of the song.
+			} catch (Throwable ex) {
+				// Errors too, like running out of stack while backtracking.
+				failure = ex;
+				cancel();
+			}
+		}
+		
+		/**
+		 * Does the stage's work.
+		 * 
+		 * @throws Exception
+		 * 			If the stage is cancelled, or fails
+		 */
+		abstract void work() throws Exception;
+	}
+	
+	/**
+	 * A beat on its way through the pipeline.
+	 */
+	public static class EncodedBeat {
+		
+		/**
+		 * The index of the beat in the song
+		 */
+		private int index;
+		
+		/**
+		 * The beat
+		 */
+		private Beat beat;
+		
+		/**
+		 * The beat's MIDI events, by voice. Set by the encoding stage.
+		 */
+		private MidiEvent[][] events;
+		
+		/**
+		 * Constructor.
+		 * 
+		 * @param index
+		 * 			The index of the beat in the song
+		 * @param beat
+		 * 			The beat
+		 */
+		EncodedBeat(int index, Beat beat) {
+			this.index = index;
+			this.beat = beat;
+		}
+		
+		/**
+		 * Fetches the index of the beat in the song.
+		 * 
+		 * @return The index
+		 */
+		public int getIndex() {
+			return index;
+		}
+		
+		/**
+		 * Fetches the ornamented beat.
+		 * 
+		 * @return The beat
+		 */
+		public Beat getBeat() {
+			return beat;
+		}
+		
+		/**
+		 * Fetches a voice's MIDI events for the beat, timed in ticks from
+		 * the start of the song at two ticks per beat.
+		 * 
+		 * @param voice
+		 * 			The voice
+		 * @return The events, in order
+		 */
+		public MidiEvent[] getEvents(int voice) {
+			return events[voice];
+		}
+	}
+}
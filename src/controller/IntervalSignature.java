@@ -0,0 +1,157 @@
+package controller;
+
+import notes.Note;
+
+/**
+ * The IntervalSignature class packs the intervals between every pair of
+ * voices in a voicing into a single long, so that rules about parallel
+ * motion can compare two voicings with a few bitwise operations.
+ * 
+ * Each pair of voices gets four bits holding the distance between them, in
+ * semitones, mod 12. The pair of a lower voice and an upper voice is in
+ * nibble upper * (upper - 1) / 2 + lower, so the nibbles don't depend on the
+ * number of voices. Nibbles no pair uses hold 0xF, which no interval mod 12
+ * can be. Sixteen nibbles fit up to six voices.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class IntervalSignature {
+	
+	/**
+	 * The most voices a signature can hold
+	 */
+	public static final int MAX_VOICES = 6;
+	
+	/**
+	 * A perfect fifth, in semitones mod 12
+	 */
+	public static final int FIFTH = 7;
+	
+	/**
+	 * A perfect octave (or unison), in semitones mod 12
+	 */
+	public static final int OCTAVE = 0;
+	
+	/**
+	 * A one in every nibble
+	 */
+	private static final long ONES = 0x1111111111111111L;
+	
+	/**
+	 * The low three bits of every nibble
+	 */
+	private static final long LOW_BITS = 0x7777777777777777L;
+	
+	/**
+	 * The signature of a voicing with no pairs
+	 */
+	private static final long EMPTY = -1L;
+	
+	/**
+	 * Works out the signature of a voicing.
+	 * 
+	 * @param notes
+	 * 			The notes of the voicing, lowest voice first
+	 * @return The signature
+	 */
+	public static long of(Note[] notes) {
+		// Check for valid input
+		if (notes.length > MAX_VOICES) {
+			throw new IllegalArgumentException("Too many voices!");
+		}
+		
+		long ret = EMPTY;
+		int shift = 0;
+		for (int upper = 1; upper < notes.length; upper++) {
+			int upperPitch = notes[upper].getMidiNumber();
+			for (int lower = 0; lower < upper; lower++) {
+				int interval = Math.abs(upperPitch
+						- notes[lower].getMidiNumber()) % Rules.OCTAVE_LENGTH;
+				ret &= ~(0xFL << shift) | ((long) interval << shift);
+				shift += 4;
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Fetches the interval between two voices out of a signature.
+	 * 
+	 * @param signature
+	 * 			The signature
+	 * @param lower
+	 * 			The lower voice
+	 * @param upper
+	 * 			The upper voice
+	 * @return The distance between the two voices, in semitones, mod 12
+	 */
+	public static int getInterval(long signature, int lower, int upper) {
+		int shift = 4 * (upper * (upper - 1) / 2 + lower);
+		return (int) ((signature >>> shift) & 0xF);
+	}
+	
+	/**
+	 * Finds whether any pair of voices is the given interval apart in both
+	 * voicings.
+	 * 
+	 * @param prevSignature
+	 * 			The signature of the earlier voicing
+	 * @param signature
+	 * 			The signature of the later voicing
+	 * @param interval
+	 * 			The interval to look for, in semitones mod 12
+	 * @return Whether any pair of voices moves in parallel at that interval
+	 */
+	public static boolean hasParallel(long prevSignature, long signature,
+			int interval) {
+		return (findPairs(prevSignature, interval)
+				& findPairs(signature, interval)) != 0;
+	}
+	
+	/**
+	 * Marks every pair of voices that is the given interval apart.
+	 * 
+	 * @param signature
+	 * 			The signature to look in
+	 * @param interval
+	 * 			The interval to look for, in semitones mod 12
+	 * @return A mask with the top bit of each matching pair's nibble set
+	 */
+	public static long findPairs(long signature, int interval) {
+		// XOR turns matching nibbles into zeroes. Adding 7 to the low three
+		// bits of a nibble carries into its top bit unless they're all zero,
+		// and carries never cross into the next nibble.
+		long diff = signature ^ (ONES * interval);
+		return ~(((diff & LOW_BITS) + LOW_BITS) | diff | LOW_BITS);
+	}
+	
+	/**
+	 * Marks every pair of voices that moves in the same direction from one
+	 * voicing to the next. Pairs where either voice stays put don't count.
+	 * 
+	 * @param prevNotes
+	 * 			The earlier voicing
+	 * @param notes
+	 * 			The later voicing
+	 * @return A mask with the top bit of each matching pair's nibble set,
+	 * 		   laid out like a signature
+	 */
+	public static long findSimilarMotion(Note[] prevNotes, Note[] notes) {
+		long ret = 0;
+		int shift = 0;
+		for (int upper = 1; upper < notes.length; upper++) {
+			int upperMotion = Integer.signum(notes[upper].getInterval(
+					prevNotes[upper]));
+			for (int lower = 0; lower < upper; lower++) {
+				int lowerMotion = Integer.signum(notes[lower].getInterval(
+						prevNotes[lower]));
+				if (upperMotion != 0 && upperMotion == lowerMotion) {
+					ret |= 0x8L << shift;
+				}
+				shift += 4;
+			}
+		}
+		return ret;
+	}
+}
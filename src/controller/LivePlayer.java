@@ -0,0 +1,375 @@
+package controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.sound.midi.*;
+
+import notes.Beat;
+
+/**
+ * The LivePlayer plays a song while it's still being written. Each beat is
+ * sent to the synthesizer as soon as it comes out of a GenerationPipeline,
+ * so the first notes sound within a few milliseconds of starting, however
+ * long the song is.
+ * 
+ * Generation doesn't wait for playback. The finished beats are collected
+ * as fast as they come, and wait in a buffer until they're due. If
+ * generation ever falls behind, the player waits for it and carries on from
+ * there, rather than rushing the late notes out all at once.
+ * 
+ * Voice v plays on channel v. The song can also be saved to a MIDI file,
+ * one track per voice like MidiFileWriter always writes. That happens as
+ * soon as the whole song has been written, which is usually long before it
+ * finishes playing. If the song is stopped before then, the file is left
+ * alone.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class LivePlayer {
+	
+	/**
+	 * How many beats each stage of the pipeline can get ahead of the next
+	 */
+	private static final int QUEUE_CAPACITY = 2;
+	
+	/**
+	 * Marks the end of the song in the buffer
+	 */
+	private static final GenerationPipeline.EncodedBeat END =
+			new GenerationPipeline.EncodedBeat(-1, null);
+	
+	/**
+	 * How long after the first beat is ready to play it, in nanoseconds
+	 */
+	private static final long START_DELAY = 5000000;
+	
+	/**
+	 * How late a note can be before playback waits, in nanoseconds
+	 */
+	private static final long SLIP_TOLERANCE = 5000000;
+	
+	/**
+	 * The controller number that stops every note on a channel
+	 */
+	private static final int ALL_NOTES_OFF = 123;
+	
+	/**
+	 * The song to play
+	 */
+	private Song song;
+	
+	/**
+	 * Where the notes are sent
+	 */
+	private Receiver receiver;
+	
+	/**
+	 * Where the song is saved, or null
+	 */
+	private File outputFile;
+	
+	/**
+	 * Writes the song
+	 */
+	private GenerationPipeline pipeline;
+	
+	/**
+	 * The finished beats, waiting to be played
+	 */
+	private BlockingQueue<GenerationPipeline.EncodedBeat> buffer;
+	
+	/**
+	 * Collects the beats from the pipeline and saves the song
+	 */
+	private Thread collector;
+	
+	/**
+	 * Sends the notes when they're due
+	 */
+	private Thread thread;
+	
+	/**
+	 * When start() was called, in nanoseconds
+	 */
+	private long startTime;
+	
+	/**
+	 * How long the first note took to send after start(), in nanoseconds,
+	 * or -1 if it hasn't been sent
+	 */
+	private volatile long timeToFirstNote = -1;
+	
+	/**
+	 * Whatever stopped playback, if something did
+	 */
+	private volatile Exception failure;
+	
+	/**
+	 * Constructor. Nothing plays until start() is called.
+	 * 
+	 * @param song
+	 * 			The song to write and play, from its first beat. It's
+	 * 			generated up to its planned length.
+	 * @param receiver
+	 * 			Where to send the notes
+	 * @param outputFile
+	 * 			Where to save the song as a MIDI file once it's all written,
+	 * 			or null to not save it
+	 */
+	public LivePlayer(Song song, Receiver receiver, File outputFile) {
+		this.song = song;
+		this.receiver = receiver;
+		this.outputFile = outputFile;
+		this.pipeline = new GenerationPipeline(song, QUEUE_CAPACITY);
+		this.buffer = new LinkedBlockingQueue<>();
+		this.collector = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				collect();
+			}
+		}, "live-player-collect");
+		this.collector.setDaemon(true);
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				play();
+			}
+		}, "live-player");
+		this.thread.setDaemon(true);
+	}
+	
+	/**
+	 * Starts writing and playing the song. Returns right away.
+	 */
+	public void start() {
+		startTime = System.nanoTime();
+		pipeline.start();
+		collector.start();
+		thread.start();
+	}
+	
+	/**
+	 * Stops writing and playing the song, and silences any notes still
+	 * sounding. If the song has already been saved, the file is kept.
+	 * 
+	 * @throws InterruptedException
+	 * 			If interrupted while waiting for playback to stop
+	 */
+	public void stop() throws InterruptedException {
+		// The collector isn't interrupted, so that it never leaves a file
+		// half written. Cancelling the pipeline is enough to stop it.
+		pipeline.cancel();
+		thread.interrupt();
+		thread.join();
+		collector.join();
+	}
+	
+	/**
+	 * Waits for the song to finish playing.
+	 * 
+	 * @throws InterruptedException
+	 * 			If interrupted while waiting
+	 * @throws IOException
+	 * 			If the song couldn't be saved
+	 * @throws IllegalStateException
+	 * 			If the song couldn't be written
+	 */
+	public void waitForEnd() throws InterruptedException, IOException {
+		thread.join();
+		collector.join();
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure != null) {
+			throw new IllegalStateException("Playback failed", failure);
+		}
+	}
+	
+	/**
+	 * Gets how long the first note took to play after start() was called.
+	 * 
+	 * @return The time in nanoseconds, or -1 if nothing has played yet
+	 */
+	public long getTimeToFirstNote() {
+		return timeToFirstNote;
+	}
+	
+	/**
+	 * Takes each beat from the pipeline as soon as it's finished and puts it
+	 * in the buffer, then saves the song if all of it was written. Runs on
+	 * the collector's thread.
+	 */
+	private void collect() {
+		List<Beat> beats = new ArrayList<>();
+		try {
+			GenerationPipeline.EncodedBeat beat = pipeline.take();
+			while (beat != null) {
+				buffer.add(beat);
+				beats.add(beat.getBeat());
+				beat = pipeline.take();
+			}
+			
+			// A song that was stopped part way through isn't saved.
+			if (outputFile != null
+					&& beats.size() == song.getPlannedBeatCount()) {
+				new MidiFileWriter().write(ColumnarSong.fromBeats(
+						beats.toArray(new Beat[beats.size()]),
+						song.getKeyArray(), song.getNumVoices(),
+						song.getBPM()), outputFile);
+			}
+		} catch (InterruptedException ex) {
+			// Stopped
+		} catch (IOException | RuntimeException ex) {
+			failure = ex;
+			pipeline.cancel();
+		} finally {
+			buffer.add(END);
+		}
+	}
+	
+	/**
+	 * Takes each beat from the buffer and sends its notes when they're due.
+	 * Runs on the player's thread.
+	 */
+	private void play() {
+		double nanosPerTick = 60e9 / song.getBPM()
+				/ MidiFileWriter.TICKS_PER_BEAT;
+		long origin = -1;
+		try {
+			GenerationPipeline.EncodedBeat beat = buffer.take();
+			while (beat != END) {
+				if (origin < 0) {
+					origin = System.nanoTime() + START_DELAY;
+				}
+				MidiEvent[] events = collectEvents(beat);
+				for (MidiEvent event : events) {
+					long due = origin + Math.round(event.getTick()
+							* nanosPerTick);
+					long now = System.nanoTime();
+					if (due > now) {
+						Thread.sleep((due - now) / 1000000,
+								(int) ((due - now) % 1000000));
+					} else if (now - due > SLIP_TOLERANCE) {
+						// Generation fell behind. Pick up from here.
+						origin += now - due;
+					}
+					receiver.send(event.getMessage(), -1);
+					if (timeToFirstNote < 0) {
+						timeToFirstNote = System.nanoTime() - startTime;
+					}
+				}
+				beat = buffer.take();
+			}
+		} catch (InterruptedException ex) {
+			// Stopped
+		} catch (RuntimeException ex) {
+			failure = ex;
+			pipeline.cancel();
+		} finally {
+			silence();
+		}
+	}
+	
+	/**
+	 * Gathers a beat's events from every voice, moved onto the voice's own
+	 * channel, in the order they're due. Notes stopping come before notes
+	 * starting at the same time.
+	 * 
+	 * @param beat
+	 * 			The beat
+	 * @return The events
+	 */
+	private MidiEvent[] collectEvents(GenerationPipeline.EncodedBeat beat) {
+		int numEvents = 0;
+		for (int voice = 0; voice < song.getNumVoices(); voice++) {
+			numEvents += beat.getEvents(voice).length;
+		}
+		MidiEvent[] ret = new MidiEvent[numEvents];
+		int size = 0;
+		for (int voice = 0; voice < song.getNumVoices(); voice++) {
+			for (MidiEvent event : beat.getEvents(voice)) {
+				MidiEvent moved = onChannel(event, voice);
+				
+				// Insertion sort, since there are only a handful.
+				int indx = size;
+				while (indx > 0 && comesBefore(moved, ret[indx - 1])) {
+					ret[indx] = ret[indx - 1];
+					indx--;
+				}
+				ret[indx] = moved;
+				size++;
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Checks whether one event should be sent before another.
+	 * 
+	 * @param first
+	 * 			The first event
+	 * @param second
+	 * 			The second event
+	 * @return Whether the first is due sooner, or at the same time but stops
+	 * 			a note that the second doesn't
+	 */
+	private static boolean comesBefore(MidiEvent first, MidiEvent second) {
+		if (first.getTick() != second.getTick()) {
+			return first.getTick() < second.getTick();
+		}
+		return !isNoteStart(first) && isNoteStart(second);
+	}
+	
+	/**
+	 * Checks whether an event starts a note.
+	 * 
+	 * @param event
+	 * 			The event
+	 * @return Whether it's a note on with a velocity above 0
+	 */
+	private static boolean isNoteStart(MidiEvent event) {
+		ShortMessage message = (ShortMessage) event.getMessage();
+		return message.getCommand() == ShortMessage.NOTE_ON
+				&& message.getData2() > 0;
+	}
+	
+	/**
+	 * Copies a note event onto another channel.
+	 * 
+	 * @param event
+	 * 			The event
+	 * @param channel
+	 * 			The channel to move it to
+	 * @return The copy
+	 */
+	private static MidiEvent onChannel(MidiEvent event, int channel) {
+		ShortMessage message = (ShortMessage) event.getMessage();
+		try {
+			return new MidiEvent(new ShortMessage(message.getCommand(),
+					channel, message.getData1(), message.getData2()),
+					event.getTick());
+		} catch (InvalidMidiDataException ex) {
+			throw new IllegalArgumentException("Invalid channel " + channel,
+					ex);
+		}
+	}
+	
+	/**
+	 * Stops every note on the song's channels.
+	 */
+	private void silence() {
+		for (int voice = 0; voice < song.getNumVoices(); voice++) {
+			try {
+				receiver.send(new ShortMessage(ShortMessage.CONTROL_CHANGE,
+						voice, ALL_NOTES_OFF, 0), -1);
+			} catch (InvalidMidiDataException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,372 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import notes.*;
+
+import exceptions.InvalidChordException;
+
+/**
+ * The LockstepSongGenerator writes many independent songs at once, a beat at
+ * a time, for when songs are wanted by the thousand rather than one by one.
+ * 
+ * Each song still picks its own chords. What's shared is the voicing: the
+ * generator keeps every song's previous voicing and next chord id in flat
+ * arrays, one slot per song, and checks a round of candidate voicings for
+ * every song with loops that run across the songs. Those loops have no
+ * branches and touch no objects, so the JIT can unroll and vectorize them.
+ * Any song still without a voicing after a few rounds falls back to
+ * Song.addBeat(), which backtracks if it has to.
+ * 
+ * The loops check the candidates against the standard rules. Every
+ * candidate that passes them is still checked against the song's own rules
+ * before it's added, so songs with extra rules keep to them too, but they
+ * fall back to Song.addBeat() more often. Each song draws from its own random number generator, so seeding the
+ * songs makes the whole batch repeatable.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class LockstepSongGenerator {
+	
+	/**
+	 * How many rounds of candidates to try before leaving a song's beat to
+	 * Song.addBeat().
+	 */
+	private static final int LOCKSTEP_ROUNDS = 20;
+	
+	/**
+	 * The songs being generated
+	 */
+	private Song[] songs;
+	
+	/**
+	 * The number of songs
+	 */
+	private int numSongs;
+	
+	/**
+	 * The number of voices in each song
+	 */
+	private int numVoices;
+	
+	/**
+	 * The chord tones of each song's last beat, by voice
+	 */
+	private int[][] prevPitches;
+	
+	/**
+	 * Each song's current candidate voicing, by voice
+	 */
+	private int[][] candidates;
+	
+	/**
+	 * The id of the chord each song is voicing
+	 */
+	private int[] chordIds;
+	
+	/**
+	 * Whether each song's candidate broke a rule. Zero means it didn't.
+	 */
+	private int[] failures;
+	
+	/**
+	 * A bit for each pitch class in each song's candidate
+	 */
+	private int[] pitchClasses;
+	
+	/**
+	 * Whether each song still needs a voicing for this beat
+	 */
+	private boolean[] pending;
+	
+	/**
+	 * Every chord seen so far, indexed by chord id
+	 */
+	private ArrayList<Chord> chords;
+	
+	/**
+	 * The id of every chord seen so far
+	 */
+	private IdentityHashMap<Chord, Integer> chordTable;
+	
+	/**
+	 * A bit for each pitch class every voicing of a chord has to include,
+	 * indexed by chord id
+	 */
+	private int[] requiredMasks;
+	
+	/**
+	 * Every note of a chord, as a PitchMask, indexed by chord id
+	 */
+	private long[] chordMasks;
+	
+	/**
+	 * Every note the bass can sing in a chord, as a PitchMask, indexed by
+	 * chord id
+	 */
+	private long[] bassMasks;
+	
+	/**
+	 * Constructor. Each song picks up from wherever it is.
+	 * 
+	 * @param songs
+	 * 			The songs to generate
+	 */
+	public LockstepSongGenerator(Song[] songs) {
+		// Check for valid input
+		if (songs.length == 0) {
+			throw new IllegalArgumentException("No songs specified!");
+		}
+		
+		this.songs = songs;
+		this.numSongs = songs.length;
+		this.numVoices = songs[0].getNumVoices();
+		this.prevPitches = new int[numVoices][numSongs];
+		this.candidates = new int[numVoices][numSongs];
+		this.chordIds = new int[numSongs];
+		this.failures = new int[numSongs];
+		this.pitchClasses = new int[numSongs];
+		this.pending = new boolean[numSongs];
+		this.chords = new ArrayList<>();
+		this.chordTable = new IdentityHashMap<>();
+		this.requiredMasks = new int[16];
+		this.chordMasks = new long[16];
+		this.bassMasks = new long[16];
+		
+		for (int song = 0; song < numSongs; song++) {
+			if (songs[song].getNumVoices() != numVoices) {
+				throw new IllegalArgumentException(
+						"Songs have different numbers of voices!");
+			}
+			loadPrevPitches(song);
+		}
+	}
+	
+	/**
+	 * Adds beats to every song until it has its planned number of phrases.
+	 */
+	public void generateSongs() {
+		while (startBeat()) {
+			for (int round = 0; round < LOCKSTEP_ROUNDS; round++) {
+				drawCandidates();
+				findMissingChordTones();
+				findParallelFifths();
+				if (acceptCandidates() == 0) {
+					break;
+				}
+			}
+			finishStragglers();
+		}
+	}
+	
+	/**
+	 * Picks the next chord of every unfinished song.
+	 * 
+	 * @return Whether any song was unfinished
+	 */
+	private boolean startBeat() {
+		boolean ret = false;
+		for (int song = 0; song < numSongs; song++) {
+			pending[song] = false;
+			Song curr = songs[song];
+			int numBeats = curr.getState().getNumBeats();
+			if (numBeats >= curr.getPlannedBeatCount()) {
+				continue;
+			}
+			ret = true;
+			
+			// The first beat has nothing to lead on from, so it's voiced
+			// differently.
+			if (numBeats == 0) {
+				curr.addBeat();
+				loadPrevPitches(song);
+				continue;
+			}
+			
+			chordIds[song] = getChordId(curr.pickNextChord());
+			pending[song] = true;
+		}
+		return ret;
+	}
+	
+	/**
+	 * Draws a candidate voicing for every song still without one. Each voice
+	 * gets a random note of the chord that's in its range, above the voice
+	 * below it, and a valid leap from its previous note. The top voice
+	 * fills in a chord tone the others left out, if there is one. A song with
+	 * no such note for some voice fails this round.
+	 */
+	private void drawCandidates() {
+		for (int voice = 0; voice < numVoices; voice++) {
+			long range = Beat.getVoiceRange(voice);
+			int[] prevLane = prevPitches[voice];
+			int[] lane = candidates[voice];
+			for (int song = 0; song < numSongs; song++) {
+				if (!pending[song]) {
+					continue;
+				}
+				if (voice == 0) {
+					failures[song] = 0;
+					pitchClasses[song] = 0;
+				}
+				
+				int prevPitch = prevLane[song];
+				long mask = range & PitchMask.validLeapsFrom(prevPitch);
+				if (voice == 0) {
+					mask &= bassMasks[chordIds[song]];
+				} else {
+					mask &= chordMasks[chordIds[song]]
+							& PitchMask.above(candidates[voice - 1][song]);
+				}
+				int missing = requiredMasks[chordIds[song]]
+						& ~pitchClasses[song];
+				if (voice == numVoices - 1 && missing != 0) {
+					mask &= PitchMask.ofPitchClasses(missing);
+				}
+				
+				lane[song] = PitchMask.pick(mask, songs[song].getRandomizer());
+				if (lane[song] < 0) {
+					failures[song] = 1;
+					lane[song] = prevPitch;
+				}
+				pitchClasses[song] |= 1 << (lane[song] % Rules.OCTAVE_LENGTH);
+			}
+		}
+	}
+	
+	/**
+	 * Flags every song whose candidate leaves out a chord tone, using the
+	 * pitch classes collected while drawing it.
+	 */
+	private void findMissingChordTones() {
+		for (int song = 0; song < numSongs; song++) {
+			int required = requiredMasks[chordIds[song]];
+			failures[song] |= (pitchClasses[song] & required) ^ required;
+		}
+	}
+	
+	/**
+	 * Flags every song whose candidate has a pair of voices a fifth apart
+	 * that was a fifth apart on the song's last beat too.
+	 */
+	private void findParallelFifths() {
+		for (int upper = 1; upper < numVoices; upper++) {
+			for (int lower = 0; lower < upper; lower++) {
+				int[] prevUpper = prevPitches[upper];
+				int[] prevLower = prevPitches[lower];
+				int[] upperLane = candidates[upper];
+				int[] lowerLane = candidates[lower];
+				for (int song = 0; song < numSongs; song++) {
+					int prevInterval = Math.abs(prevUpper[song]
+							- prevLower[song]) % Rules.OCTAVE_LENGTH;
+					int interval = Math.abs(upperLane[song]
+							- lowerLane[song]) % Rules.OCTAVE_LENGTH;
+					failures[song] |=
+							(prevInterval == IntervalSignature.FIFTH)
+							& (interval == IntervalSignature.FIFTH) ? 1 : 0;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Adds a beat to every song whose candidate broke no rules.
+	 * 
+	 * @return The number of songs still without a voicing
+	 */
+	private int acceptCandidates() {
+		int ret = 0;
+		for (int song = 0; song < numSongs; song++) {
+			if (!pending[song]) {
+				continue;
+			}
+			if (failures[song] != 0) {
+				ret++;
+				continue;
+			}
+			
+			Note[] notes = new Note[numVoices];
+			for (int voice = 0; voice < numVoices; voice++) {
+				notes[voice] = new Note(candidates[voice][song]);
+			}
+			
+			// The loops above only cover the standard rules. The song has
+			// the final say, in case it has rules of its own.
+			try {
+				songs[song].addBeat(chords.get(chordIds[song]), notes);
+			} catch (InvalidChordException ex) {
+				ret++;
+				continue;
+			}
+			for (int voice = 0; voice < numVoices; voice++) {
+				prevPitches[voice][song] = candidates[voice][song];
+			}
+			pending[song] = false;
+		}
+		return ret;
+	}
+	
+	/**
+	 * Leaves the beat of every song still without a voicing to
+	 * Song.addBeat().
+	 */
+	private void finishStragglers() {
+		for (int song = 0; song < numSongs; song++) {
+			if (pending[song]) {
+				songs[song].discardNextChord();
+				songs[song].addBeat();
+				loadPrevPitches(song);
+				pending[song] = false;
+			}
+		}
+	}
+	
+	/**
+	 * Copies the chord tones of a song's last beat into prevPitches.
+	 * 
+	 * @param song
+	 * 			The index of the song
+	 */
+	private void loadPrevPitches(int song) {
+		Beat lastBeat = songs[song].getState().getLastBeat();
+		if (lastBeat == null) {
+			return;
+		}
+		Note[] notes = lastBeat.getChordTones();
+		for (int voice = 0; voice < numVoices; voice++) {
+			prevPitches[voice][song] = notes[voice].getMidiNumber();
+		}
+	}
+	
+	/**
+	 * Finds the id of a chord, giving it one if it's new.
+	 * 
+	 * @param chord
+	 * 			The chord
+	 * @return The chord's id
+	 */
+	private int getChordId(Chord chord) {
+		Integer ret = chordTable.get(chord);
+		if (ret != null) {
+			return ret;
+		}
+		
+		ret = chords.size();
+		chords.add(chord);
+		chordTable.put(chord, ret);
+		if (ret == requiredMasks.length) {
+			requiredMasks = Arrays.copyOf(requiredMasks, ret * 2);
+			chordMasks = Arrays.copyOf(chordMasks, ret * 2);
+			bassMasks = Arrays.copyOf(bassMasks, ret * 2);
+		}
+		requiredMasks[ret] = VoicingBatch.pitchClassBit(chord.getAllRoots()[0])
+				| VoicingBatch.pitchClassBit(chord.getAllThirds()[0])
+				| VoicingBatch.pitchClassBit(chord.getAllFifths()[0]);
+		chordMasks[ret] = chord.getPitchMask();
+		bassMasks[ret] = chord.getBassPitchMask();
+		return ret;
+	}
+}
@@ -0,0 +1,229 @@
+package controller;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.sound.midi.*;
+
+import exceptions.MidiExportException;
+
+/**
+ * The MidiDevices class looks after the MIDI devices the whole program plays
+ * through: a single synthesizer, opened once and kept open, and the
+ * sequencers that play into it.
+ * 
+ * Opening the synthesizer loads its soundbank, which is slow, so it can be
+ * started in the background with openInBackground() when the program starts.
+ * Sequencers are lent out by acquireSequencer() and given back with
+ * releaseSequencer(), so they can be used again. Everything is closed when
+ * the program shuts down.
+ * 
+ * @author Dan Pang
+ *
+ */
+public final class MidiDevices {
+	
+	/**
+	 * Opens the synthesizer, once. Null until something asks for it, or if
+	 * the last try failed.
+	 */
+	private static FutureTask<Synthesizer> synthOpener;
+	
+	/**
+	 * Sequencers that have been given back, ready to lend out again
+	 */
+	private static final ConcurrentLinkedQueue<Sequencer> IDLE_SEQUENCERS =
+			new ConcurrentLinkedQueue<>();
+	
+	/**
+	 * Every sequencer opened so far, to close at shutdown
+	 */
+	private static final Set<Sequencer> ALL_SEQUENCERS =
+			Collections.newSetFromMap(
+					new IdentityHashMap<Sequencer, Boolean>());
+	
+	/**
+	 * Whether everything has been closed
+	 */
+	private static boolean shutDown;
+	
+	/**
+	 * Whether shutDown() has been set to run when the program exits
+	 */
+	private static boolean hookAdded;
+	
+	/**
+	 * Private constructor. Everything is static.
+	 */
+	private MidiDevices() {
+	}
+	
+	/**
+	 * Starts opening the synthesizer on a background thread, if it isn't
+	 * open or opening already. Returns right away.
+	 */
+	public static void openInBackground() {
+		FutureTask<Synthesizer> opener = startOpening();
+		Thread thread = new Thread(opener, "midi-devices-open");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Fetches the synthesizer, opening it if needed. If it's being opened in
+	 * the background, waits for it.
+	 * 
+	 * @return The open synthesizer
+	 * @throws MidiExportException
+	 * 			If the synthesizer can't be opened
+	 */
+	public static Synthesizer getSynthesizer() throws MidiExportException {
+		FutureTask<Synthesizer> opener = startOpening();
+		
+		// Does nothing if it's already run or running.
+		opener.run();
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return opener.get();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException ex) {
+			// Let the next caller try again.
+			synchronized (MidiDevices.class) {
+				if (synthOpener == opener) {
+					synthOpener = null;
+				}
+			}
+			throw new MidiExportException("Unable to open synthesizer",
+					ex.getCause());
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Lends out an open sequencer that plays through the synthesizer.
+	 * 
+	 * @return The sequencer. Give it back with releaseSequencer().
+	 * @throws MidiExportException
+	 * 			If there's no sequencer or synthesizer to use
+	 */
+	public static Sequencer acquireSequencer() throws MidiExportException {
+		Sequencer ret = IDLE_SEQUENCERS.poll();
+		if (ret != null) {
+			return ret;
+		}
+		
+		Synthesizer synth = getSynthesizer();
+		try {
+			// Get the sequencer on its own, so it can be hooked up to the
+			// synthesizer.
+			ret = MidiSystem.getSequencer(false);
+			if (ret == null) {
+				throw new MidiExportException("Cannot find a sequencer");
+			}
+			ret.open();
+			try {
+				ret.getTransmitter().setReceiver(synth.getReceiver());
+			} catch (MidiUnavailableException ex) {
+				ret.close();
+				throw ex;
+			}
+		} catch (MidiUnavailableException ex) {
+			throw new MidiExportException("Unable to set up sequencer", ex);
+		}
+		
+		synchronized (MidiDevices.class) {
+			if (shutDown) {
+				ret.close();
+				throw new MidiExportException("MIDI devices are shut down");
+			}
+			ALL_SEQUENCERS.add(ret);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Gives back a sequencer lent out by acquireSequencer(). It's stopped and
+	 * kept open for the next caller.
+	 * 
+	 * @param sequencer
+	 * 			The sequencer
+	 */
+	public static void releaseSequencer(Sequencer sequencer) {
+		if (sequencer.isRunning()) {
+			sequencer.stop();
+		}
+		synchronized (MidiDevices.class) {
+			if (shutDown) {
+				sequencer.close();
+				return;
+			}
+		}
+		IDLE_SEQUENCERS.add(sequencer);
+	}
+	
+	/**
+	 * Closes every sequencer and the synthesizer. Called when the program
+	 * shuts down.
+	 */
+	public static synchronized void shutDown() {
+		if (shutDown) {
+			return;
+		}
+		shutDown = true;
+		for (Sequencer sequencer : ALL_SEQUENCERS) {
+			sequencer.close();
+		}
+		ALL_SEQUENCERS.clear();
+		IDLE_SEQUENCERS.clear();
+		
+		// Only close the synthesizer if it finished opening.
+		if (synthOpener != null && synthOpener.isDone()) {
+			try {
+				synthOpener.get().close();
+			} catch (InterruptedException | ExecutionException ex) {
+				// Never opened, so nothing to close.
+			}
+		}
+	}
+	
+	/**
+	 * Sets up the task that opens the synthesizer, if it hasn't been already.
+	 * 
+	 * @return The task
+	 */
+	private static synchronized FutureTask<Synthesizer> startOpening() {
+		if (synthOpener == null) {
+			synthOpener = new FutureTask<>(new Callable<Synthesizer>() {
+				@Override
+				public Synthesizer call() throws MidiUnavailableException {
+					Synthesizer ret = MidiSystem.getSynthesizer();
+					ret.open();
+					return ret;
+				}
+			});
+		}
+		if (!hookAdded) {
+			hookAdded = true;
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					shutDown();
+				}
+			}, "midi-devices-close"));
+		}
+		return synthOpener;
+	}
+}
@@ -3,14 +3,18 @@ package controller;
 import java.io.*;
 import javax.sound.midi.*;
 
-import notes.*;
-
 import exceptions.*;
 
 /**
  * The MidiExporter takes a Song and exports it to a MIDI file, or plays it.
  * Very rudimentary function; only takes the system's default player.
  * 
+ * An exporter can be used for song after song. Importing a song replaces
+ * the last one, and the exporter keeps its buffers, its Sequence and its
+ * sequencer between songs. Nothing is set up for playback until play() is
+ * called, and then the sequencer is borrowed from MidiDevices. Call close()
+ * when done with it to give the sequencer back.
+ * 
  * Lots of thanks to jsresources.org for helping me figure out what the hell
  * I'm doing
  * 
@@ -25,139 +29,182 @@ public class MidiExporter {
 	private static final int VELOCITY = 64;
 	
 	/**
-	 * The Sequence that represents the song
+	 * The Sequence that represents the song, built when it's first played
 	 */
 	private Sequence sequence;
 	
 	/**
-	 * The sequencer used to play the song
+	 * Whether the sequence holds the current song
+	 */
+	private boolean sequenceBuilt;
+	
+	/**
+	 * The sequencer used to play the song, borrowed when it's first played
 	 */
 	private Sequencer sequencer;
 	
+	/**
+	 * Writes the song to files
+	 */
+	private MidiFileWriter fileWriter;
+	
+	/**
+	 * Whether to merge repeated pitches into one note
+	 */
+	private boolean coalescing;
+	
 	/**
 	 * The Song itself
 	 */
 	private Song song;
 	
 	/**
-	 * Constructor. It breaks a Song into its MidiEvent components, and
-	 * adds them together in order to create a MIDI file.
-	 * 
-	 * @param song
-	 * 			The song to export
+	 * The Song, laid out voice by voice
+	 */
+	private ColumnarSong columns;
+	
+	/**
+	 * Constructor. Nothing is set up until a song is imported.
 	 */
 	public MidiExporter() {
-		// Create the Sequence that will contain everything
-		try {
-			sequence = new Sequence(Sequence.PPQ, 2);
-		} catch (InvalidMidiDataException ex) {
-			ex.printStackTrace();
-			System.exit(1);
-		}
+		fileWriter = new MidiFileWriter();
 	}
 	
 	/**
-	 * Import a song into the MidiExporter to play or export.
+	 * Import a song into the MidiExporter to play or export. Replaces any
+	 * song imported before, and stops it if it's playing.
 	 * 
 	 * @param song
 	 * 			The Song to convert to MIDI
 	 */
 	public void importSong(Song song) {
+		reset();
+		
 		// Fetch important data from the song.
-		// Meaning, metadata and the song itself.
-		Beat[] beats = song.getBeatArray();
+		// Meaning, metadata and the song itself, laid out voice by voice.
+		this.columns = ColumnarSong.fromSong(song);
 		this.song = song;
-		
-		// Create a track for each voice.
-		int numVoices = song.getNumVoices();
-		for (int voiceCount = 0; voiceCount < numVoices; voiceCount++) {
-			sequence.createTrack();
-		}
-		
-		// Iterate through each beat, adding each note to the corresponding
-		// track.
-		Track[] tracks = sequence.getTracks();
-		for (int beat = 0; beat < beats.length; beat++) {
-			Note[] firstHalf = beats[beat].getNotesFirstHalf();
-			Note[] secondHalf = beats[beat].getNotesSecondHalf();
-			// Iterate through each note in the beat, adding it to the
-			// corresponding track.
-			for (int note = 0; note < firstHalf.length; note++) {
-				if (firstHalf[note] == secondHalf[note]) {
-					createNote(firstHalf[note], 2 * beat, 2, tracks[note]);
-				} else {
-					createNote(firstHalf[note], 2 * beat, 1, tracks[note]);
-					createNote(secondHalf[note], 2 * beat + 1, 1, tracks[note]);
-				} // if/else
-			} // for
-		} // for
-		
-		try {
-			setUpSequencer();
-		} catch (MidiUnavailableException ex) {
-			System.out.println("Unable to set up sequencer");
-			// do nothing
-		}
 	}
 	
 	/**
-	 * Plays back the song.
+	 * Turns merging repeated pitches into one note on or off, for both
+	 * playing and exporting. When it's on, a voice singing the same pitch
+	 * for several half beats in a row holds one note instead of striking it
+	 * again each beat, and notes are stopped with note on events at velocity
+	 * 0. That makes for far fewer events and smaller files.
+	 * 
+	 * @param coalescing
+	 * 			Whether to merge repeated pitches
 	 */
-	public void play() throws MidiUnavailableException {
-		sequencer.start();
+	public void setCoalescing(boolean coalescing) {
+		this.coalescing = coalescing;
+		fileWriter.setCoalescing(coalescing);
+		sequenceBuilt = false;
 	}
 	
 	/**
-	 * Sets up the sequencer with a given sequence.
-	 * @param sequenceToUse
-	 * @throws MidiUnavailableException
+	 * Forgets the imported song, and stops it if it's playing. Everything
+	 * else is kept for the next song.
 	 */
-	private void setUpSequencer()
-			throws MidiUnavailableException {
-		// First, get the system's default sequencer.
-		try {
-			sequencer = MidiSystem.getSequencer();
-		} catch (MidiUnavailableException ex) {
-			// Something went wrong.
-			ex.printStackTrace();
-			System.exit(1);
+	public void reset() {
+		if (sequencer != null && sequencer.isRunning()) {
+			sequencer.stop();
 		}
-		
-		// If there is none, throw an exception.
+		song = null;
+		columns = null;
+		sequenceBuilt = false;
+	}
+	
+	/**
+	 * Plays back the song, setting up the sequencer if this is the first
+	 * time.
+	 * 
+	 * @throws MidiExportException
+	 * 			If there's no sequencer or synthesizer to play it on
+	 */
+	public void play() throws MidiExportException {
+		checkImported();
 		if (sequencer == null) {
-			String msg = "Cannot find a sequencer";
-			throw new MidiUnavailableException(msg);
+			sequencer = MidiDevices.acquireSequencer();
 		}
+		buildSequence();
 		
-		// Set up the transmitter and receiver of the synth to play the song.
-		linkTransmitterToReceiver();
+		try {
+			sequencer.setSequence(sequence);
+		} catch (InvalidMidiDataException ex) {
+			throw new MidiExportException("Unable to play the song", ex);
+		}
+		sequencer.setTickPosition(0);
+		sequencer.setTempoInBPM(song.getBPM());
+		sequencer.start();
 	}
 	
 	/**
-	 * Gets the default transmitter and receiver, and then links them.
+	 * Stops playback and gives the sequencer back. The exporter can still be
+	 * used; it'll borrow another one if needed.
 	 */
-	private void linkTransmitterToReceiver() {
-		try {
-			// Set up the sequencer (including its tempo)
-			sequencer.open();
-			sequencer.setSequence(sequence);
-			sequencer.setTempoInBPM(song.getBPM());
-			
-			// Get the system's default synthesizer and set that up, too.
-			Synthesizer synth = MidiSystem.getSynthesizer();
-			synth.open();
-			
-			// Get the receiver and transmitter to use and set those up.
-			Receiver receiver = synth.getReceiver();
-			Transmitter transmitter = sequencer.getTransmitter();
-			transmitter.setReceiver(receiver);
-		} catch (Exception ex) {
-			// Something went wrong.
-			ex.printStackTrace();
-			System.exit(1);
+	public void close() {
+		reset();
+		if (sequencer != null) {
+			MidiDevices.releaseSequencer(sequencer);
+			sequencer = null;
 		}
 	}
 	
+	/**
+	 * Fills the Sequence with the song, a track per voice. The Sequence is
+	 * reused from the last song.
+	 * 
+	 * @throws MidiExportException
+	 * 			If the Sequence can't be made
+	 */
+	private void buildSequence() throws MidiExportException {
+		if (sequenceBuilt) {
+			return;
+		}
+		
+		// Create the Sequence that will contain everything
+		if (sequence == null) {
+			try {
+				sequence = new Sequence(Sequence.PPQ,
+						MidiFileWriter.TICKS_PER_BEAT);
+			} catch (InvalidMidiDataException ex) {
+				throw new MidiExportException("Unable to create sequence", ex);
+			}
+		}
+		
+		// Replace the last song's tracks with one for each voice. Emptying
+		// them out would leave their end of track events where they were.
+		for (Track track : sequence.getTracks()) {
+			sequence.deleteTrack(track);
+		}
+		int numVoices = columns.getNumVoices();
+		for (int voiceCount = 0; voiceCount < numVoices; voiceCount++) {
+			sequence.createTrack();
+		}
+		Track[] tracks = sequence.getTracks();
+		
+		// Iterate through each voice, adding each of its notes to the
+		// corresponding track.
+		int numBeats = columns.getNumBeats();
+		for (int voice = 0; voice < numVoices; voice++) {
+			byte[] firstHalf = columns.getPitchesFirstHalf(voice);
+			byte[] secondHalf = columns.getPitchesSecondHalf(voice);
+			Track track = tracks[voice];
+			if (coalescing) {
+				addRuns(track, firstHalf, secondHalf, numBeats);
+				continue;
+			}
+			for (int beat = 0; beat < numBeats; beat++) {
+				for (MidiEvent event : encodeBeat(firstHalf[beat],
+						secondHalf[beat], beat)) {
+					track.add(event);
+				}
+			} // for
+		} // for
+		sequenceBuilt = true;
+	}
+	
 	/**
 	 * Exports to a file.
 	 * 
@@ -165,42 +212,104 @@ public class MidiExporter {
 	 * 			The output file name
 	 * @throws InvalidFileFormatException
 	 * 			If the file name doesn't end in .mid or .midi
+	 * @throws MidiExportException
+	 * 			If the file can't be written
 	 */
 	public void exportToFile(String outputFileName) 
-			throws InvalidFileFormatException {
+			throws InvalidFileFormatException, MidiExportException {
 		// Check for a valid file format.
 		if (!outputFileName.endsWith(".mid")
 				&& !outputFileName.endsWith(".midi")) {
 			String msg = "File names must end in .mid or .midi";
 			throw new InvalidFileFormatException(msg);
 		}
+		checkImported();
 		
-		// Find a supported file type, and export the file.
-		int[] types = MidiSystem.getMidiFileTypes(sequence);
+		// Write the file straight from the song's pitches. The Sequence is
+		// only needed for playback.
 		try {
-			File outputFile = new File(outputFileName);
-			MidiSystem.write(sequence, types[0], outputFile);
+			fileWriter.write(columns, new File(outputFileName));
 		} catch (IOException ex) {
-			ex.printStackTrace();
-			System.exit(1);
+			throw new MidiExportException("Unable to write "
+					+ outputFileName, ex);
+		}
+	}
+	
+	/**
+	 * Makes sure there's a song to export or play.
+	 */
+	private void checkImported() {
+		if (song == null) {
+			throw new IllegalStateException("No song imported!");
 		}
 	}
 
 	/**
-	 * Create a note and add it to the track.
+	 * Create the events for one voice on one beat. The beat is two ticks
+	 * long, and holds one note unless the second half is different.
 	 * 
-	 * @param note
-	 * 			The MIDI value for the note to be played
-	 * @param startTime
-	 * 			When this note should be played
-	 * @param duration
-	 * 			How long the note should last
-	 */
-	private void createNote(Note note, int startTime, int duration, Track track) {
-		int endTime = startTime + duration;
-		int midiNumber = note.getMidiNumber();
-		track.add(createNoteEvent(ShortMessage.NOTE_ON, midiNumber, startTime, VELOCITY));
-		track.add(createNoteEvent(ShortMessage.NOTE_OFF, midiNumber, endTime, 0));
+	 * @param firstHalf
+	 * 			The MIDI value played on the first half of the beat
+	 * @param secondHalf
+	 * 			The MIDI value played on the second half of the beat
+	 * @param beat
+	 * 			The index of the beat
+	 * @return The note on and note off events, in order
+	 */
+	static MidiEvent[] encodeBeat(int firstHalf, int secondHalf, int beat) {
+		int startTime = 2 * beat;
+		if (firstHalf == secondHalf) {
+			return new MidiEvent[] {
+				createNoteEvent(ShortMessage.NOTE_ON, firstHalf, startTime,
+						VELOCITY),
+				createNoteEvent(ShortMessage.NOTE_OFF, firstHalf, startTime + 2,
+						0)
+			};
+		}
+		return new MidiEvent[] {
+			createNoteEvent(ShortMessage.NOTE_ON, firstHalf, startTime,
+					VELOCITY),
+			createNoteEvent(ShortMessage.NOTE_OFF, firstHalf, startTime + 1, 0),
+			createNoteEvent(ShortMessage.NOTE_ON, secondHalf, startTime + 1,
+					VELOCITY),
+			createNoteEvent(ShortMessage.NOTE_OFF, secondHalf, startTime + 2, 0)
+		};
+	}
+	
+	/**
+	 * Adds one voice's notes to a track, merging each run of the same pitch
+	 * into one note.
+	 * 
+	 * @param track
+	 * 			The track to add to
+	 * @param firstHalf
+	 * 			The MIDI value played on the first half of each beat
+	 * @param secondHalf
+	 * 			The MIDI value played on the second half of each beat
+	 * @param numBeats
+	 * 			The number of beats
+	 */
+	private static void addRuns(Track track, byte[] firstHalf,
+			byte[] secondHalf, int numBeats) {
+		int pitch = -1;
+		for (int half = 0; half < 2 * numBeats; half++) {
+			int nextPitch = half % 2 == 0 ? firstHalf[half / 2]
+					: secondHalf[half / 2];
+			if (nextPitch == pitch) {
+				continue;
+			}
+			if (pitch >= 0) {
+				track.add(createNoteEvent(ShortMessage.NOTE_ON, pitch, half,
+						0));
+			}
+			track.add(createNoteEvent(ShortMessage.NOTE_ON, nextPitch, half,
+					VELOCITY));
+			pitch = nextPitch;
+		}
+		if (pitch >= 0) {
+			track.add(createNoteEvent(ShortMessage.NOTE_ON, pitch,
+					2 * numBeats, 0));
+		}
 	}
 	
 	/**
@@ -216,15 +325,13 @@ public class MidiExporter {
 	 * 			The velocity of this note
 	 * @return The MidiEvent for the note
 	 */
-	private MidiEvent createNoteEvent(int command, int note, int eventTime, int velocity) {
+	private static MidiEvent createNoteEvent(int command, int note, int eventTime, int velocity) {
 		// Create the message and set its parameters to the ones given.
 		ShortMessage message = new ShortMessage();
 		try {
 			message.setMessage(command, 0, note, velocity);
 		} catch (InvalidMidiDataException ex) {
-			// Something went wrong.
-			ex.printStackTrace();
-			System.exit(1);
+			throw new IllegalArgumentException("Invalid note " + note, ex);
 		}
 		
 		// Create the MidiEvent and return it.
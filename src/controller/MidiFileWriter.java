@@ -0,0 +1,324 @@
+package controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The MidiFileWriter writes songs out as Standard MIDI Files, going straight
+ * from a ColumnarSong's pitches to bytes. Unlike MidiExporter, it doesn't
+ * build a Sequence or look up a file writer through MidiSystem.
+ * 
+ * Each voice gets a track, as with MidiExporter, at two ticks per beat. The
+ * first track also sets the tempo. With coalescing on, a voice singing the
+ * same pitch for several half beats in a row gets one long note instead of
+ * one per beat, and notes are stopped with note on events at velocity 0, so
+ * the whole track shares one running status. A writer keeps its buffers
+ * between songs, so writing a batch of songs with one writer allocates
+ * almost nothing. A writer shouldn't be shared between threads.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class MidiFileWriter {
+	
+	/**
+	 * The number of ticks in a beat
+	 */
+	public static final int TICKS_PER_BEAT = 2;
+	
+	/**
+	 * The velocity every note is played at
+	 */
+	static final int VELOCITY = 64;
+	
+	/**
+	 * The file format: one track per voice, played together
+	 */
+	private static final int FORMAT = 1;
+	
+	/**
+	 * The length of the header chunk, including its type and length
+	 */
+	static final int HEADER_LENGTH = 14;
+	
+	/**
+	 * The length of a track chunk's type and length
+	 */
+	static final int TRACK_HEADER_LENGTH = 8;
+	
+	/**
+	 * The bytes to make room for in each track to begin with, enough for a
+	 * few hundred beats
+	 */
+	private static final int INITIAL_TRACK_CAPACITY = 4096;
+	
+	/**
+	 * Encodes each track in turn
+	 */
+	private MidiTrackEncoder encoder;
+	
+	/**
+	 * Holds a chunk header while it's written out
+	 */
+	private ByteBuffer header;
+	
+	/**
+	 * Whether to merge repeated pitches into one note
+	 */
+	private boolean coalescing;
+	
+	/**
+	 * Constructor.
+	 */
+	public MidiFileWriter() {
+		encoder = new MidiTrackEncoder(INITIAL_TRACK_CAPACITY);
+		header = ByteBuffer.allocate(HEADER_LENGTH);
+	}
+	
+	/**
+	 * Turns merging repeated pitches into one note on or off.
+	 * 
+	 * @param coalescing
+	 * 			Whether to merge repeated pitches
+	 */
+	public void setCoalescing(boolean coalescing) {
+		this.coalescing = coalescing;
+	}
+	
+	/**
+	 * Finds whether repeated pitches are merged into one note.
+	 * 
+	 * @return See above
+	 */
+	public boolean isCoalescing() {
+		return coalescing;
+	}
+	
+	/**
+	 * Writes a song to a file, replacing it if it's already there.
+	 * 
+	 * @param song
+	 * 			The song to write
+	 * @param outputFile
+	 * 			The file to write it to
+	 * @throws IOException
+	 * 			If the file can't be written
+	 */
+	public void write(ColumnarSong song, File outputFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(outputFile.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(song, channel);
+		}
+	}
+	
+	/**
+	 * Writes a song to a channel. The channel is left open.
+	 * 
+	 * @param song
+	 * 			The song to write
+	 * @param channel
+	 * 			Where to write it
+	 * @throws IOException
+	 * 			If the channel can't be written to
+	 */
+	public void write(ColumnarSong song, WritableByteChannel channel)
+			throws IOException {
+		int numVoices = song.getNumVoices();
+		writeHeader(channel, FORMAT, numVoices);
+		for (int voice = 0; voice < numVoices; voice++) {
+			encoder.reset();
+			if (voice == 0) {
+				encoder.tempo(0, song.getBPM());
+			}
+			if (coalescing) {
+				encodeRuns(encoder, song.getPitchesFirstHalf(voice),
+						song.getPitchesSecondHalf(voice), song.getNumBeats());
+			} else {
+				encodeVoice(encoder, song.getPitchesFirstHalf(voice),
+						song.getPitchesSecondHalf(voice), song.getNumBeats(),
+						0);
+			}
+			encoder.endOfTrack(encoder.getLastTick());
+			writeTrack(channel, encoder.getBytes());
+		}
+	}
+	
+	/**
+	 * Encodes one voice's notes, in the same order as
+	 * MidiExporter.encodeBeat(). Each beat plays one note, or two if the
+	 * second half is different.
+	 * 
+	 * @param encoder
+	 * 			Where to encode the notes
+	 * @param firstHalf
+	 * 			The MIDI number played on the first half of each beat
+	 * @param secondHalf
+	 * 			The MIDI number played on the second half of each beat
+	 * @param numBeats
+	 * 			The number of beats to encode
+	 * @param firstBeat
+	 * 			The index in the song of the first beat
+	 */
+	static void encodeVoice(MidiTrackEncoder encoder, byte[] firstHalf,
+			byte[] secondHalf, int numBeats, int firstBeat) {
+		for (int beat = 0; beat < numBeats; beat++) {
+			long startTime = (long) TICKS_PER_BEAT * (firstBeat + beat);
+			encoder.noteOn(startTime, 0, firstHalf[beat], VELOCITY);
+			if (firstHalf[beat] == secondHalf[beat]) {
+				encoder.noteOff(startTime + TICKS_PER_BEAT, 0, firstHalf[beat]);
+			} else {
+				long middle = startTime + TICKS_PER_BEAT / 2;
+				encoder.noteOff(middle, 0, firstHalf[beat]);
+				encoder.noteOn(middle, 0, secondHalf[beat], VELOCITY);
+				encoder.noteOff(startTime + TICKS_PER_BEAT, 0,
+						secondHalf[beat]);
+			}
+		}
+	}
+	
+	/**
+	 * Encodes one voice's notes, merging each run of the same pitch into one
+	 * note.
+	 * 
+	 * @param encoder
+	 * 			Where to encode the notes
+	 * @param firstHalf
+	 * 			The MIDI number played on the first half of each beat
+	 * @param secondHalf
+	 * 			The MIDI number played on the second half of each beat
+	 * @param numBeats
+	 * 			The number of beats to encode
+	 */
+	static void encodeRuns(MidiTrackEncoder encoder, byte[] firstHalf,
+			byte[] secondHalf, int numBeats) {
+		int pitch = -1;
+		for (int beat = 0; beat < numBeats; beat++) {
+			long startTime = (long) TICKS_PER_BEAT * beat;
+			pitch = continueRun(encoder, pitch, firstHalf[beat], startTime);
+			pitch = continueRun(encoder, pitch, secondHalf[beat],
+					startTime + TICKS_PER_BEAT / 2);
+		}
+		if (pitch >= 0) {
+			encoder.noteRelease((long) TICKS_PER_BEAT * numBeats, 0, pitch);
+		}
+	}
+	
+	/**
+	 * Carries on the current note into the next half beat, or stops it and
+	 * starts a new one if the pitch changes.
+	 * 
+	 * @param encoder
+	 * 			Where to encode the notes
+	 * @param pitch
+	 * 			The pitch being held, or -1 if none
+	 * @param nextPitch
+	 * 			The pitch of the next half beat
+	 * @param tick
+	 * 			When the next half beat starts
+	 * @return The pitch being held after the half beat starts
+	 */
+	private static int continueRun(MidiTrackEncoder encoder, int pitch,
+			int nextPitch, long tick) {
+		if (nextPitch != pitch) {
+			if (pitch >= 0) {
+				encoder.noteRelease(tick, 0, pitch);
+			}
+			encoder.noteOn(tick, 0, nextPitch, VELOCITY);
+		}
+		return nextPitch;
+	}
+	
+	/**
+	 * Writes the header chunk.
+	 * 
+	 * @param channel
+	 * 			Where to write it
+	 * @param format
+	 * 			The file format
+	 * @param numTracks
+	 * 			The number of tracks that follow
+	 * @throws IOException
+	 * 			If the channel can't be written to
+	 */
+	private void writeHeader(WritableByteChannel channel, int format,
+			int numTracks) throws IOException {
+		header.clear();
+		putHeader(header, format, numTracks);
+		header.flip();
+		writeFully(channel, header);
+	}
+	
+	/**
+	 * Writes a track chunk.
+	 * 
+	 * @param channel
+	 * 			Where to write it
+	 * @param events
+	 * 			The encoded events of the track
+	 * @throws IOException
+	 * 			If the channel can't be written to
+	 */
+	private void writeTrack(WritableByteChannel channel, ByteBuffer events)
+			throws IOException {
+		header.clear();
+		putTrackHeader(header, events.remaining());
+		header.flip();
+		writeFully(channel, header);
+		writeFully(channel, events);
+	}
+	
+	/**
+	 * Puts a header chunk into a buffer.
+	 * 
+	 * @param buffer
+	 * 			The buffer, with room for HEADER_LENGTH bytes
+	 * @param format
+	 * 			The file format
+	 * @param numTracks
+	 * 			The number of tracks that follow
+	 */
+	static void putHeader(ByteBuffer buffer, int format, int numTracks) {
+		buffer.put((byte) 'M').put((byte) 'T').put((byte) 'h')
+				.put((byte) 'd');
+		buffer.putInt(6);
+		buffer.putShort((short) format);
+		buffer.putShort((short) numTracks);
+		buffer.putShort((short) TICKS_PER_BEAT);
+	}
+	
+	/**
+	 * Puts the start of a track chunk into a buffer.
+	 * 
+	 * @param buffer
+	 * 			The buffer, with room for TRACK_HEADER_LENGTH bytes
+	 * @param length
+	 * 			The number of bytes of events in the track
+	 */
+	static void putTrackHeader(ByteBuffer buffer, int length) {
+		buffer.put((byte) 'M').put((byte) 'T').put((byte) 'r')
+				.put((byte) 'k');
+		buffer.putInt(length);
+	}
+	
+	/**
+	 * Writes all of a buffer. A channel may write less than asked to.
+	 * 
+	 * @param channel
+	 * 			Where to write it
+	 * @param buffer
+	 * 			What to write
+	 * @throws IOException
+	 * 			If the channel can't be written to
+	 */
+	static void writeFully(WritableByteChannel channel, ByteBuffer buffer)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
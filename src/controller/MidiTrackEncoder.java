@@ -0,0 +1,288 @@
+package controller;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The MidiTrackEncoder writes the events of one track of a Standard MIDI File
+ * straight into bytes, without building a MidiEvent for each one.
+ * 
+ * Events have to be added in order. Each one is written as a variable-length
+ * delta time followed by the message, and the status byte is left out when
+ * it's the same as the last one (running status). The buffer grows as
+ * needed, and reset() clears it so one encoder can be used for every track.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class MidiTrackEncoder {
+	
+	/**
+	 * The status byte of a note on message, on channel 0
+	 */
+	private static final int NOTE_ON = 0x90;
+	
+	/**
+	 * The status byte of a note off message, on channel 0
+	 */
+	private static final int NOTE_OFF = 0x80;
+	
+	/**
+	 * The status byte of a meta event
+	 */
+	private static final int META = 0xFF;
+	
+	/**
+	 * The meta event type for setting the tempo
+	 */
+	private static final int META_TEMPO = 0x51;
+	
+	/**
+	 * The meta event type for the end of a track
+	 */
+	private static final int META_END_OF_TRACK = 0x2F;
+	
+	/**
+	 * The number of microseconds in a minute
+	 */
+	private static final float MICROSECONDS_PER_MINUTE = 60000000f;
+	
+	/**
+	 * The most bytes a single event can take: a four byte delta time and a
+	 * six byte tempo event
+	 */
+	private static final int MAX_EVENT_LENGTH = 10;
+	
+	/**
+	 * The encoded events
+	 */
+	private ByteBuffer buffer;
+	
+	/**
+	 * The time of the last event, in ticks
+	 */
+	private long lastTick;
+	
+	/**
+	 * The status byte of the last message, or -1 if the next message has to
+	 * spell its status out
+	 */
+	private int runningStatus;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param initialCapacity
+	 * 			How many bytes to make room for to begin with
+	 */
+	public MidiTrackEncoder(int initialCapacity) {
+		buffer = ByteBuffer.allocate(Math.max(initialCapacity,
+				MAX_EVENT_LENGTH));
+		reset();
+	}
+	
+	/**
+	 * Throws away everything encoded so far, to start a new track. The buffer
+	 * is kept.
+	 */
+	public void reset() {
+		buffer.clear();
+		lastTick = 0;
+		runningStatus = -1;
+	}
+	
+	/**
+	 * Throws away the bytes encoded so far, once they've been written out,
+	 * and carries on from the same point in the track. Unlike reset(), the
+	 * next event's delta time and running status follow on from the last
+	 * one.
+	 */
+	public void clearBytes() {
+		buffer.clear();
+	}
+	
+	/**
+	 * Adds a note on event.
+	 * 
+	 * @param tick
+	 * 			When the note starts
+	 * @param channel
+	 * 			The MIDI channel, from 0 to 15
+	 * @param pitch
+	 * 			The MIDI number of the note
+	 * @param velocity
+	 * 			How hard the note is played
+	 */
+	public void noteOn(long tick, int channel, int pitch, int velocity) {
+		addMessage(tick, NOTE_ON | channel, pitch, velocity);
+	}
+	
+	/**
+	 * Adds a note off event.
+	 * 
+	 * @param tick
+	 * 			When the note stops
+	 * @param channel
+	 * 			The MIDI channel, from 0 to 15
+	 * @param pitch
+	 * 			The MIDI number of the note
+	 */
+	public void noteOff(long tick, int channel, int pitch) {
+		addMessage(tick, NOTE_OFF | channel, pitch, 0);
+	}
+	
+	/**
+	 * Stops a note with a note on event at velocity 0, which means the same
+	 * as a note off. Unlike noteOff(), it keeps the running status of the
+	 * note on events around it, saving a byte.
+	 * 
+	 * @param tick
+	 * 			When the note stops
+	 * @param channel
+	 * 			The MIDI channel, from 0 to 15
+	 * @param pitch
+	 * 			The MIDI number of the note
+	 */
+	public void noteRelease(long tick, int channel, int pitch) {
+		addMessage(tick, NOTE_ON | channel, pitch, 0);
+	}
+	
+	/**
+	 * Adds an event setting the tempo.
+	 * 
+	 * @param tick
+	 * 			When the tempo changes
+	 * @param beatsPerMinute
+	 * 			The new tempo
+	 */
+	public void tempo(long tick, float beatsPerMinute) {
+		int microseconds = Math.round(MICROSECONDS_PER_MINUTE
+				/ beatsPerMinute);
+		ensureCapacity(MAX_EVENT_LENGTH);
+		writeDelta(tick);
+		buffer.put((byte) META);
+		buffer.put((byte) META_TEMPO);
+		buffer.put((byte) 3);
+		buffer.put((byte) (microseconds >>> 16));
+		buffer.put((byte) (microseconds >>> 8));
+		buffer.put((byte) microseconds);
+		
+		// Meta events cancel running status.
+		runningStatus = -1;
+	}
+	
+	/**
+	 * Adds the event ending the track. Nothing should be added after it.
+	 * 
+	 * @param tick
+	 * 			When the track ends
+	 */
+	public void endOfTrack(long tick) {
+		ensureCapacity(MAX_EVENT_LENGTH);
+		writeDelta(tick);
+		buffer.put((byte) META);
+		buffer.put((byte) META_END_OF_TRACK);
+		buffer.put((byte) 0);
+		runningStatus = -1;
+	}
+	
+	/**
+	 * Gets the number of bytes encoded so far.
+	 * 
+	 * @return See above
+	 */
+	public int size() {
+		return buffer.position();
+	}
+	
+	/**
+	 * Gets the time of the last event added.
+	 * 
+	 * @return The time, in ticks
+	 */
+	public long getLastTick() {
+		return lastTick;
+	}
+	
+	/**
+	 * Gets the encoded bytes, ready to be written out. The view shares the
+	 * encoder's buffer, so it's only good until the next event or reset().
+	 * 
+	 * @return A view of the bytes from the start of the track
+	 */
+	public ByteBuffer getBytes() {
+		ByteBuffer ret = buffer.duplicate();
+		ret.flip();
+		return ret;
+	}
+	
+	/**
+	 * Adds a channel message with two data bytes.
+	 * 
+	 * @param tick
+	 * 			When the message happens
+	 * @param status
+	 * 			The status byte
+	 * @param data1
+	 * 			The first data byte
+	 * @param data2
+	 * 			The second data byte
+	 */
+	private void addMessage(long tick, int status, int data1, int data2) {
+		ensureCapacity(MAX_EVENT_LENGTH);
+		writeDelta(tick);
+		if (status != runningStatus) {
+			buffer.put((byte) status);
+			runningStatus = status;
+		}
+		buffer.put((byte) data1);
+		buffer.put((byte) data2);
+	}
+	
+	/**
+	 * Writes the time since the last event as a variable-length quantity:
+	 * seven bits per byte, most significant first, with the top bit set on
+	 * every byte but the last.
+	 * 
+	 * @param tick
+	 * 			The time of the event being added
+	 */
+	private void writeDelta(long tick) {
+		// Check for valid input
+		if (tick < lastTick) {
+			throw new IllegalArgumentException("Events must be in order!");
+		}
+		if (tick - lastTick >= 1 << 28) {
+			throw new IllegalArgumentException("Too long between events!");
+		}
+		
+		int delta = (int) (tick - lastTick);
+		lastTick = tick;
+		if (delta >= 1 << 21) {
+			buffer.put((byte) (0x80 | (delta >>> 21)));
+		}
+		if (delta >= 1 << 14) {
+			buffer.put((byte) (0x80 | ((delta >>> 14) & 0x7F)));
+		}
+		if (delta >= 1 << 7) {
+			buffer.put((byte) (0x80 | ((delta >>> 7) & 0x7F)));
+		}
+		buffer.put((byte) (delta & 0x7F));
+	}
+	
+	/**
+	 * Makes sure the buffer has room for more bytes, doubling it if not.
+	 * 
+	 * @param needed
+	 * 			The number of bytes about to be written
+	 */
+	private void ensureCapacity(int needed) {
+		if (buffer.remaining() >= needed) {
+			return;
+		}
+		ByteBuffer bigger = ByteBuffer.allocate(
+				Math.max(buffer.capacity() * 2, buffer.position() + needed));
+		buffer.flip();
+		bigger.put(buffer);
+		buffer = bigger;
+	}
+}
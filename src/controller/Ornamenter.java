@@ -0,0 +1,198 @@
+package controller;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import notes.*;
+import notes.scales.Scale;
+
+/**
+ * The Ornamenter class adds non-chord tones to beats whose chord tones have
+ * already been picked.
+ * 
+ * An ornament goes on the second half of a beat and leads into the next
+ * beat, so it only depends on that pair of beats: a voice moving by a third
+ * gets a passing tone, and a voice that steps into a beat and leaps out of it
+ * may get an appoggiatura in place of the leap. The random choices are seeded
+ * from the pair's chord tones, so the same pair always gets the same
+ * ornaments. Ornamenting never changes chord tones or leaps, and never
+ * changes the beats it's given, so the pairs of a finished song can be
+ * ornamented in any order, or one beat behind a generator.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class Ornamenter {
+	
+	/**
+	 * The fewest beats worth splitting off into a task of their own
+	 */
+	private static final int PARALLEL_THRESHOLD = 64;
+	
+	/**
+	 * Works out the notes played on the second half of a beat.
+	 * 
+	 * @param beat
+	 * 			The beat to ornament
+	 * @param nextBeat
+	 * 			The beat after it
+	 * @return The notes of the second half of the beat, one per voice
+	 */
+	public static Note[] findOrnaments(Beat beat, Beat nextBeat) {
+		Note[] notes = beat.getChordTones();
+		Note[] nextNotes = nextBeat.getChordTones();
+		boolean[] leaps = beat.getLeaps();
+		boolean[] nextLeaps = nextBeat.getLeaps();
+		Scale scale = beat.getChord().getScale();
+		SongRandom randomizer = new SongRandom(seedFor(notes, nextNotes));
+		
+		Note[] ret = new Note[notes.length];
+		boolean ornamented = false;
+		for (int voice = 0; voice < notes.length; voice++) {
+			ret[voice] = notes[voice];
+			int interval = Math.abs(nextNotes[voice].getInterval(notes[voice]));
+			
+			// If you can add a passing tone, add it.
+			if (interval == 3 || interval == 4) {
+				try {
+					ret[voice] = scale.getPassingTone(
+							FugueUtil.min(notes[voice], nextNotes[voice]),
+							FugueUtil.max(notes[voice], nextNotes[voice]));
+					ornamented = true;
+					continue;
+				} catch (IllegalArgumentException ex) {
+					// whoops
+				}
+			}
+			
+			// If the voice didn't leap into this note, but does into the
+			// next one, and if there isn't already a non-chord tone, add an
+			// appogiatura. It's likelier the higher the voice.
+			if (!ornamented && !leaps[voice] && nextLeaps[voice]
+					&& randomizer.nextFloat() >= 0.6 - .1 * voice) {
+				if (randomizer.nextInt(2) == 0) {
+					ret[voice] = scale.getLowerNeighbor(nextNotes[voice]);
+				} else {
+					ret[voice] = scale.getUpperNeighbor(nextNotes[voice]);
+				}
+				ornamented = true;
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Makes a copy of a beat with its ornaments added.
+	 * 
+	 * @param beat
+	 * 			The beat to ornament
+	 * @param nextBeat
+	 * 			The beat after it
+	 * @return The ornamented copy
+	 */
+	public static Beat ornament(Beat beat, Beat nextBeat) {
+		return beat.withNotesSecondHalf(findOrnaments(beat, nextBeat));
+	}
+	
+	/**
+	 * Ornaments every beat of a finished song, splitting the work across a
+	 * pool. The last beat has nothing to lead into, so it's left as it is.
+	 * 
+	 * @param beats
+	 * 			The beats of the song, in order
+	 * @param pool
+	 * 			The pool to ornament them on
+	 * @return The ornamented beats
+	 */
+	public static Beat[] ornamentAll(Beat[] beats, ForkJoinPool pool) {
+		Beat[] ret = new Beat[beats.length];
+		if (beats.length == 0) {
+			return ret;
+		}
+		
+		ret[beats.length - 1] = beats[beats.length - 1];
+		pool.invoke(new OrnamentTask(beats, ret, 0, beats.length - 1));
+		return ret;
+	}
+	
+	/**
+	 * Seeds the choices for a pair of beats from their chord tones.
+	 * 
+	 * @param notes
+	 * 			The chord tones of the earlier beat
+	 * @param nextNotes
+	 * 			The chord tones of the later beat
+	 * @return The seed
+	 */
+	private static long seedFor(Note[] notes, Note[] nextNotes) {
+		long ret = 0;
+		for (int voice = 0; voice < notes.length; voice++) {
+			ret = ret * 131 + notes[voice].getMidiNumber();
+			ret = ret * 131 + nextNotes[voice].getMidiNumber();
+		}
+		return ret;
+	}
+	
+	/**
+	 * Ornaments a run of beats, splitting it in half until it's small.
+	 */
+	@SuppressWarnings("serial") // ignore
+	private static class OrnamentTask extends RecursiveAction {
+		
+		/**
+		 * The beats of the song
+		 */
+		private Beat[] beats;
+		
+		/**
+		 * Where to put the ornamented beats
+		 */
+		private Beat[] ornamented;
+		
+		/**
+		 * The index of the first beat to ornament
+		 */
+		private int start;
+		
+		/**
+		 * The index of the beat after the last one to ornament
+		 */
+		private int end;
+		
+		/**
+		 * Constructor.
+		 * 
+		 * @param beats
+		 * 			The beats of the song
+		 * @param ornamented
+		 * 			Where to put the ornamented beats
+		 * @param start
+		 * 			The index of the first beat to ornament
+		 * @param end
+		 * 			The index of the beat after the last one to ornament
+		 */
+		OrnamentTask(Beat[] beats, Beat[] ornamented, int start, int end) {
+			this.beats = beats;
+			this.ornamented = ornamented;
+			this.start = start;
+			this.end = end;
+		}
+		
+		/**
+		 * Ornaments the beats, or splits them into two tasks.
+		 */
+		@Override
+		protected void compute() {
+			if (end - start <= PARALLEL_THRESHOLD) {
+				for (int beat = start; beat < end; beat++) {
+					ornamented[beat] = ornament(beats[beat], beats[beat + 1]);
+				}
+				return;
+			}
+			
+			int middle = (start + end) >>> 1;
+			invokeAll(new OrnamentTask(beats, ornamented, start, middle),
+					new OrnamentTask(beats, ornamented, middle, end));
+		}
+	}
+}
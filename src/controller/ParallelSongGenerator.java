@@ -0,0 +1,335 @@
+package controller;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import notes.*;
+import notes.scales.*;
+import notes.types.*;
+
+import controller.rules.RuleRegistry;
+import exceptions.*;
+
+/**
+ * The ParallelSongGenerator writes the phrases of a Song at the same time on
+ * a ForkJoinPool, and then stitches them together.
+ * 
+ * Each phrase is written as a one-phrase Song, so it ends on an authentic
+ * cadence, and the next one starts on its tonic. Once the key of each phrase
+ * is planned out, the phrases don't depend on each other. The only thing left
+ * to do afterwards is to re-voice the first beat of each phrase so that it
+ * follows on from the last beat of the phrase before it.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class ParallelSongGenerator {
+	
+	/**
+	 * The chance that a phrase starts in a different key than the last one.
+	 */
+	private static final float MODULATION_CHANCE = 0.25f;
+	
+	/**
+	 * How many times to try re-voicing the first beat of a phrase before
+	 * giving up and re-voicing the whole phrase, and how many times to try
+	 * that.
+	 */
+	private static final int STITCH_ATTEMPTS = 100;
+	
+	/**
+	 * The pool the phrases are generated on
+	 */
+	private ForkJoinPool pool;
+	
+	/**
+	 * The random number generator
+	 */
+	private Random randomizer;
+	
+	/**
+	 * Constructor. Generates phrases on a new pool with one thread per core.
+	 */
+	public ParallelSongGenerator() {
+		this(new ForkJoinPool());
+	}
+	
+	/**
+	 * Constructor. Generates phrases on the given pool.
+	 * 
+	 * @param pool
+	 * 			The pool to generate phrases on
+	 */
+	public ParallelSongGenerator(ForkJoinPool pool) {
+		this.pool = pool;
+		this.randomizer = new Random();
+	}
+	
+	/**
+	 * Generates a whole song, one phrase per task.
+	 * 
+	 * @param startingKey
+	 * 			The root pitch of the starting key.
+	 * @param keyType
+	 * 			Whether the key is major or minor
+	 * @param tempo
+	 * 			The tempo, in BPM
+	 * @param minSongLength
+	 * 			The shortest the song can be, in seconds
+	 * @return The generated song
+	 */
+	public Song generateSong(NoteName startingKey, ScaleType keyType,
+			int tempo, int minSongLength) {
+		Song song = new Song(startingKey, keyType, tempo, minSongLength);
+		Key[] phraseKeys = planPhraseKeys(song);
+		
+		// Write every phrase at once.
+		List<PhraseTask> tasks = new ArrayList<>();
+		for (Key phraseKey : phraseKeys) {
+			tasks.add(new PhraseTask(phraseKey, tempo,
+					song.getBeatsPerPhrase()));
+		}
+		pool.invoke(new PhraseBatchTask(tasks));
+		
+		// Stitch them together in order.
+		for (int phrase = 0; phrase < tasks.size(); phrase++) {
+			Beat[] beats = tasks.get(phrase).getRawResult().getBeatArray();
+			if (phrase == 0) {
+				appendBeats(song, beats, 0, phraseKeys[phrase]);
+			} else {
+				stitchPhrase(song, beats, phraseKeys[phrase]);
+			}
+		}
+		
+		return song;
+	}
+	
+	/**
+	 * Works out how many phrases the song needs and which key each one is
+	 * in.
+	 * 
+	 * @param song
+	 * 			The empty song to plan for
+	 * @return The key of each phrase
+	 */
+	private Key[] planPhraseKeys(Song song) {
+		// Use as many phrases as it takes to reach the minimum length.
+		int numPhrases = song.getPlannedPhraseCount();
+		
+		// Every so often, start the next phrase in a closely related key.
+		Key[] ret = new Key[numPhrases];
+		ret[0] = song.getState().getCurrentKey();
+		for (int phrase = 1; phrase < numPhrases; phrase++) {
+			ret[phrase] = ret[phrase - 1];
+			if (randomizer.nextFloat() < MODULATION_CHANCE) {
+				Key[] possibleModulations =
+						ret[phrase - 1].getPossibleModulations();
+				int choice = randomizer.nextInt(possibleModulations.length);
+				ret[phrase] = possibleModulations[choice];
+			}
+		}
+		
+		return ret;
+	}
+	
+	/**
+	 * Adds a phrase to the end of the song, re-voicing its first beat so that
+	 * it follows on from the last beat of the song.
+	 * 
+	 * @param song
+	 * 			The song to add to
+	 * @param beats
+	 * 			The beats of the phrase
+	 * @param phraseKey
+	 * 			The key the phrase was written in
+	 */
+	private void stitchPhrase(Song song, Beat[] beats, Key phraseKey) {
+		Beat lastBeat = song.getState().getLastBeat();
+		int numVoices = song.getNumVoices();
+		RuleRegistry rules = song.getRules();
+		
+		for (int attempt = 0; attempt < STITCH_ATTEMPTS; attempt++) {
+			// Voice the first beat against the end of the last phrase.
+			Beat firstBeat = new Beat(beats[0].getChord(), lastBeat,
+					numVoices);
+			try {
+				firstBeat.generateNotes(rules);
+			} catch (InvalidChordException ex) {
+				continue;
+			}
+			
+			// The second beat was voiced against the old first beat, so make
+			// sure it still follows the rules.
+			if (beats.length > 1 && !rules.canPrecede(firstBeat, beats[1])) {
+				continue;
+			}
+			
+			// The beats around the seam lead somewhere new, so ornament
+			// them again.
+			song.replaceLastBeat(Ornamenter.ornament(lastBeat, firstBeat));
+			if (beats.length == 1) {
+				song.appendBeat(firstBeat, phraseKey);
+				return;
+			}
+			Beat secondBeat = new Beat(beats[1], firstBeat);
+			song.appendBeat(Ornamenter.ornament(firstBeat, secondBeat),
+					phraseKey);
+			if (beats.length == 2) {
+				song.appendBeat(secondBeat, phraseKey);
+				return;
+			}
+			song.appendBeat(Ornamenter.ornament(secondBeat, beats[2]),
+					phraseKey);
+			appendBeats(song, beats, 2, phraseKey);
+			return;
+		}
+		
+		// If no voicing of the first beat fits, voice the whole phrase again,
+		// keeping its chords and key.
+		for (int attempt = 0; attempt < STITCH_ATTEMPTS; attempt++) {
+			Beat[] voiced = revoicePhrase(lastBeat, beats, numVoices, rules);
+			if (voiced == null) {
+				continue;
+			}
+			song.replaceLastBeat(Ornamenter.ornament(lastBeat, voiced[0]));
+			for (int beat = 0; beat < voiced.length - 1; beat++) {
+				song.appendBeat(Ornamenter.ornament(voiced[beat],
+						voiced[beat + 1]), phraseKey);
+			}
+			song.appendBeat(voiced[voiced.length - 1], phraseKey);
+			return;
+		}
+		throw new IllegalStateException("Unable to stitch a phrase in "
+				+ phraseKey + " onto the song");
+	}
+	
+	/**
+	 * Voices every chord of a phrase again, one after the other, starting
+	 * from the last beat of the song. The new beats aren't ornamented.
+	 * 
+	 * @param lastBeat
+	 * 			The last beat of the song
+	 * @param beats
+	 * 			The beats of the phrase
+	 * @param numVoices
+	 * 			The number of voices
+	 * @param rules
+	 * 			The rules the new voicings have to follow
+	 * @return The new beats, or null if one of the chords couldn't be voiced
+	 */
+	private static Beat[] revoicePhrase(Beat lastBeat, Beat[] beats,
+			int numVoices, RuleRegistry rules) {
+		Beat[] ret = new Beat[beats.length];
+		Beat prevBeat = lastBeat;
+		for (int beat = 0; beat < beats.length; beat++) {
+			ret[beat] = new Beat(beats[beat].getChord(), prevBeat, numVoices);
+			try {
+				ret[beat].generateNotes(rules);
+			} catch (InvalidChordException ex) {
+				return null;
+			}
+			prevBeat = ret[beat];
+		}
+		return ret;
+	}
+	
+	/**
+	 * Adds beats to the end of a song as they are.
+	 * 
+	 * @param song
+	 * 			The song to add to
+	 * @param beats
+	 * 			The beats to add
+	 * @param start
+	 * 			The index of the first beat to add
+	 * @param key
+	 * 			The key the beats were written in
+	 */
+	private static void appendBeats(Song song, Beat[] beats, int start,
+			Key key) {
+		for (int beat = start; beat < beats.length; beat++) {
+			song.appendBeat(beats[beat], key);
+		}
+	}
+	
+	/**
+	 * Generates a single phrase in a single key.
+	 */
+	@SuppressWarnings("serial") // ignore
+	private static class PhraseTask extends RecursiveTask<Song> {
+		
+		/**
+		 * The key of the phrase
+		 */
+		private Key phraseKey;
+		
+		/**
+		 * The tempo, in BPM
+		 */
+		private int tempo;
+		
+		/**
+		 * The number of beats in the phrase
+		 */
+		private int numBeats;
+		
+		/**
+		 * Constructor.
+		 * 
+		 * @param phraseKey
+		 * 			The key of the phrase
+		 * @param tempo
+		 * 			The tempo, in BPM
+		 * @param numBeats
+		 * 			The number of beats in the phrase
+		 */
+		PhraseTask(Key phraseKey, int tempo, int numBeats) {
+			this.phraseKey = phraseKey;
+			this.tempo = tempo;
+			this.numBeats = numBeats;
+		}
+		
+		/**
+		 * Writes the phrase as a song of its own.
+		 */
+		@Override
+		protected Song compute() {
+			Song phrase = new Song(phraseKey, tempo, 0);
+			phrase.setAllowModulation(false);
+			for (int beat = 0; beat < numBeats; beat++) {
+				phrase.addBeat();
+			}
+			return phrase;
+		}
+	}
+	
+	/**
+	 * Runs a list of PhraseTasks side by side.
+	 */
+	@SuppressWarnings("serial") // ignore
+	private static class PhraseBatchTask extends RecursiveAction {
+		
+		/**
+		 * The phrases to generate
+		 */
+		private List<PhraseTask> tasks;
+		
+		/**
+		 * Constructor.
+		 * 
+		 * @param tasks
+		 * 			The phrases to generate
+		 */
+		PhraseBatchTask(List<PhraseTask> tasks) {
+			this.tasks = tasks;
+		}
+		
+		/**
+		 * Forks every phrase and waits for them all.
+		 */
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	}
+}
@@ -0,0 +1,509 @@
+package controller;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * The PcmRenderer turns songs straight into audio with a simple organ-like
+ * sound of its own, without a synthesizer. It's much lighter than the
+ * software synthesizer, and meant for quick previews.
+ * 
+ * Each pitch has a precomputed wavetable: one cycle of a few harmonics.
+ * Every voice plays by stepping through the table for its note, with a short
+ * fade in at the start of each note and a fade out at the end so notes don't
+ * click. A new note starts while the last one is still fading out, so each
+ * voice has two slots to play in and swaps between them.
+ * 
+ * The song is rendered half a beat at a time, since notes only start and
+ * stop on half beats. Within each half beat, every slot is mixed in with a
+ * plain loop over the samples.
+ * 
+ * A renderer keeps its buffers from song to song, so it shouldn't be shared
+ * between threads.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class PcmRenderer {
+	
+	/**
+	 * The format of the audio: CD quality, 16-bit mono
+	 */
+	public static final AudioFormat FORMAT = new AudioFormat(44100, 16, 1,
+			true, false);
+	
+	/**
+	 * The lowest pitch with a wavetable. Chords go down to 43, and a
+	 * non-chord tone can be a step past that.
+	 */
+	private static final int LOWEST_PITCH = 41;
+	
+	/**
+	 * The highest pitch with a wavetable. Chords go up to 78, and a
+	 * non-chord tone can be a step past that.
+	 */
+	private static final int HIGHEST_PITCH = 80;
+	
+	/**
+	 * The number of bits used to index a wavetable
+	 */
+	private static final int TABLE_BITS = 11;
+	
+	/**
+	 * The relative strength of each harmonic in the sound
+	 */
+	private static final double[] HARMONICS = {1, 0.5, 0.3, 0.15, 0.1, 0.05};
+	
+	/**
+	 * The wavetable for each pitch, from LOWEST_PITCH up
+	 */
+	private static final float[][] WAVETABLES = makeWavetables();
+	
+	/**
+	 * How long a note takes to fade in, in samples
+	 */
+	private static final int ATTACK_LENGTH = 220;
+	
+	/**
+	 * How long a note takes to fade out, in samples
+	 */
+	private static final int RELEASE_LENGTH = 1320;
+	
+	/**
+	 * How loud each note is at most. Leaves room for four voices along with
+	 * the notes they're fading out.
+	 */
+	private static final float VOICE_LEVEL = 0.15f;
+	
+	/**
+	 * The length of a WAV file's header
+	 */
+	private static final int WAV_HEADER_LENGTH = 44;
+	
+	/**
+	 * The wavetable each slot is playing
+	 */
+	private float[][] tables;
+	
+	/**
+	 * Where each slot is in its wavetable, as a fraction of the cycle
+	 * scaled to the range of an int
+	 */
+	private int[] phases;
+	
+	/**
+	 * How far each slot moves through its wavetable each sample
+	 */
+	private int[] increments;
+	
+	/**
+	 * How loud each slot is
+	 */
+	private float[] levels;
+	
+	/**
+	 * How much each slot's level changes each sample while fading
+	 */
+	private float[] steps;
+	
+	/**
+	 * The number of samples left in each slot's fade
+	 */
+	private int[] fadeLengths;
+	
+	/**
+	 * The slot each voice's current note is in
+	 */
+	private int[] currentSlots;
+	
+	/**
+	 * The samples of the half beat being mixed
+	 */
+	private float[] mix;
+	
+	/**
+	 * The mixed samples, encoded
+	 */
+	private ByteBuffer output;
+	
+	/**
+	 * Constructor.
+	 */
+	public PcmRenderer() {
+		this.mix = new float[0];
+		this.output = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Works out how long a song is once rendered, including the fade out of
+	 * the last notes.
+	 * 
+	 * @param song
+	 * 			The song
+	 * @return The number of samples
+	 */
+	public static long getNumFrames(ColumnarSong song) {
+		return halfBeatStart(song, 2 * song.getNumBeats()) + RELEASE_LENGTH;
+	}
+	
+	/**
+	 * Renders a song to a WAV file, replacing it if it's already there.
+	 * 
+	 * @param song
+	 * 			The song to render
+	 * @param outputFile
+	 * 			The file to write it to
+	 * @throws IOException
+	 * 			If the file can't be written
+	 */
+	public void writeWav(ColumnarSong song, File outputFile)
+			throws IOException {
+		try (OutputStream out = new BufferedOutputStream(
+				new FileOutputStream(outputFile))) {
+			long dataLength = getNumFrames(song) * FORMAT.getFrameSize();
+			if (dataLength + WAV_HEADER_LENGTH - 8 > 0xFFFFFFFFL) {
+				throw new IOException("Song is too long for a WAV file");
+			}
+			ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_LENGTH)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			header.put((byte) 'R').put((byte) 'I').put((byte) 'F')
+					.put((byte) 'F');
+			header.putInt((int) (dataLength + WAV_HEADER_LENGTH - 8));
+			header.put((byte) 'W').put((byte) 'A').put((byte) 'V')
+					.put((byte) 'E');
+			header.put((byte) 'f').put((byte) 'm').put((byte) 't')
+					.put((byte) ' ');
+			header.putInt(16);
+			header.putShort((short) 1);
+			header.putShort((short) FORMAT.getChannels());
+			header.putInt((int) FORMAT.getSampleRate());
+			header.putInt((int) FORMAT.getSampleRate()
+					* FORMAT.getFrameSize());
+			header.putShort((short) FORMAT.getFrameSize());
+			header.putShort((short) FORMAT.getSampleSizeInBits());
+			header.put((byte) 'd').put((byte) 'a').put((byte) 't')
+					.put((byte) 'a');
+			header.putInt((int) dataLength);
+			out.write(header.array());
+			render(song, out);
+		}
+	}
+	
+	/**
+	 * Renders a song and plays it on a line, blocking until the last of it
+	 * has been handed to the line. The line has to be open in FORMAT.
+	 * 
+	 * @param song
+	 * 			The song to play
+	 * @param line
+	 * 			The line to play it on
+	 */
+	public void play(ColumnarSong song, final SourceDataLine line) {
+		// Check for valid input
+		if (!line.getFormat().matches(FORMAT)) {
+			throw new IllegalArgumentException("Line must be open in FORMAT!");
+		}
+		
+		line.start();
+		try {
+			render(song, new OutputStream() {
+				@Override
+				public void write(int b) {
+					write(new byte[] {(byte) b}, 0, 1);
+				}
+				
+				@Override
+				public void write(byte[] bytes, int offset, int length) {
+					line.write(bytes, offset, length);
+				}
+			});
+		} catch (IOException ex) {
+			// Lines don't throw IOExceptions.
+			throw new IllegalStateException(ex);
+		}
+		line.drain();
+	}
+	
+	/**
+	 * Renders a song as raw samples in FORMAT, half a beat at a time.
+	 * 
+	 * @param song
+	 * 			The song to render
+	 * @param out
+	 * 			Where to write the samples
+	 * @return The number of samples written
+	 * @throws IOException
+	 * 			If the samples can't be written
+	 */
+	public long render(ColumnarSong song, OutputStream out)
+			throws IOException {
+		setUpSlots(song.getNumVoices());
+		int numHalves = 2 * song.getNumBeats();
+		long ret = 0;
+		for (int half = 0; half <= numHalves; half++) {
+			startNotes(song, half);
+			long end = half < numHalves ? halfBeatStart(song, half + 1)
+					: getNumFrames(song);
+			int length = (int) (end - ret);
+			mixSlots(length);
+			writeSamples(out, length);
+			ret = end;
+		}
+		return ret;
+	}
+	
+	/**
+	 * Works out when a half beat starts.
+	 * 
+	 * @param song
+	 * 			The song
+	 * @param half
+	 * 			The index of the half beat
+	 * @return The index of its first sample
+	 */
+	private static long halfBeatStart(ColumnarSong song, int half) {
+		return Math.round(half * 30.0 * FORMAT.getSampleRate()
+				/ song.getBPM());
+	}
+	
+	/**
+	 * Makes sure there are two slots per voice, all silent.
+	 * 
+	 * @param numVoices
+	 * 			The number of voices
+	 */
+	private void setUpSlots(int numVoices) {
+		int numSlots = 2 * numVoices;
+		tables = new float[numSlots][];
+		phases = new int[numSlots];
+		increments = new int[numSlots];
+		levels = new float[numSlots];
+		steps = new float[numSlots];
+		fadeLengths = new int[numSlots];
+		currentSlots = new int[numVoices];
+		for (int voice = 0; voice < numVoices; voice++) {
+			currentSlots[voice] = 2 * voice;
+		}
+	}
+	
+	/**
+	 * Fades out the notes that stop on a half beat, and starts the ones that
+	 * start on it. Every beat starts its notes again, and the middle of a
+	 * beat only starts a note if the pitch changes.
+	 * 
+	 * @param song
+	 * 			The song
+	 * @param half
+	 * 			The index of the half beat
+	 */
+	private void startNotes(ColumnarSong song, int half) {
+		int beat = half / 2;
+		boolean middle = half % 2 == 1;
+		for (int voice = 0; voice < song.getNumVoices(); voice++) {
+			byte[] firstHalf = song.getPitchesFirstHalf(voice);
+			byte[] secondHalf = song.getPitchesSecondHalf(voice);
+			if (middle && firstHalf[beat] == secondHalf[beat]) {
+				continue;
+			}
+			
+			int slot = currentSlots[voice];
+			if (tables[slot] != null) {
+				fade(slot, 0, RELEASE_LENGTH);
+			}
+			if (beat == song.getNumBeats()) {
+				continue;
+			}
+			
+			// Swap to the other slot, so the last note can fade out.
+			slot ^= 1;
+			currentSlots[voice] = slot;
+			int pitch = middle ? secondHalf[beat] : firstHalf[beat];
+			tables[slot] = getWavetable(pitch);
+			phases[slot] = 0;
+			increments[slot] = getIncrement(pitch);
+			levels[slot] = 0;
+			fade(slot, VOICE_LEVEL, ATTACK_LENGTH);
+		}
+	}
+	
+	/**
+	 * Starts a slot fading to a new level.
+	 * 
+	 * @param slot
+	 * 			The slot
+	 * @param level
+	 * 			The level to fade to
+	 * @param length
+	 * 			How long to take, in samples
+	 */
+	private void fade(int slot, float level, int length) {
+		steps[slot] = (level - levels[slot]) / length;
+		fadeLengths[slot] = length;
+	}
+	
+	/**
+	 * Mixes every slot that's playing into the mix buffer.
+	 * 
+	 * @param length
+	 * 			The number of samples to mix
+	 */
+	private void mixSlots(int length) {
+		if (mix.length < length) {
+			mix = new float[length];
+		}
+		for (int indx = 0; indx < length; indx++) {
+			mix[indx] = 0;
+		}
+		
+		for (int slot = 0; slot < tables.length; slot++) {
+			float[] table = tables[slot];
+			if (table == null) {
+				continue;
+			}
+			int phase = phases[slot];
+			int increment = increments[slot];
+			float level = levels[slot];
+			int pos = 0;
+			while (pos < length) {
+				// Mix up to the end of the fade, or the half beat.
+				int end = length;
+				float step = 0;
+				if (fadeLengths[slot] > 0) {
+					end = Math.min(length, pos + fadeLengths[slot]);
+					step = steps[slot];
+					fadeLengths[slot] -= end - pos;
+				}
+				for (int indx = pos; indx < end; indx++) {
+					mix[indx] += table[phase >>> (32 - TABLE_BITS)] * level;
+					phase += increment;
+					level += step;
+				}
+				pos = end;
+				
+				if (step != 0 && fadeLengths[slot] == 0) {
+					// Land exactly on the level faded to.
+					level = step > 0 ? VOICE_LEVEL : 0;
+					if (level == 0) {
+						table = null;
+						break;
+					}
+				}
+			}
+			tables[slot] = table;
+			phases[slot] = phase;
+			levels[slot] = level;
+		}
+	}
+	
+	/**
+	 * Encodes the mixed samples and writes them out.
+	 * 
+	 * @param out
+	 * 			Where to write them
+	 * @param length
+	 * 			The number of samples
+	 * @throws IOException
+	 * 			If the samples can't be written
+	 */
+	private void writeSamples(OutputStream out, int length)
+			throws IOException {
+		int numBytes = length * FORMAT.getFrameSize();
+		if (output.capacity() < numBytes) {
+			output = ByteBuffer.allocate(numBytes)
+					.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		output.clear();
+		for (int indx = 0; indx < length; indx++) {
+			float sample = Math.max(-1, Math.min(1, mix[indx]));
+			output.putShort((short) (sample * Short.MAX_VALUE));
+		}
+		out.write(output.array(), 0, numBytes);
+	}
+	
+	/**
+	 * Fetches the wavetable for a pitch. Pitches past the ends of the tables
+	 * are moved in by octaves.
+	 * 
+	 * @param pitch
+	 * 			The MIDI number of the pitch
+	 * @return The wavetable
+	 */
+	private static float[] getWavetable(int pitch) {
+		return WAVETABLES[foldPitch(pitch) - LOWEST_PITCH];
+	}
+	
+	/**
+	 * Works out how far through the wavetable to move each sample to play a
+	 * pitch.
+	 * 
+	 * @param pitch
+	 * 			The MIDI number of the pitch
+	 * @return The step, as a fraction of the cycle scaled to the range of an
+	 * 			int
+	 */
+	private static int getIncrement(int pitch) {
+		double frequency = 440 * Math.pow(2, (foldPitch(pitch) - 69) / 12.0);
+		return (int) Math.round(frequency / FORMAT.getSampleRate()
+				* (1L << 32));
+	}
+	
+	/**
+	 * Moves a pitch in by octaves until it has a wavetable.
+	 * 
+	 * @param pitch
+	 * 			The MIDI number of the pitch
+	 * @return The MIDI number of a pitch with a wavetable
+	 */
+	private static int foldPitch(int pitch) {
+		while (pitch < LOWEST_PITCH) {
+			pitch += 12;
+		}
+		while (pitch > HIGHEST_PITCH) {
+			pitch -= 12;
+		}
+		return pitch;
+	}
+	
+	/**
+	 * Makes the wavetable for each pitch. Each is one cycle of the
+	 * harmonics, leaving out any too high to be played at the sample rate,
+	 * scaled so the loudest point is 1.
+	 * 
+	 * @return The wavetables, from LOWEST_PITCH up
+	 */
+	private static float[][] makeWavetables() {
+		int tableLength = 1 << TABLE_BITS;
+		float[][] ret = new float[HIGHEST_PITCH - LOWEST_PITCH + 1][];
+		for (int pitch = LOWEST_PITCH; pitch <= HIGHEST_PITCH; pitch++) {
+			double frequency = 440 * Math.pow(2, (pitch - 69) / 12.0);
+			double[] wave = new double[tableLength];
+			double peak = 0;
+			for (int indx = 0; indx < tableLength; indx++) {
+				double angle = 2 * Math.PI * indx / tableLength;
+				for (int harmonic = 1; harmonic <= HARMONICS.length;
+						harmonic++) {
+					if (frequency * harmonic < FORMAT.getSampleRate() / 2) {
+						wave[indx] += HARMONICS[harmonic - 1]
+								* Math.sin(harmonic * angle);
+					}
+				}
+				peak = Math.max(peak, Math.abs(wave[indx]));
+			}
+			
+			float[] table = new float[tableLength];
+			for (int indx = 0; indx < tableLength; indx++) {
+				table[indx] = (float) (wave[indx] / peak);
+			}
+			ret[pitch - LOWEST_PITCH] = table;
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,555 @@
+package controller;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.*;
+
+/**
+ * The PlaybackScheduler plays many songs at once through one synthesizer,
+ * all from a single thread. Each song is given a channel of its own, and
+ * the thread sends every song's notes in order of when they're due.
+ * 
+ * A song's channel is picked by the scheduler, and freed once the song
+ * finishes. Leaving out the percussion channel, there are only 15, so at
+ * most 15 songs can play at once. Any more would have to share a channel,
+ * and stopping one song's notes would cut off another's, so they're turned
+ * away instead.
+ * 
+ * When the synthesizer has a clock, each note is sent a little ahead of
+ * time with the time it should sound, so the synthesizer can place it
+ * exactly, whatever the thread is doing. The synthesizer's clock is checked
+ * now and then so long runs don't drift.
+ * 
+ * It keeps track of how late the thread is in sending notes, to show how
+ * well it's keeping up.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class PlaybackScheduler {
+	
+	/**
+	 * The percussion channel, which is never given to a song
+	 */
+	public static final int PERCUSSION_CHANNEL = 9;
+	
+	/**
+	 * The number of MIDI channels
+	 */
+	private static final int NUM_CHANNELS = 16;
+	
+	/**
+	 * How far ahead of time notes are sent to a synthesizer with a clock, in
+	 * nanoseconds
+	 */
+	private static final long LEAD_TIME = 20000000;
+	
+	/**
+	 * How late a note can be sent to a synthesizer without a clock before
+	 * it counts as late, in nanoseconds
+	 */
+	private static final long LATE_TOLERANCE = 1000000;
+	
+	/**
+	 * How long after being added a song starts if no time is given, in
+	 * nanoseconds
+	 */
+	private static final long START_DELAY = 50000000;
+	
+	/**
+	 * How often to check the synthesizer's clock, in nanoseconds
+	 */
+	private static final long RESYNC_INTERVAL = 1000000000;
+	
+	/**
+	 * The controller number that stops every note on a channel
+	 */
+	private static final int ALL_NOTES_OFF = 123;
+	
+	/**
+	 * Where the notes are sent
+	 */
+	private Receiver receiver;
+	
+	/**
+	 * The synthesizer's clock, or null to send each note when it's due
+	 */
+	private MidiDevice clock;
+	
+	/**
+	 * The synthesizer's clock minus System.nanoTime(), in microseconds
+	 */
+	private long clockOffset;
+	
+	/**
+	 * When the synthesizer's clock was last checked
+	 */
+	private long lastSync;
+	
+	/**
+	 * Songs added but not picked up by the thread yet
+	 */
+	private ConcurrentLinkedQueue<Stream> added;
+	
+	/**
+	 * The songs playing, soonest first. Only used by the thread.
+	 */
+	private PriorityQueue<Stream> playing;
+	
+	/**
+	 * Sends the notes
+	 */
+	private Thread thread;
+	
+	/**
+	 * Whether stop() has been called
+	 */
+	private volatile boolean stopped;
+	
+	/**
+	 * The number of songs added and not finished
+	 */
+	private volatile int numSongs;
+	
+	/**
+	 * Which channels have a song playing on them
+	 */
+	private boolean[] channelsInUse;
+	
+	/**
+	 * The number of messages sent
+	 */
+	private volatile long messagesSent;
+	
+	/**
+	 * The number of times notes were sent after they should have sounded
+	 */
+	private volatile long lateSends;
+	
+	/**
+	 * The total of how late each send was, in nanoseconds
+	 */
+	private volatile long totalLateness;
+	
+	/**
+	 * The latest a send has been, in nanoseconds
+	 */
+	private volatile long maxLateness;
+	
+	/**
+	 * The number of sends
+	 */
+	private volatile long numSends;
+	
+	/**
+	 * Constructor. Nothing plays until start() is called.
+	 * 
+	 * @param receiver
+	 * 			Where to send the notes
+	 * @param clock
+	 * 			The device the receiver belongs to, to time the notes by, or
+	 * 			null to send each note when it's due
+	 */
+	public PlaybackScheduler(Receiver receiver, MidiDevice clock) {
+		this.receiver = receiver;
+		this.clock = clock;
+		this.added = new ConcurrentLinkedQueue<>();
+		this.playing = new PriorityQueue<>();
+		this.channelsInUse = new boolean[NUM_CHANNELS];
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				schedule();
+			}
+		}, "playback-scheduler");
+		this.thread.setDaemon(true);
+		this.thread.setPriority(Thread.MAX_PRIORITY);
+	}
+	
+	/**
+	 * Starts the thread. Songs can be added before or after.
+	 */
+	public void start() {
+		if (clock != null && clock.getMicrosecondPosition() < 0) {
+			// The device can't tell the time.
+			clock = null;
+		}
+		thread.start();
+	}
+	
+	/**
+	 * Stops every song, and the thread.
+	 * 
+	 * @throws InterruptedException
+	 * 			If interrupted while waiting for the thread to stop
+	 */
+	public void stop() throws InterruptedException {
+		stopped = true;
+		LockSupport.unpark(thread);
+		thread.join();
+	}
+	
+	/**
+	 * Adds a song to play on a free channel, starting shortly.
+	 * 
+	 * @param song
+	 * 			The song
+	 * @return The channel the song plays on
+	 * @throws IllegalStateException
+	 * 			If every channel already has a song playing on it
+	 */
+	public int addSong(ColumnarSong song) {
+		return addSong(song, System.nanoTime() + START_DELAY);
+	}
+	
+	/**
+	 * Adds a song to play on a free channel, starting at a given time. Songs
+	 * given the same start time play in step.
+	 * 
+	 * @param song
+	 * 			The song
+	 * @param startTime
+	 * 			When to start playing, by System.nanoTime()
+	 * @return The channel the song plays on
+	 * @throws IllegalStateException
+	 * 			If every channel already has a song playing on it
+	 */
+	public int addSong(ColumnarSong song, long startTime) {
+		int channel;
+		synchronized (this) {
+			channel = 0;
+			while (channel < NUM_CHANNELS && (channelsInUse[channel]
+					|| channel == PERCUSSION_CHANNEL)) {
+				channel++;
+			}
+			if (channel == NUM_CHANNELS) {
+				throw new IllegalStateException("Every channel is in use");
+			}
+			channelsInUse[channel] = true;
+			numSongs++;
+		}
+		added.add(new Stream(song, channel, startTime));
+		LockSupport.unpark(thread);
+		return channel;
+	}
+	
+	/**
+	 * Gets the number of songs added that haven't finished.
+	 * 
+	 * @return See above
+	 */
+	public int getNumSongs() {
+		return numSongs;
+	}
+	
+	/**
+	 * Gets the number of messages sent to the receiver.
+	 * 
+	 * @return See above
+	 */
+	public long getMessagesSent() {
+		return messagesSent;
+	}
+	
+	/**
+	 * Gets the number of times notes were sent after they should have
+	 * sounded, so they sounded late. Without a clock, up to a millisecond
+	 * late is allowed.
+	 * 
+	 * @return See above
+	 */
+	public long getLateSends() {
+		return lateSends;
+	}
+	
+	/**
+	 * Gets how late the thread has been in sending notes, on average. This
+	 * is the jitter of playback when the synthesizer has no clock.
+	 * 
+	 * @return The average time in nanoseconds
+	 */
+	public long getMeanLateness() {
+		return numSends == 0 ? 0 : totalLateness / numSends;
+	}
+	
+	/**
+	 * Gets the latest the thread has been in sending notes.
+	 * 
+	 * @return The time in nanoseconds
+	 */
+	public long getMaxLateness() {
+		return maxLateness;
+	}
+	
+	/**
+	 * Sends each song's notes as they come due, until stopped. Runs on the
+	 * thread.
+	 */
+	private void schedule() {
+		boolean[] usedChannels = new boolean[NUM_CHANNELS];
+		while (!stopped) {
+			Stream stream = added.poll();
+			while (stream != null) {
+				usedChannels[stream.channel] = true;
+				playing.add(stream);
+				stream = added.poll();
+			}
+			
+			Stream next = playing.peek();
+			if (next == null) {
+				LockSupport.park(this);
+				continue;
+			}
+			long due = next.getNextTime();
+			long sendTime = clock == null ? due : due - LEAD_TIME;
+			long now = System.nanoTime();
+			if (sendTime > now) {
+				// Woken early if a song is added or it's stopped.
+				LockSupport.parkNanos(this, sendTime - now);
+				continue;
+			}
+			
+			playing.poll();
+			record(now - sendTime, clock == null
+					? now - due > LATE_TOLERANCE : now > due);
+			long timeStamp = -1;
+			if (clock != null) {
+				syncClock(now);
+				timeStamp = due / 1000 + clockOffset;
+			}
+			messagesSent += next.sendStep(receiver, timeStamp);
+			if (next.isFinished()) {
+				synchronized (this) {
+					channelsInUse[next.channel] = false;
+					numSongs--;
+				}
+			} else {
+				playing.add(next);
+			}
+		}
+		silence(usedChannels);
+	}
+	
+	/**
+	 * Notes down how late a send was.
+	 * 
+	 * @param lateness
+	 * 			How long after it was meant to be sent, in nanoseconds
+	 * @param late
+	 * 			Whether it was sent after it should have sounded
+	 */
+	private void record(long lateness, boolean late) {
+		numSends++;
+		totalLateness += lateness;
+		maxLateness = Math.max(maxLateness, lateness);
+		if (late) {
+			lateSends++;
+		}
+	}
+	
+	/**
+	 * Checks the synthesizer's clock against System.nanoTime(), if it's
+	 * been a while. The change is smoothed out, since the clock only moves
+	 * in steps.
+	 * 
+	 * @param now
+	 * 			The time now, by System.nanoTime()
+	 */
+	private void syncClock(long now) {
+		if (lastSync != 0 && now - lastSync < RESYNC_INTERVAL) {
+			return;
+		}
+		long offset = clock.getMicrosecondPosition() - now / 1000;
+		if (lastSync == 0) {
+			clockOffset = offset;
+		} else {
+			clockOffset += (offset - clockOffset) / 8;
+		}
+		lastSync = now;
+	}
+	
+	/**
+	 * Stops every note on the channels that have been used.
+	 * 
+	 * @param usedChannels
+	 * 			Which channels have been used
+	 */
+	private void silence(boolean[] usedChannels) {
+		for (int channel = 0; channel < usedChannels.length; channel++) {
+			if (usedChannels[channel]) {
+				receiver.send(Stream.message(ShortMessage.CONTROL_CHANGE,
+						channel, ALL_NOTES_OFF, 0), -1);
+			}
+		}
+	}
+	
+	/**
+	 * A song being played, sent half a beat at a time. Each half beat's
+	 * notes are stopped before the next ones start, in the same order as
+	 * MidiFileWriter.encodeVoice().
+	 */
+	private static class Stream implements Comparable<Stream> {
+		
+		/**
+		 * The song
+		 */
+		private ColumnarSong song;
+		
+		/**
+		 * The channel every voice plays on
+		 */
+		private int channel;
+		
+		/**
+		 * When the song starts, by System.nanoTime()
+		 */
+		private long startTime;
+		
+		/**
+		 * The length of half a beat, in nanoseconds
+		 */
+		private double halfBeatLength;
+		
+		/**
+		 * The next half beat to send
+		 */
+		private int nextHalf;
+		
+		/**
+		 * Constructor.
+		 * 
+		 * @param song
+		 * 			The song
+		 * @param channel
+		 * 			The channel every voice plays on
+		 * @param startTime
+		 * 			When the song starts, by System.nanoTime()
+		 */
+		Stream(ColumnarSong song, int channel, long startTime) {
+			this.song = song;
+			this.channel = channel;
+			this.startTime = startTime;
+			this.halfBeatLength = 30e9 / song.getBPM();
+		}
+		
+		/**
+		 * Gets when the next half beat is due.
+		 * 
+		 * @return The time, by System.nanoTime()
+		 */
+		long getNextTime() {
+			return startTime + Math.round(nextHalf * halfBeatLength);
+		}
+		
+		/**
+		 * Checks whether every note has been sent.
+		 * 
+		 * @return See above
+		 */
+		boolean isFinished() {
+			return nextHalf > 2 * song.getNumBeats();
+		}
+		
+		/**
+		 * Sends the notes stopping and starting on the next half beat, and
+		 * moves on to the one after.
+		 * 
+		 * @param receiver
+		 * 			Where to send them
+		 * @param timeStamp
+		 * 			When they should sound, or -1 for right away
+		 * @return The number of messages sent
+		 */
+		int sendStep(Receiver receiver, long timeStamp) {
+			int beat = nextHalf / 2;
+			boolean middle = nextHalf % 2 == 1;
+			int ret = 0;
+			for (int voice = 0; voice < song.getNumVoices(); voice++) {
+				byte[] firstHalf = song.getPitchesFirstHalf(voice);
+				byte[] secondHalf = song.getPitchesSecondHalf(voice);
+				if (middle && firstHalf[beat] != secondHalf[beat]) {
+					send(receiver, ShortMessage.NOTE_OFF, firstHalf[beat],
+							timeStamp);
+					ret++;
+				} else if (!middle && beat > 0) {
+					send(receiver, ShortMessage.NOTE_OFF, secondHalf[beat - 1],
+							timeStamp);
+					ret++;
+				}
+			}
+			if (beat < song.getNumBeats()) {
+				for (int voice = 0; voice < song.getNumVoices(); voice++) {
+					byte[] firstHalf = song.getPitchesFirstHalf(voice);
+					byte[] secondHalf = song.getPitchesSecondHalf(voice);
+					if (!middle) {
+						send(receiver, ShortMessage.NOTE_ON, firstHalf[beat],
+								timeStamp);
+						ret++;
+					} else if (firstHalf[beat] != secondHalf[beat]) {
+						send(receiver, ShortMessage.NOTE_ON, secondHalf[beat],
+								timeStamp);
+						ret++;
+					}
+				}
+			}
+			nextHalf++;
+			return ret;
+		}
+		
+		/**
+		 * Sends a note message on the song's channel.
+		 * 
+		 * @param receiver
+		 * 			Where to send it
+		 * @param command
+		 * 			NOTE_ON or NOTE_OFF
+		 * @param note
+		 * 			The MIDI number of the note
+		 * @param timeStamp
+		 * 			When it should sound, or -1 for right away
+		 */
+		private void send(Receiver receiver, int command, int note,
+				long timeStamp) {
+			int velocity = command == ShortMessage.NOTE_ON
+					? MidiFileWriter.VELOCITY : 0;
+			receiver.send(message(command, channel, note, velocity),
+					timeStamp);
+		}
+		
+		/**
+		 * Compares streams by when their next half beat is due.
+		 * 
+		 * @param other
+		 * 			The stream to compare to
+		 * @return Less than 0 if this one is due first
+		 */
+		@Override
+		public int compareTo(Stream other) {
+			return Long.compare(getNextTime(), other.getNextTime());
+		}
+		
+		/**
+		 * Makes a channel message.
+		 * 
+		 * @param command
+		 * 			The command value for the ShortMessage
+		 * @param channel
+		 * 			The channel
+		 * @param data1
+		 * 			The first data byte
+		 * @param data2
+		 * 			The second data byte
+		 * @return The message
+		 */
+		static ShortMessage message(int command, int channel, int data1,
+				int data2) {
+			try {
+				return new ShortMessage(command, channel, data1, data2);
+			} catch (InvalidMidiDataException ex) {
+				throw new IllegalArgumentException("Invalid message", ex);
+			}
+		}
+	}
+}
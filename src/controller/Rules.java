@@ -14,6 +14,13 @@ public class Rules {
 	
 	private static final int[] DISSONANT_LEAPS = {6, 10, 11};
 	
+	/**
+	 * A bit for every leap size isValidLeap() turns down: the dissonant
+	 * leaps, and anything over an octave. Lets batch code check a leap with
+	 * a shift instead of a search.
+	 */
+	public static final long INVALID_LEAP_MASK = buildInvalidLeapMask();
+	
 	/**
 	 * Checks to make sure the transition to the new note follows
 	 * the rules concerning leaps.
@@ -45,6 +52,19 @@ public class Rules {
 		return true;
 	}
 	
+	/**
+	 * Builds INVALID_LEAP_MASK.
+	 * 
+	 * @return A bit for every leap size that isn't allowed
+	 */
+	private static long buildInvalidLeapMask() {
+		long ret = -1L << (OCTAVE_LENGTH + 1);
+		for (int leap : DISSONANT_LEAPS) {
+			ret |= 1L << leap;
+		}
+		return ret;
+	}
+	
 	/**
 	 * Determines whether every chord tone exists in the notes array.
 	 * 
@@ -78,6 +98,7 @@ public class Rules {
 	
 	/**
 	 * Determines if there are parallel fifths between the voices.
+	 * Compound fifths count too.
 	 * 
 	 * @param currNotes
 	 * 			The current beat's notes
@@ -86,23 +107,7 @@ public class Rules {
 	 * @return Whether or not there are parallel fifths
 	 */
 	public static boolean noParallelFifths(Note[] currNotes, Note[] prevNotes) {
-		// Iterate through each of the prevNotes.
-		for (int voice1 = 0; voice1 < prevNotes.length; voice1++) {
-			// For each prevNote, once again, iterate through each prevNote.
-			for (int voice2 = 0; voice2 < prevNotes.length; voice2++) {
-				// If the interval between the two notes is a perfect fifth
-				if (Math.abs(prevNotes[voice1].getInterval(
-						prevNotes[voice2])) == 7) {
-					// If the interval between the same two notes in currNotes
-					// is also a perfect fifth
-					if (Math.abs(currNotes[voice1].getInterval(
-							currNotes[voice2])) == 7) {
-						return false;
-					} // if
-				} // if
-			} // for
-		} // for
-		
-		return true;
+		return !IntervalSignature.hasParallel(IntervalSignature.of(prevNotes),
+				IntervalSignature.of(currNotes), IntervalSignature.FIFTH);
 	}
 }
@@ -1,6 +1,7 @@
 package controller;
 
-import java.util.*;
+import java.io.File;
+import java.io.IOException;
 
 import notes.*;
 import notes.scales.*;
@@ -8,6 +9,7 @@ import notes.types.*;
 
 import static controller.FugueUtil.*;
 import static controller.ChordGenerator.*;
+import controller.rules.RuleRegistry;
 import exceptions.*;
 
 /**
@@ -24,6 +26,17 @@ public class Song {
 	 */
 	private static final int NUM_VOICES = 4;
 	
+	/**
+	 * How many times to try regenerating a window of beats before giving up.
+	 */
+	private static final int REGENERATE_ATTEMPTS = 200;
+	
+	/**
+	 * How many chords to try after the last beat before writing the last
+	 * beat over again.
+	 */
+	private static final int BACKTRACK_AFTER = 20;
+	
 	/**
 	 * The number of quarter notes per measure
 	 */
@@ -56,9 +69,10 @@ public class Song {
 	private float beatsPerMinute;
 	
 	/**
-	 * A list of all the beats
+	 * All the beats generated so far, along with the state of the song
+	 * after the last one.
 	 */
-	private LinkedList<Beat> beats;
+	private SongState state;
 	
 	/**
 	 * Counts the beats left mid-modulation.
@@ -76,10 +90,37 @@ public class Song {
 	 */
 	private Key modulationKey;
 	
+	/**
+	 * Whether the song is allowed to modulate
+	 */
+	private boolean allowModulation = true;
+	
+	/**
+	 * The original state of a window being regenerated, if any.
+	 * Modulations follow the original beats instead of being left to chance.
+	 */
+	private SongState modulationPlan;
+	
 	/**
 	 * The random number generator
 	 */
-	private Random randomizer;
+	private SongRandom randomizer;
+	
+	/**
+	 * Whether to ornament each beat once the next one is added
+	 */
+	private boolean ornamenting = true;
+	
+	/**
+	 * The number of beats at the start of the song that backtracking can't
+	 * rewrite
+	 */
+	private int backtrackFloor = 0;
+	
+	/**
+	 * The rules every beat has to follow
+	 */
+	private RuleRegistry rules;
 	
 	/**
 	 * Constructor.
@@ -95,15 +136,64 @@ public class Song {
 	 */
 	public Song(NoteName startingKey, ScaleType keyType, int tempo,
 			int minSongLength) {
-		beats = new LinkedList<Beat>();
+		this(createKey(startingKey, keyType), tempo, minSongLength);
+	}
+	
+	/**
+	 * Constructor. Starts the song in an already built Key.
+	 * 
+	 * @param startingKey
+	 * 			The starting key
+	 * @param tempo
+	 * 			The tempo, in BPM
+	 * @param minSongLength
+	 * 			The shortest the song can be, in seconds
+	 */
+	Song(Key startingKey, float tempo, int minSongLength) {
 		beatsPerMinute = tempo;
 		beatsUntilSongCanEnd = secondsToBeats(minSongLength);
-		if (keyType == ScaleType.MAJOR){
-			currentKey = new MajorKey(startingKey);
-		} else {
-			currentKey = new MinorKey(startingKey);
-		}
-		randomizer = new Random();
+		currentKey = startingKey;
+		state = SongState.start(currentKey, beatsUntilSongCanEnd);
+		randomizer = new SongRandom();
+		rules = RuleRegistry.standard();
+	}
+	
+	/**
+	 * Constructor. Continues a song from a saved state.
+	 * 
+	 * @param state
+	 * 			The state to continue from
+	 * @param tempo
+	 * 			The tempo, in BPM
+	 */
+	public Song(SongState state, float tempo) {
+		beatsPerMinute = tempo;
+		randomizer = new SongRandom();
+		rules = RuleRegistry.standard();
+		restoreState(state);
+	}
+	
+	/**
+	 * Creates a copy of this song that can keep being generated without
+	 * affecting this one. The two songs share every beat written so far,
+	 * so this takes constant time.
+	 * 
+	 * @return The copy
+	 */
+	public Song fork() {
+		Song ret = new Song(state, beatsPerMinute);
+		ret.allowModulation = allowModulation;
+		ret.rules = rules.copy();
+		return ret;
+	}
+	
+	/**
+	 * Fetches the state of the song after its last beat.
+	 * 
+	 * @return The song's state
+	 */
+	public SongState getState() {
+		return state;
 	}
 	
 	/**
@@ -112,7 +202,16 @@ public class Song {
 	 * @return the array of beats
 	 */
 	public Beat[] getBeatArray() {
-		return convertObjectsToBeats(beats.toArray());
+		return state.getBeatArray();
+	}
+	
+	/**
+	 * Return an array of the keys each beat was written in.
+	 * 
+	 * @return The key of each beat, in the same order as getBeatArray()
+	 */
+	public Key[] getKeyArray() {
+		return state.getKeyArray();
 	}
 	
 	/**
@@ -134,23 +233,273 @@ public class Song {
 	}
 	
 	/**
-	 * Continues adding beats until the song is over.
+	 * Fetches the number of beats in each phrase.
+	 * 
+	 * @return The number of beats in a phrase
+	 */
+	public int getBeatsPerPhrase() {
+		return beatsPerPhrase;
+	}
+	
+	/**
+	 * Sets whether the song may modulate to other keys.
+	 * 
+	 * @param allowModulation
+	 * 			Whether modulations are allowed
+	 */
+	void setAllowModulation(boolean allowModulation) {
+		this.allowModulation = allowModulation;
+	}
+	
+	/**
+	 * Finds whether the song may modulate to other keys.
+	 * 
+	 * @return Whether modulations are allowed
+	 */
+	boolean isModulationAllowed() {
+		return allowModulation;
+	}
+	
+	/**
+	 * Fetches the rules every beat of the song has to follow.
+	 * 
+	 * @return The song's rules
+	 */
+	public RuleRegistry getRules() {
+		return rules;
+	}
+	
+	/**
+	 * Changes the rules the song's beats have to follow from here on.
+	 * Rules aren't saved in checkpoints, so set them again after loading one.
+	 * 
+	 * @param rules
+	 * 			The new rules
+	 */
+	public void setRules(RuleRegistry rules) {
+		this.rules = rules;
+	}
+	
+	/**
+	 * Seeds the song's random number generator, so that the same seed and
+	 * the same starting point always write the same song.
+	 * 
+	 * @param seed
+	 * 			The seed
+	 */
+	public void setSeed(long seed) {
+		randomizer.setSeed(seed);
+	}
+	
+	/**
+	 * Fetches the random number generator every choice in the song is drawn
+	 * from.
+	 * 
+	 * @return The random number generator
+	 */
+	SongRandom getRandomizer() {
+		return randomizer;
+	}
+	
+	/**
+	 * Works out how many phrases it takes to fill the requested length.
+	 * 
+	 * @return The number of phrases in the finished song
+	 */
+	public int getPlannedPhraseCount() {
+		// Beats already written plus beats still needed is the requested
+		// length in beats, no matter how far along the song is.
+		int minBeats = state.getNumBeats() + beatsUntilSongCanEnd;
+		return Math.max(1, (minBeats + beatsPerPhrase - 1) / beatsPerPhrase);
+	}
+	
+	/**
+	 * Works out how many beats the finished song will have.
+	 * 
+	 * @return The number of beats in the finished song
+	 */
+	public int getPlannedBeatCount() {
+		return getPlannedPhraseCount() * beatsPerPhrase;
+	}
+	
+	/**
+	 * Adds beats until the song has the planned number of phrases.
+	 * The last phrase always closes with an authentic cadence.
 	 */
 	public void generateSong() {
-		do {
+		int plannedBeats = getPlannedBeatCount();
+		while (state.getNumBeats() < plannedBeats) {
+			addBeat();
+		}
+	}
+	
+	/**
+	 * Adds beats until the song has the planned number of phrases, saving a
+	 * checkpoint every so often. If the run is cut short, load the last
+	 * checkpoint with SongCheckpoint.load() and call this again to finish
+	 * the same song.
+	 * 
+	 * @param checkpointFile
+	 * 			The file to save checkpoints to
+	 * @param checkpointInterval
+	 * 			The number of beats between checkpoints
+	 * @throws IOException
+	 * 			If a checkpoint couldn't be saved
+	 */
+	public void generateSong(File checkpointFile, int checkpointInterval)
+			throws IOException {
+		// Check for valid input
+		if (checkpointInterval <= 0) {
+			throw new IllegalArgumentException(
+					"Checkpoint interval must be positive!");
+		}
+		
+		int plannedBeats = getPlannedBeatCount();
+		while (state.getNumBeats() < plannedBeats) {
 			addBeat();
-		} while (!endOfSong());
+			if (state.getNumBeats() % checkpointInterval == 0) {
+				SongCheckpoint.save(this, checkpointFile);
+			}
+		}
+		SongCheckpoint.save(this, checkpointFile);
+	}
+	
+	/**
+	 * Writes new beats over the beats from start up to (but not including)
+	 * end, leaving the rest of the song as it is.
+	 * 
+	 * The new beats have to pick up where the beat before the window left
+	 * off, and lead into the beat after the window with the same harmony,
+	 * key and legal voice leading.
+	 * 
+	 * @param start
+	 * 			The index of the first beat to replace
+	 * @param end
+	 * 			The index of the beat after the last one to replace
+	 * @throws InvalidChordException
+	 * 			If no new beats could be found that fit
+	 */
+	public void regenerate(int start, int end) throws InvalidChordException {
+		// Check for valid input
+		int numBeats = state.getNumBeats();
+		if (start < 0 || end > numBeats || start >= end) {
+			throw new IllegalArgumentException("Invalid window: [" + start
+					+ ", " + end + ")");
+		}
+		
+		// Walk back to the state before the window, keeping the states of
+		// the beats after it.
+		SongState[] tail = new SongState[numBeats - end];
+		SongState windowEnd = state;
+		for (int indx = tail.length - 1; indx >= 0; indx--) {
+			tail[indx] = windowEnd;
+			windowEnd = windowEnd.getPrevious();
+		}
+		SongState windowStart = windowEnd;
+		for (int indx = start; indx < end; indx++) {
+			windowStart = windowStart.getPrevious();
+		}
+		
+		for (int attempt = 0; attempt < REGENERATE_ATTEMPTS; attempt++) {
+			// Write the window on top of the state before it.
+			Song trial = new Song(windowStart, beatsPerMinute);
+			trial.randomizer = randomizer;
+			trial.rules = rules;
+			trial.allowModulation = allowModulation;
+			trial.modulationPlan = windowEnd;
+			
+			// Backtracking mustn't reach the beats before the window.
+			trial.setBacktrackFloor(start);
+			try {
+				for (int indx = start; indx < end; indx++) {
+					trial.addBeatAboveFloor();
+				}
+			} catch (InvalidChordException ex) {
+				continue;
+			}
+			
+			// If there's nothing after the window, anything goes.
+			if (tail.length == 0) {
+				restoreState(trial.state);
+				return;
+			}
+			
+			if (!trial.fitsBefore(windowEnd, tail[0].getLastBeat())) {
+				continue;
+			}
+			
+			// Put the beats after the window back on top of the new ones.
+			// The beat after the window may leap in differently now, and its
+			// ornaments depend on that, so ornament it again along with the
+			// last new beat.
+			Beat trialBeat = trial.state.getLastBeat();
+			Beat nextBeat = new Beat(tail[0].getLastBeat(), trialBeat);
+			Beat lastBeat = Ornamenter.ornament(trialBeat, nextBeat);
+			nextBeat = new Beat(nextBeat, lastBeat);
+			if (tail.length > 1) {
+				nextBeat = Ornamenter.ornament(nextBeat,
+						tail[1].getLastBeat());
+			}
+			SongState newState = trial.state.replaceLastBeat(lastBeat)
+					.appendCopyOf(tail[0], nextBeat);
+			for (int indx = 1; indx < tail.length; indx++) {
+				newState = newState.appendCopyOf(tail[indx],
+						tail[indx].getLastBeat());
+			}
+			restoreState(newState);
+			return;
+		}
+		
+		throw new InvalidChordException("Cannot regenerate beats " + start
+				+ " to " + end);
 	}
 	
 	/**
 	 * Adds a generated beat to the chord.
+	 * 
+	 * @throws IllegalStateException
+	 * 			If the beat can only be added by rewriting beats below the
+	 * 			backtrack floor
 	 */
 	public void addBeat() {
+		try {
+			addBeatAboveFloor();
+		} catch (InvalidChordException ex) {
+			throw new IllegalStateException(ex.getMessage(), ex);
+		}
+	}
+	
+	/**
+	 * Adds a generated beat, backtracking if it has to, but never rewriting
+	 * the beats below the backtrack floor.
+	 * 
+	 * @throws InvalidChordException
+	 * 			If no beat can be added without rewriting those beats
+	 */
+	void addBeatAboveFloor() throws InvalidChordException {
+		int failures = 0;
 		while (true) {
 			Chord newChord = generateNextChord();
 			try {
 				addBeat(newChord);
 			} catch (InvalidChordException ex) {
+				// Undo any modulation bookkeeping done for the failed chord.
+				restoreState(state);
+				
+				// Some chords are forced, like the final cadence, and the
+				// last beat may have no way into them. Write it over again,
+				// unless it's been handed on already.
+				failures++;
+				if (failures >= BACKTRACK_AFTER) {
+					if (state.getNumBeats() <= backtrackFloor) {
+						throw new InvalidChordException("Cannot add beat "
+								+ state.getNumBeats() + " without rewriting"
+								+ " the beats before it");
+					}
+					restoreState(state.getPrevious());
+					addBeatAboveFloor();
+					failures = 0;
+				}
 				continue;
 			}
 			return;
@@ -165,23 +514,128 @@ public class Song {
 	 */
 	public void addBeat(Chord newChord)
 			throws InvalidChordException {
-		// Get the previous beat.
-		Beat prevBeat = null;
-		try {
-			prevBeat = beats.getLast();
-		} catch (NoSuchElementException ex) {
-			// Do nothing; prevBeat is already null
-		}
-		
 		// Create the beat and generate its notes.
-		Beat newBeat = new Beat(newChord, prevBeat, NUM_VOICES);
-		newBeat.generateNotes();
+		Beat prevBeat = state.getLastBeat();
+		Beat newBeat = new Beat(newChord, prevBeat, NUM_VOICES, randomizer);
+		newBeat.generateNotes(rules);
+		
+		// Now that the previous beat knows where it's going, ornament it.
+		if (prevBeat != null && ornamenting) {
+			state = state.replaceLastBeat(
+					Ornamenter.ornament(prevBeat, newBeat));
+		}
+		appendBeat(newBeat, currentKey);
+	}
+	
+	/**
+	 * Adds a new beat to the song with the given chord and chord tones.
+	 * The previous beat is ornamented as usual.
+	 * 
+	 * @param newChord
+	 * 			The chord to be played on the next beat
+	 * @param chordTones
+	 * 			The chord tones, one per voice
+	 * @throws InvalidChordException
+	 * 			If the chord tones break one of the song's rules. The song
+	 * 			is left as it was.
+	 */
+	void addBeat(Chord newChord, Note[] chordTones)
+			throws InvalidChordException {
+		Beat prevBeat = state.getLastBeat();
+		if (!rules.checkVoicing(chordTones, newChord, prevBeat)) {
+			throw new InvalidChordException(
+					"Chord tones break the song's rules");
+		}
+		Beat newBeat = new Beat(newChord, prevBeat, NUM_VOICES, randomizer);
+		newBeat.setChordTones(chordTones);
 		
-		// Add the beat to the list and increment the beat count.
-		beats.add(newBeat);
+		if (ornamenting) {
+			state = state.replaceLastBeat(
+					Ornamenter.ornament(prevBeat, newBeat));
+		}
+		appendBeat(newBeat, currentKey);
+	}
+	
+	/**
+	 * Turns ornamenting beats as they're added on or off. With it off, the
+	 * song keeps just the chord tones, for something else to ornament.
+	 * 
+	 * @param ornamenting
+	 * 			Whether to ornament beats
+	 */
+	void setOrnamenting(boolean ornamenting) {
+		this.ornamenting = ornamenting;
+	}
+	
+	/**
+	 * Stops backtracking from rewriting the first few beats of the song,
+	 * because they've already been handed on to something else.
+	 * 
+	 * @param backtrackFloor
+	 * 			The number of beats that can't be rewritten
+	 */
+	void setBacktrackFloor(int backtrackFloor) {
+		this.backtrackFloor = backtrackFloor;
+	}
+	
+	/**
+	 * Picks the chord for the next beat without voicing it. Either add it
+	 * with addBeat(Chord, Note[]), or forget it with discardNextChord().
+	 * 
+	 * @return The next chord
+	 */
+	Chord pickNextChord() {
+		return generateNextChord();
+	}
+	
+	/**
+	 * Undoes any modulation bookkeeping done by pickNextChord().
+	 */
+	void discardNextChord() {
+		restoreState(state);
+	}
+	
+	/**
+	 * Adds an already generated beat to the end of the song.
+	 * 
+	 * @param newBeat
+	 * 			The beat to add
+	 * @param key
+	 * 			The key the beat was written in
+	 */
+	void appendBeat(Beat newBeat, Key key) {
+		// Increment the beat count and add the beat to the state.
+		currentKey = key;
 		currBeatInPhrase ++;
 		currBeatInPhrase %= beatsPerPhrase;
 		beatsUntilSongCanEnd--;
+		state = state.append(newBeat, key, currentKey, modulationKey,
+				beatsUntilModulation, currBeatInPhrase, beatsUntilSongCanEnd);
+	}
+	
+	/**
+	 * Swaps out the last beat of the song for another one.
+	 * 
+	 * @param newBeat
+	 * 			The beat to use in place of the last one
+	 */
+	void replaceLastBeat(Beat newBeat) {
+		state = state.replaceLastBeat(newBeat);
+	}
+	
+	/**
+	 * Sets the song's bookkeeping back to what it was in the given state.
+	 * 
+	 * @param savedState
+	 * 			The state to go back to
+	 */
+	private void restoreState(SongState savedState) {
+		state = savedState;
+		currentKey = savedState.getCurrentKey();
+		modulationKey = savedState.getModulationKey();
+		beatsUntilModulation = savedState.getBeatsUntilModulation();
+		currBeatInPhrase = savedState.getCurrBeatInPhrase();
+		beatsUntilSongCanEnd = savedState.getBeatsUntilSongCanEnd();
 	}
 	
 	/**
@@ -191,11 +645,9 @@ public class Song {
 	 */
 	public boolean endOfSong() {
 		// Get the previous beat.
-		Beat prevBeat = null;
-		try {
-			prevBeat = beats.getLast();
-		} catch (NoSuchElementException ex) {
-			// If is is the first beat, it's obviously not the end.
+		// If is is the first beat, it's obviously not the end.
+		Beat prevBeat = state.getLastBeat();
+		if (prevBeat == null) {
 			return false;
 		}
 		
@@ -211,21 +663,27 @@ public class Song {
 	 */
 	private Chord generateNextChord() {
 		// Get the previous chord of the song.
-		Chord prevChord;
-		Beat prevBeat;
-		try {
-			prevBeat = beats.getLast();
-			prevChord = prevBeat.getChord();
-		} catch (NoSuchElementException ex) {
-			// If this is the first chord of the song, it must be tonic.
+		// If this is the first chord of the song, it must be tonic.
+		Beat prevBeat = state.getLastBeat();
+		if (prevBeat == null) {
 			return currentKey.getChords(ChordFunction.TONIC)[0];
 		}
+		Chord prevChord = prevBeat.getChord();
 		
 		// If this is the last measure of the phrase, hold out the chord.
 		if (beatsUntilLastMeasure() < 0) {
 			return prevBeat.getChord();
 		}
 		
+		// The last phrase of the song ends with V-I, so that the song is
+		// over once the phrase is.
+		if (inFinalPhrase() && beatsUntilLastMeasure() == 1) {
+			return currentKey.getChords(ChordFunction.DOMINANT)[0];
+		}
+		if (inFinalPhrase() && beatsUntilLastMeasure() == 0) {
+			return currentKey.getChords(ChordFunction.TONIC)[0];
+		}
+		
 		// Otherwise, proceed as normal.
 		ChordFunction prevFunction = prevChord.getFunction();
 		Chord ret = null;
@@ -235,12 +693,12 @@ public class Song {
 			case TONIC:
 				setUpModulation();
 				ret = generateChordOffTonic(
-						beatsUntilLastMeasure(), currentKey);
+						beatsUntilLastMeasure(), currentKey, randomizer);
 				break;
 			case SUBDOMINANT:
 				setUpModulation();
 				ret = generateChordOffSubdominant(
-						beatsUntilLastMeasure(), currentKey);
+						beatsUntilLastMeasure(), currentKey, randomizer);
 				break;
 			case SECONDARY_DOMINANT:
 				setUpModulation();
@@ -249,7 +707,7 @@ public class Song {
 				break;
 			case DOMINANT:
 				ret = generateChordOffDominant(
-						beatsUntilLastMeasure(), currentKey);
+						beatsUntilLastMeasure(), currentKey, randomizer);
 				break;
 			default:
 				// do nothing
@@ -262,7 +720,8 @@ public class Song {
 				modulationKey = null;
 				beatsUntilModulation = 0;
 			}
-		} while (!fulfilsModulationRequirements(ret));
+		} while (!fulfilsModulationRequirements(ret)
+				|| interruptsFinalCadence(ret));
 		
 		// Check to see if a modulation is taking place.
 		if (beatsUntilModulation > 0) {
@@ -277,6 +736,19 @@ public class Song {
 		return ret;
 	}
 	
+	/**
+	 * Checks if a chord would be cut off by the V-I that ends the song. A
+	 * secondary dominant right before the V would never get to resolve.
+	 * 
+	 * @param newChord
+	 * 			The chord to check
+	 * @return Whether the chord can't come next
+	 */
+	private boolean interruptsFinalCadence(Chord newChord) {
+		return inFinalPhrase() && beatsUntilLastMeasure() == 2
+				&& newChord.getFunction() == ChordFunction.SECONDARY_DOMINANT;
+	}
+	
 	/**
 	 * Finds the number of beats until the last measure of the phrase.
 	 * 
@@ -286,6 +758,68 @@ public class Song {
 		return beatsPerPhrase - 1 - beatsPerMeasure - currBeatInPhrase;
 	}
 	
+	/**
+	 * Checks if this song, written over a window of another, can take the
+	 * place of the original window.
+	 * 
+	 * @param oldEnd
+	 * 			The state after the original window
+	 * @param nextBeat
+	 * 			The beat after the window
+	 * @return Whether nextBeat can follow the regenerated window
+	 */
+	private boolean fitsBefore(SongState oldEnd, Beat nextBeat) {
+		// The window has to leave the song in the same key, mid-modulation
+		// or not.
+		if (!sameKey(state.getCurrentKey(), oldEnd.getCurrentKey())
+				|| !sameKey(state.getModulationKey(),
+						oldEnd.getModulationKey())
+				|| state.getBeatsUntilModulation()
+						!= oldEnd.getBeatsUntilModulation()) {
+			return false;
+		}
+		
+		// The next chord was picked based on the function of the last one.
+		// If it holds out the last chord, it has to be the very same one.
+		Chord newChord = state.getLastBeat().getChord();
+		Chord oldChord = oldEnd.getLastBeat().getChord();
+		if (newChord.getFunction() != oldChord.getFunction()) {
+			return false;
+		}
+		if (nextBeat.getChord() == oldChord && !newChord.equals(oldChord)) {
+			return false;
+		}
+		
+		return rules.canPrecede(state.getLastBeat(), nextBeat);
+	}
+	
+	/**
+	 * Checks if two keys are the same key, even if they're different objects.
+	 * 
+	 * @param key1
+	 * 			The first key, or null
+	 * @param key2
+	 * 			The second key, or null
+	 * @return Whether they are the same key
+	 */
+	private static boolean sameKey(Key key1, Key key2) {
+		if (key1 == null || key2 == null) {
+			return key1 == key2;
+		}
+		return key1.getClass() == key2.getClass()
+				&& key1.getScale()[0] == key2.getScale()[0];
+	}
+	
+	/**
+	 * Finds whether the next beat is part of the song's last phrase.
+	 * 
+	 * @return See above
+	 */
+	private boolean inFinalPhrase() {
+		int phrase = state.getNumBeats() / beatsPerPhrase;
+		return phrase >= getPlannedPhraseCount() - 1;
+	}
+	
 	/**
 	 * Checks if the newChord fulfills modulation requirements.
 	 * 
@@ -312,6 +846,19 @@ public class Song {
 	 * Sets up a potential common chord modulation.
 	 */
 	private void setUpModulation() {
+		// Never modulate if modulations are turned off, or in the last
+		// phrase, which has to cadence in the key it starts in.
+		if (!allowModulation || inFinalPhrase()) {
+			return;
+		}
+		
+		// When rewriting beats, modulate wherever the original beats did, so
+		// that the new ones end up in the same key.
+		if (modulationPlan != null) {
+			followModulationPlan();
+			return;
+		}
+		
 		// Only a 5% chance of happening.
 		// 0% if there's already a modulation in place.
 		float chance = randomizer.nextFloat();
@@ -329,6 +876,38 @@ public class Song {
 		beatsUntilModulation = 2;
 	}
 	
+	/**
+	 * Sets up a modulation if the original version of the next beat started
+	 * one.
+	 */
+	private void followModulationPlan() {
+		// Find the original state after the next beat.
+		SongState planned = modulationPlan;
+		while (planned.getNumBeats() > state.getNumBeats() + 1) {
+			planned = planned.getPrevious();
+		}
+		
+		// A modulation set up on a beat has one beat left once it's chosen.
+		if (beatsUntilModulation == 0
+				&& planned.getBeatsUntilModulation() == 1) {
+			modulationKey = planned.getModulationKey();
+			beatsUntilModulation = 2;
+		}
+	}
+	
+	/**
+	 * Builds the Key object for a root pitch and a scale type.
+	 * 
+	 * @param rootPitch
+	 * 			The root pitch of the key
+	 * @param keyType
+	 * 			Whether the key is major or minor
+	 * @return The key
+	 */
+	static Key createKey(NoteName rootPitch, ScaleType keyType) {
+		return Key.valueOf(rootPitch, keyType);
+	}
+	
 	/**
 	 * Converts a number of seconds to a number of beats. Rounds up.
 	 * 
@@ -0,0 +1,164 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The SongArchive reads the songs from a file written by SongArchiveWriter.
+ * The file is memory-mapped, so fetching a song by id is just a lookup in
+ * the index.
+ * 
+ * The file starts with a header:
+ * 4 bytes: MAGIC
+ * 4 bytes: VERSION
+ * 8 bytes: where the index starts
+ * 4 bytes: the number of songs
+ * 4 bytes: the length of the longest song
+ * and the rest of HEADER_LENGTH is left empty.
+ * 
+ * A mapping can't be bigger than 2 GB, so big archives are mapped in
+ * overlapping pieces. Each piece overlaps the next by the length of the
+ * longest song, so every song fits inside one piece.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class SongArchive implements Closeable {
+	
+	/**
+	 * The first four bytes of every archive
+	 */
+	static final int MAGIC = 0x46474152;
+	
+	/**
+	 * The version of the file layout
+	 */
+	static final int VERSION = 1;
+	
+	/**
+	 * The length of the header
+	 */
+	static final int HEADER_LENGTH = 32;
+	
+	/**
+	 * How far apart the mapped pieces of the file start
+	 */
+	private static final long SEGMENT_LENGTH = 1L << 30;
+	
+	/**
+	 * The archive file
+	 */
+	private FileChannel channel;
+	
+	/**
+	 * The index: each song's offset and length, by id
+	 */
+	private MappedByteBuffer index;
+	
+	/**
+	 * The songs, in overlapping pieces SEGMENT_LENGTH apart
+	 */
+	private MappedByteBuffer[] segments;
+	
+	/**
+	 * The number of songs
+	 */
+	private int numSongs;
+	
+	/**
+	 * Constructor. Opens and maps an archive.
+	 * 
+	 * @param archiveFile
+	 * 			The archive to read
+	 * @throws IOException
+	 * 			If the file can't be read, or isn't an archive
+	 */
+	public SongArchive(File archiveFile) throws IOException {
+		channel = FileChannel.open(archiveFile.toPath(),
+				StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			while (header.hasRemaining()) {
+				if (channel.read(header, header.position()) < 0) {
+					throw new IOException("Archive is too short");
+				}
+			}
+			header.flip();
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException("Not a song archive");
+			}
+			long indexOffset = header.getLong();
+			numSongs = header.getInt();
+			int maxLength = header.getInt();
+			
+			index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset,
+					(long) numSongs * SongArchiveWriter.INDEX_ENTRY_LENGTH);
+			int numSegments = (int) ((indexOffset + SEGMENT_LENGTH - 1)
+					/ SEGMENT_LENGTH);
+			segments = new MappedByteBuffer[numSegments];
+			for (int segment = 0; segment < numSegments; segment++) {
+				long start = segment * SEGMENT_LENGTH;
+				long length = Math.min(SEGMENT_LENGTH + maxLength,
+						indexOffset - start);
+				segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY,
+						start, length);
+			}
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Gets the number of songs in the archive.
+	 * 
+	 * @return See above
+	 */
+	public int getNumSongs() {
+		return numSongs;
+	}
+	
+	/**
+	 * Fetches a song as the bytes of a MIDI file, without copying them. Safe
+	 * to call from many threads at once.
+	 * 
+	 * @param id
+	 * 			The song's id
+	 * @return A read-only view of the song's bytes
+	 */
+	public ByteBuffer getSong(int id) {
+		// Check for valid input
+		if (id < 0 || id >= numSongs) {
+			throw new IndexOutOfBoundsException("No song " + id);
+		}
+		
+		long offset = index.getLong(id * SongArchiveWriter.INDEX_ENTRY_LENGTH);
+		int length = index.getInt(id * SongArchiveWriter.INDEX_ENTRY_LENGTH
+				+ 8);
+		int segment = (int) (offset / SEGMENT_LENGTH);
+		int start = (int) (offset - segment * SEGMENT_LENGTH);
+		
+		// Work on a copy, so other threads' views aren't disturbed.
+		ByteBuffer ret = segments[segment].asReadOnlyBuffer();
+		ret.position(start);
+		ret.limit(start + length);
+		return ret.slice();
+	}
+	
+	/**
+	 * Closes the file. Views already handed out by getSong() stay readable
+	 * until they're garbage collected.
+	 * 
+	 * @throws IOException
+	 * 			If the file can't be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
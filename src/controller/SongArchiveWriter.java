@@ -0,0 +1,264 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The SongArchiveWriter packs many songs into one file, as MIDI files laid
+ * end to end followed by an index. Writing millions of songs this way avoids
+ * creating millions of little files. SongArchive reads them back.
+ * 
+ * Any number of threads can append at once without locking. Each append
+ * takes the next song id and reserves room for its song by moving an atomic
+ * end-of-file offset along, then writes to that spot with a positional
+ * write. The index is written by close(), once every append has returned.
+ * 
+ * The file starts with a header (see SongArchive), then the songs, then the
+ * index: each song's offset and length, in order of song id.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class SongArchiveWriter implements Closeable {
+	
+	/**
+	 * The bytes to make room for when encoding each song to begin with
+	 */
+	private static final int INITIAL_SONG_CAPACITY = 8192;
+	
+	/**
+	 * The bytes taken by each song in the index: an offset and a length
+	 */
+	static final int INDEX_ENTRY_LENGTH = 12;
+	
+	/**
+	 * The archive file
+	 */
+	private FileChannel channel;
+	
+	/**
+	 * The most songs the archive can hold
+	 */
+	private int maxSongs;
+	
+	/**
+	 * The id of the next song appended
+	 */
+	private AtomicInteger nextId;
+	
+	/**
+	 * Where the next song goes
+	 */
+	private AtomicLong endOffset;
+	
+	/**
+	 * Where each song starts, by id
+	 */
+	private AtomicLongArray offsets;
+	
+	/**
+	 * The length of each song, by id
+	 */
+	private AtomicIntegerArray lengths;
+	
+	/**
+	 * Each thread's encoder, so appends don't share buffers
+	 */
+	private ThreadLocal<SongEncoder> encoders;
+	
+	/**
+	 * Constructor. Creates the archive, replacing the file if it's already
+	 * there.
+	 * 
+	 * @param archiveFile
+	 * 			The file to write
+	 * @param maxSongs
+	 * 			The most songs the archive can hold
+	 * @throws IOException
+	 * 			If the file can't be written
+	 */
+	public SongArchiveWriter(File archiveFile, int maxSongs)
+			throws IOException {
+		// Check for valid input
+		if (maxSongs < 0) {
+			throw new IllegalArgumentException("Invalid number of songs!");
+		}
+		
+		this.channel = FileChannel.open(archiveFile.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.maxSongs = maxSongs;
+		this.nextId = new AtomicInteger();
+		this.endOffset = new AtomicLong(SongArchive.HEADER_LENGTH);
+		this.offsets = new AtomicLongArray(maxSongs);
+		this.lengths = new AtomicIntegerArray(maxSongs);
+		this.encoders = new ThreadLocal<SongEncoder>() {
+			@Override
+			protected SongEncoder initialValue() {
+				return new SongEncoder();
+			}
+		};
+	}
+	
+	/**
+	 * Encodes a song as a MIDI file and adds it to the archive. Safe to call
+	 * from many threads at once.
+	 * 
+	 * @param song
+	 * 			The song to add
+	 * @return The song's id in the archive
+	 * @throws IOException
+	 * 			If the file can't be written
+	 */
+	public int append(ColumnarSong song) throws IOException {
+		SongEncoder encoder = encoders.get();
+		encoder.buffer.clear();
+		encoder.writer.write(song, encoder);
+		encoder.buffer.flip();
+		return append(encoder.buffer);
+	}
+	
+	/**
+	 * Adds an already encoded MIDI file to the archive. Safe to call from
+	 * many threads at once.
+	 * 
+	 * @param midiFile
+	 * 			The bytes of the file, from its position to its limit
+	 * @return The song's id in the archive
+	 * @throws IOException
+	 * 			If the file can't be written
+	 */
+	public int append(ByteBuffer midiFile) throws IOException {
+		int id = nextId.getAndIncrement();
+		if (id >= maxSongs) {
+			throw new IllegalStateException("Archive is full!");
+		}
+		
+		int length = midiFile.remaining();
+		long offset = endOffset.getAndAdd(length);
+		long position = offset;
+		while (midiFile.hasRemaining()) {
+			position += channel.write(midiFile, position);
+		}
+		offsets.set(id, offset);
+		lengths.set(id, length);
+		return id;
+	}
+	
+	/**
+	 * Writes the index and the header, and closes the file. Every append has
+	 * to have returned first.
+	 * 
+	 * @throws IOException
+	 * 			If the file can't be written
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			int numSongs = Math.min(nextId.get(), maxSongs);
+			long indexOffset = endOffset.get();
+			int maxLength = 0;
+			ByteBuffer index = ByteBuffer.allocate(
+					numSongs * INDEX_ENTRY_LENGTH);
+			for (int id = 0; id < numSongs; id++) {
+				index.putLong(offsets.get(id));
+				index.putInt(lengths.get(id));
+				maxLength = Math.max(maxLength, lengths.get(id));
+			}
+			index.flip();
+			write(index, indexOffset);
+			
+			ByteBuffer header = ByteBuffer.allocate(SongArchive.HEADER_LENGTH);
+			header.putInt(SongArchive.MAGIC);
+			header.putInt(SongArchive.VERSION);
+			header.putLong(indexOffset);
+			header.putInt(numSongs);
+			header.putInt(maxLength);
+			
+			// Write the whole header, unused bytes and all.
+			header.clear();
+			write(header, 0);
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Writes all of a buffer at a given spot in the file.
+	 * 
+	 * @param buffer
+	 * 			What to write
+	 * @param position
+	 * 			Where to write it
+	 * @throws IOException
+	 * 			If the file can't be written
+	 */
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+	
+	/**
+	 * A thread's MidiFileWriter, along with a buffer for it to write into.
+	 */
+	private static class SongEncoder implements WritableByteChannel {
+		
+		/**
+		 * Encodes the songs
+		 */
+		private MidiFileWriter writer = new MidiFileWriter();
+		
+		/**
+		 * The encoded song
+		 */
+		private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_SONG_CAPACITY);
+		
+		/**
+		 * Copies bytes into the buffer, growing it if needed.
+		 * 
+		 * @param source
+		 * 			The bytes to copy
+		 * @return The number of bytes copied
+		 */
+		@Override
+		public int write(ByteBuffer source) {
+			int ret = source.remaining();
+			if (buffer.remaining() < ret) {
+				ByteBuffer bigger = ByteBuffer.allocate(
+						Math.max(buffer.capacity() * 2, buffer.position() + ret));
+				buffer.flip();
+				bigger.put(buffer);
+				buffer = bigger;
+			}
+			buffer.put(source);
+			return ret;
+		}
+		
+		/**
+		 * Always open.
+		 * 
+		 * @return true
+		 */
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+		
+		/**
+		 * Nothing to close.
+		 */
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,349 @@
+package controller;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import notes.*;
+import notes.scales.*;
+import notes.types.*;
+
+import exceptions.InvalidFileFormatException;
+
+/**
+ * The SongCheckpoint class saves a Song in the middle of being generated to
+ * a compact binary file, and loads it back.
+ * 
+ * A checkpoint holds everything the song needs to keep going: every beat and
+ * the state after it, the keys and chords they use, and the state of the
+ * random number generator. A loaded song carries on exactly the way the
+ * saved one would have.
+ * 
+ * Keys are written once each as a scale type and a root. Chords are written
+ * once each as the key they come from, their function and their place in
+ * that key's list of chords, so the loaded beats share chords with the
+ * loaded keys just like the saved ones did. Beats refer to both by id.
+ * 
+ * @author Dan Pang
+ *
+ */
+public final class SongCheckpoint {
+	
+	/**
+	 * The first four bytes of every checkpoint ("FGCK")
+	 */
+	private static final int MAGIC = 0x4647434B;
+	
+	/**
+	 * The version of the format
+	 */
+	private static final short VERSION = 1;
+	
+	/**
+	 * The id written in place of a missing key
+	 */
+	private static final short NO_KEY = -1;
+	
+	/**
+	 * Constructor. Never used.
+	 */
+	private SongCheckpoint() {
+	}
+	
+	/**
+	 * Saves a checkpoint to a file. The checkpoint is written next to the
+	 * file first and then moved over it, so the old checkpoint is only
+	 * replaced by a complete new one.
+	 * 
+	 * @param song
+	 * 			The song to save
+	 * @param file
+	 * 			The file to save to
+	 * @throws IOException
+	 * 			If the file couldn't be written
+	 */
+	public static void save(Song song, File file) throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		File tempFile = File.createTempFile(file.getName(), ".tmp", dir);
+		try {
+			try (OutputStream out = new BufferedOutputStream(
+					new FileOutputStream(tempFile))) {
+				write(song, out);
+			}
+			Files.move(tempFile.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tempFile.delete();
+		}
+	}
+	
+	/**
+	 * Loads a checkpoint from a file.
+	 * 
+	 * @param file
+	 * 			The file to load
+	 * @return The song, ready to keep generating
+	 * @throws IOException
+	 * 			If the file couldn't be read
+	 * @throws InvalidFileFormatException
+	 * 			If the file isn't a checkpoint
+	 */
+	public static Song load(File file)
+			throws IOException, InvalidFileFormatException {
+		try (InputStream in = new BufferedInputStream(
+				new FileInputStream(file))) {
+			return read(in);
+		}
+	}
+	
+	/**
+	 * Writes a checkpoint to a stream.
+	 * 
+	 * @param song
+	 * 			The song to save
+	 * @param out
+	 * 			The stream to write to
+	 * @throws IOException
+	 * 			If the stream couldn't be written to
+	 */
+	public static void write(Song song, OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		SongState[] states = getStates(song.getState());
+		int numVoices = song.getNumVoices();
+		
+		// Give every key and chord the song uses an id.
+		IdentityHashMap<Key, Short> keyIds = new IdentityHashMap<>();
+		ArrayList<Key> keys = new ArrayList<>();
+		for (SongState state : states) {
+			addKey(state.getLastBeatKey(), keyIds, keys);
+			addKey(state.getCurrentKey(), keyIds, keys);
+			addKey(state.getModulationKey(), keyIds, keys);
+		}
+		IdentityHashMap<Chord, Short> chordIds = new IdentityHashMap<>();
+		ArrayList<Chord> chords = new ArrayList<>();
+		for (int indx = 1; indx < states.length; indx++) {
+			Chord chord = states[indx].getLastBeat().getChord();
+			if (!chordIds.containsKey(chord)) {
+				chordIds.put(chord, (short) chords.size());
+				chords.add(chord);
+			}
+		}
+		
+		// Write the header and the song's settings.
+		data.writeInt(MAGIC);
+		data.writeShort(VERSION);
+		data.writeFloat(song.getBPM());
+		data.writeBoolean(song.isModulationAllowed());
+		data.writeLong(song.getRandomizer().getState());
+		data.writeByte(numVoices);
+		
+		// Write the keys, then the chords in terms of the keys.
+		data.writeShort(keys.size());
+		for (Key key : keys) {
+			data.writeByte(key instanceof MajorKey
+					? ScaleType.MAJOR.ordinal() : ScaleType.MINOR.ordinal());
+			data.writeByte(key.getScale()[0].ordinal());
+		}
+		data.writeShort(chords.size());
+		for (Chord chord : chords) {
+			writeChord(chord, keys, data);
+		}
+		
+		// Write the empty song's state, then every beat with the state
+		// after it.
+		data.writeShort(keyIds.get(states[0].getCurrentKey()));
+		data.writeInt(states[0].getBeatsUntilSongCanEnd());
+		data.writeInt(states.length - 1);
+		for (int indx = 1; indx < states.length; indx++) {
+			SongState state = states[indx];
+			Beat beat = state.getLastBeat();
+			data.writeShort(chordIds.get(beat.getChord()));
+			data.writeShort(keyIds.get(state.getLastBeatKey()));
+			data.writeShort(keyIds.get(state.getCurrentKey()));
+			data.writeShort(state.getModulationKey() == null
+					? NO_KEY : keyIds.get(state.getModulationKey()));
+			data.writeByte(state.getBeatsUntilModulation());
+			data.writeByte(state.getCurrBeatInPhrase());
+			data.writeInt(state.getBeatsUntilSongCanEnd());
+			
+			// The getters return copies, so only fetch them once.
+			Note[] firstHalf = beat.getNotesFirstHalf();
+			Note[] secondHalf = beat.getNotesSecondHalf();
+			boolean[] leaps = beat.getLeaps();
+			int leapMask = 0;
+			for (int voice = 0; voice < numVoices; voice++) {
+				data.writeByte(firstHalf[voice].getMidiNumber());
+				data.writeByte(secondHalf[voice].getMidiNumber());
+				if (leaps[voice]) {
+					leapMask |= 1 << voice;
+				}
+			}
+			data.writeByte(leapMask);
+		}
+		data.flush();
+	}
+	
+	/**
+	 * Reads a checkpoint from a stream.
+	 * 
+	 * @param in
+	 * 			The stream to read from
+	 * @return The song, ready to keep generating
+	 * @throws IOException
+	 * 			If the stream couldn't be read from
+	 * @throws InvalidFileFormatException
+	 * 			If the stream doesn't hold a checkpoint
+	 */
+	public static Song read(InputStream in)
+			throws IOException, InvalidFileFormatException {
+		DataInputStream data = new DataInputStream(in);
+		
+		// Check the header.
+		if (data.readInt() != MAGIC) {
+			throw new InvalidFileFormatException("Not a song checkpoint!");
+		}
+		short version = data.readShort();
+		if (version != VERSION) {
+			throw new InvalidFileFormatException(
+					"Unknown checkpoint version " + version);
+		}
+		
+		// Read the song's settings.
+		float beatsPerMinute = data.readFloat();
+		boolean allowModulation = data.readBoolean();
+		long randomState = data.readLong();
+		int numVoices = data.readByte();
+		if (numVoices <= 0 || numVoices > Byte.SIZE) {
+			throw new InvalidFileFormatException("Invalid number of voices: "
+					+ numVoices);
+		}
+		
+		// Rebuild the keys, then the chords out of them.
+		try {
+			Key[] keys = new Key[data.readUnsignedShort()];
+			for (int indx = 0; indx < keys.length; indx++) {
+				ScaleType type = ScaleType.values()[data.readByte()];
+				NoteName root = NoteName.values()[data.readByte()];
+				keys[indx] = Song.createKey(root, type);
+			}
+			Chord[] chords = new Chord[data.readUnsignedShort()];
+			for (int indx = 0; indx < chords.length; indx++) {
+				Key key = keys[data.readShort()];
+				ChordFunction function =
+						ChordFunction.values()[data.readByte()];
+				chords[indx] = key.getChords(function)[data.readByte()];
+			}
+			
+			// Rebuild the beats on top of the empty song.
+			SongState state = SongState.start(keys[data.readShort()],
+					data.readInt());
+			int numBeats = data.readInt();
+			for (int indx = 0; indx < numBeats; indx++) {
+				Chord chord = chords[data.readShort()];
+				Key beatKey = keys[data.readShort()];
+				Key currentKey = keys[data.readShort()];
+				short modulationKeyId = data.readShort();
+				Key modulationKey = modulationKeyId == NO_KEY
+						? null : keys[modulationKeyId];
+				int beatsUntilModulation = data.readByte();
+				int currBeatInPhrase = data.readByte();
+				int beatsUntilSongCanEnd = data.readInt();
+				
+				Note[] firstHalf = new Note[numVoices];
+				Note[] secondHalf = new Note[numVoices];
+				for (int voice = 0; voice < numVoices; voice++) {
+					firstHalf[voice] = new Note(data.readByte());
+					secondHalf[voice] = new Note(data.readByte());
+				}
+				int leapMask = data.readByte();
+				boolean[] leaps = new boolean[numVoices];
+				for (int voice = 0; voice < numVoices; voice++) {
+					leaps[voice] = (leapMask & (1 << voice)) != 0;
+				}
+				
+				Beat beat = new Beat(chord, state.getLastBeat(), firstHalf,
+						secondHalf, leaps);
+				state = state.append(beat, beatKey, currentKey, modulationKey,
+						beatsUntilModulation, currBeatInPhrase,
+						beatsUntilSongCanEnd);
+			}
+			
+			Song song = new Song(state, beatsPerMinute);
+			song.setAllowModulation(allowModulation);
+			song.getRandomizer().setState(randomState);
+			return song;
+		} catch (ArrayIndexOutOfBoundsException ex) {
+			throw new InvalidFileFormatException("Corrupt song checkpoint!",
+					ex);
+		}
+	}
+	
+	/**
+	 * Lists every state of a song, from the empty song to the last beat.
+	 * 
+	 * @param last
+	 * 			The state after the last beat
+	 * @return Every state, first to last
+	 */
+	private static SongState[] getStates(SongState last) {
+		SongState[] ret = new SongState[last.getNumBeats() + 1];
+		SongState state = last;
+		for (int indx = ret.length - 1; indx >= 0; indx--) {
+			ret[indx] = state;
+			state = state.getPrevious();
+		}
+		return ret;
+	}
+	
+	/**
+	 * Gives a key the next free id if it doesn't have one yet.
+	 * 
+	 * @param key
+	 * 			The key, or null
+	 * @param keyIds
+	 * 			The ids handed out so far
+	 * @param keys
+	 * 			The keys handed out so far, indexed by id
+	 */
+	private static void addKey(Key key, IdentityHashMap<Key, Short> keyIds,
+			ArrayList<Key> keys) {
+		if (key != null && !keyIds.containsKey(key)) {
+			keyIds.put(key, (short) keys.size());
+			keys.add(key);
+		}
+	}
+	
+	/**
+	 * Writes a chord as the key it comes from, its function and its place
+	 * in the key's list of chords with that function.
+	 * 
+	 * @param chord
+	 * 			The chord to write
+	 * @param keys
+	 * 			The keys of the song, indexed by id
+	 * @param data
+	 * 			The stream to write to
+	 * @throws IOException
+	 * 			If the stream couldn't be written to
+	 */
+	private static void writeChord(Chord chord, ArrayList<Key> keys,
+			DataOutputStream data) throws IOException {
+		ChordFunction function = chord.getFunction();
+		for (int keyId = 0; keyId < keys.size(); keyId++) {
+			Chord[] keyChords = keys.get(keyId).getChords(function);
+			for (int indx = 0; indx < keyChords.length; indx++) {
+				if (keyChords[indx] == chord) {
+					data.writeShort(keyId);
+					data.writeByte(function.ordinal());
+					data.writeByte(indx);
+					return;
+				}
+			}
+		}
+		throw new IllegalArgumentException(chord
+				+ " doesn't belong to any of the song's keys!");
+	}
+}
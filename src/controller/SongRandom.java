@@ -0,0 +1,101 @@
+package controller;
+
+import java.util.Random;
+
+/**
+ * The SongRandom class is a Random whose internal state can be read and
+ * written back, so a song being generated can be saved and carry on with
+ * exactly the same random numbers.
+ * 
+ * It produces the same numbers as java.util.Random for the same seed.
+ * nextGaussian() keeps a spare value that isn't part of the saved state, so
+ * don't use it.
+ * 
+ * @author Dan Pang
+ *
+ */
+@SuppressWarnings("serial") // ignore
+public class SongRandom extends Random {
+	
+	/**
+	 * The multiplier of the linear congruential generator
+	 */
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	
+	/**
+	 * The addend of the linear congruential generator
+	 */
+	private static final long ADDEND = 0xBL;
+	
+	/**
+	 * The state only keeps the low 48 bits.
+	 */
+	private static final long MASK = (1L << 48) - 1;
+	
+	/**
+	 * The current state of the generator.
+	 * This can't have an initializer, since Random's constructor sets it
+	 * through setSeed() before this class's initializers run.
+	 */
+	private long state;
+	
+	/**
+	 * Constructor. Seeds the generator with something different every time.
+	 */
+	public SongRandom() {
+		super();
+	}
+	
+	/**
+	 * Constructor. Seeds the generator with the given seed.
+	 * 
+	 * @param seed
+	 * 			The seed
+	 */
+	public SongRandom(long seed) {
+		super(seed);
+	}
+	
+	/**
+	 * Seeds the generator the same way java.util.Random does.
+	 * 
+	 * @param seed
+	 * 			The seed
+	 */
+	@Override
+	public synchronized void setSeed(long seed) {
+		state = (seed ^ MULTIPLIER) & MASK;
+	}
+	
+	/**
+	 * Fetches the state of the generator.
+	 * 
+	 * @return The 48-bit state
+	 */
+	public synchronized long getState() {
+		return state;
+	}
+	
+	/**
+	 * Puts the generator back into a state from getState().
+	 * 
+	 * @param state
+	 * 			The 48-bit state
+	 */
+	public synchronized void setState(long state) {
+		this.state = state & MASK;
+	}
+	
+	/**
+	 * Steps the generator and returns the top bits of the new state.
+	 * 
+	 * @param bits
+	 * 			The number of random bits to return
+	 * @return The random bits
+	 */
+	@Override
+	protected synchronized int next(int bits) {
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int) (state >>> (48 - bits));
+	}
+}
@@ -0,0 +1,270 @@
+package controller;
+
+import notes.Beat;
+import notes.scales.Key;
+
+/**
+ * The SongState class is an immutable snapshot of a Song in the middle of
+ * being generated.
+ * 
+ * Each SongState holds the song's last beat and points back at the state the
+ * song was in before that beat was added, so the beats form a linked list.
+ * Adding a beat makes a new SongState on top of the old one instead of
+ * changing it. Any number of Songs can share the beats they have in common,
+ * and copying a Song only costs a pointer.
+ * 
+ * @author Dan Pang
+ *
+ */
+public final class SongState {
+	
+	/**
+	 * The state before the last beat was added.
+	 * Null if there are no beats.
+	 */
+	private final SongState prev;
+	
+	/**
+	 * The last beat of the song
+	 */
+	private final Beat lastBeat;
+	
+	/**
+	 * The key the last beat was written in
+	 */
+	private final Key lastBeatKey;
+	
+	/**
+	 * The number of beats in the song
+	 */
+	private final int numBeats;
+	
+	/**
+	 * The current key the song is writing in
+	 */
+	private final Key currentKey;
+	
+	/**
+	 * The key to modulate to
+	 */
+	private final Key modulationKey;
+	
+	/**
+	 * Counts the beats left mid-modulation.
+	 */
+	private final int beatsUntilModulation;
+	
+	/**
+	 * The current beat of the phrase.
+	 */
+	private final int currBeatInPhrase;
+	
+	/**
+	 * The number of beats until the song is allowed to end.
+	 */
+	private final int beatsUntilSongCanEnd;
+	
+	/**
+	 * Constructor. Sets every field.
+	 */
+	private SongState(SongState prev, Beat lastBeat, Key lastBeatKey,
+			int numBeats, Key currentKey, Key modulationKey,
+			int beatsUntilModulation, int currBeatInPhrase,
+			int beatsUntilSongCanEnd) {
+		this.prev = prev;
+		this.lastBeat = lastBeat;
+		this.lastBeatKey = lastBeatKey;
+		this.numBeats = numBeats;
+		this.currentKey = currentKey;
+		this.modulationKey = modulationKey;
+		this.beatsUntilModulation = beatsUntilModulation;
+		this.currBeatInPhrase = currBeatInPhrase;
+		this.beatsUntilSongCanEnd = beatsUntilSongCanEnd;
+	}
+	
+	/**
+	 * Creates the state of a song with no beats yet.
+	 * 
+	 * @param startingKey
+	 * 			The key the song starts in
+	 * @param beatsUntilSongCanEnd
+	 * 			The number of beats until the song is allowed to end
+	 * @return The state of the empty song
+	 */
+	static SongState start(Key startingKey, int beatsUntilSongCanEnd) {
+		return new SongState(null, null, null, 0, startingKey, null, 0, 0,
+				beatsUntilSongCanEnd);
+	}
+	
+	/**
+	 * Creates the state of the song after adding a beat. This state is
+	 * left untouched.
+	 * 
+	 * @param beat
+	 * 			The new beat
+	 * @param beatKey
+	 * 			The key the new beat was written in
+	 * @param currentKey
+	 * 			The current key after the beat
+	 * @param modulationKey
+	 * 			The key being modulated to after the beat, if any
+	 * @param beatsUntilModulation
+	 * 			The beats left mid-modulation after the beat
+	 * @param currBeatInPhrase
+	 * 			The current beat of the phrase after the beat
+	 * @param beatsUntilSongCanEnd
+	 * 			The beats until the song can end after the beat
+	 * @return The new state
+	 */
+	SongState append(Beat beat, Key beatKey, Key currentKey, Key modulationKey,
+			int beatsUntilModulation, int currBeatInPhrase,
+			int beatsUntilSongCanEnd) {
+		return new SongState(this, beat, beatKey, numBeats + 1, currentKey,
+				modulationKey, beatsUntilModulation, currBeatInPhrase,
+				beatsUntilSongCanEnd);
+	}
+	
+	/**
+	 * Adds a beat on top of this state, copying the rest of the bookkeeping
+	 * from another state. This state is left untouched.
+	 * 
+	 * @param source
+	 * 			The state to copy the bookkeeping from
+	 * @param beat
+	 * 			The new beat
+	 * @return The new state
+	 */
+	SongState appendCopyOf(SongState source, Beat beat) {
+		return append(beat, source.lastBeatKey, source.currentKey,
+				source.modulationKey, source.beatsUntilModulation,
+				source.currBeatInPhrase, source.beatsUntilSongCanEnd);
+	}
+	
+	/**
+	 * Creates a copy of this state with a different last beat. This state is
+	 * left untouched.
+	 * 
+	 * @param beat
+	 * 			The beat to use in place of the last one
+	 * @return The new state
+	 */
+	SongState replaceLastBeat(Beat beat) {
+		if (numBeats == 0) {
+			throw new IllegalStateException("There is no beat to replace!");
+		}
+		return new SongState(prev, beat, lastBeatKey, numBeats, currentKey,
+				modulationKey, beatsUntilModulation, currBeatInPhrase,
+				beatsUntilSongCanEnd);
+	}
+	
+	/**
+	 * Fetches the state before the last beat was added.
+	 * 
+	 * @return The previous state, or null if there are no beats
+	 */
+	public SongState getPrevious() {
+		return prev;
+	}
+	
+	/**
+	 * Fetches the last beat.
+	 * 
+	 * @return The last beat, or null if there are no beats
+	 */
+	public Beat getLastBeat() {
+		return lastBeat;
+	}
+	
+	/**
+	 * Fetches the key the last beat was written in.
+	 * 
+	 * @return The key of the last beat, or null if there are no beats
+	 */
+	public Key getLastBeatKey() {
+		return lastBeatKey;
+	}
+	
+	/**
+	 * Fetches the number of beats.
+	 * 
+	 * @return The number of beats
+	 */
+	public int getNumBeats() {
+		return numBeats;
+	}
+	
+	/**
+	 * Fetches the key the song is writing in.
+	 * 
+	 * @return The current key
+	 */
+	public Key getCurrentKey() {
+		return currentKey;
+	}
+	
+	/**
+	 * Fetches the key the song is modulating to.
+	 * 
+	 * @return The key being modulated to, or null if there is none
+	 */
+	public Key getModulationKey() {
+		return modulationKey;
+	}
+	
+	/**
+	 * Fetches the number of beats left mid-modulation.
+	 * 
+	 * @return The beats left, or zero if no modulation is taking place
+	 */
+	public int getBeatsUntilModulation() {
+		return beatsUntilModulation;
+	}
+	
+	/**
+	 * Fetches the current beat of the phrase.
+	 * 
+	 * @return The current beat of the phrase
+	 */
+	public int getCurrBeatInPhrase() {
+		return currBeatInPhrase;
+	}
+	
+	/**
+	 * Fetches the number of beats until the song is allowed to end.
+	 * 
+	 * @return See above
+	 */
+	public int getBeatsUntilSongCanEnd() {
+		return beatsUntilSongCanEnd;
+	}
+	
+	/**
+	 * Return an array of every beat, first to last.
+	 * 
+	 * @return the array of beats
+	 */
+	public Beat[] getBeatArray() {
+		Beat[] ret = new Beat[numBeats];
+		SongState state = this;
+		for (int indx = numBeats - 1; indx >= 0; indx--) {
+			ret[indx] = state.lastBeat;
+			state = state.prev;
+		}
+		return ret;
+	}
+	
+	/**
+	 * Return an array of the keys each beat was written in, first to last.
+	 * 
+	 * @return the array of keys
+	 */
+	public Key[] getKeyArray() {
+		Key[] ret = new Key[numBeats];
+		SongState state = this;
+		for (int indx = numBeats - 1; indx >= 0; indx--) {
+			ret[indx] = state.lastBeatKey;
+			state = state.prev;
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,286 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+import notes.Beat;
+import notes.Note;
+
+/**
+ * The StreamingMidiWriter writes a song to a MIDI file one beat at a time,
+ * as the beats are generated, so the song never has to be held in memory.
+ * 
+ * The file has a single track (format 0), with each voice on its own MIDI
+ * channel. Encoded beats are written out whenever enough of them pile up.
+ * A track's length comes before its events, so a placeholder is written
+ * first and filled in by close().
+ * 
+ * Filling in the length needs a FileChannel. Any other channel, like a pipe,
+ * can't go back, so the writer holds on to the whole track and writes it at
+ * close() instead.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class StreamingMidiWriter implements Closeable {
+	
+	/**
+	 * The file format: a single track
+	 */
+	private static final int FORMAT = 0;
+	
+	/**
+	 * How many encoded bytes to hold before writing them out
+	 */
+	private static final int FLUSH_THRESHOLD = 64 * 1024;
+	
+	/**
+	 * Where the file goes
+	 */
+	private WritableByteChannel channel;
+	
+	/**
+	 * The channel as a FileChannel, or null if it can't go back to fill in
+	 * the track length
+	 */
+	private FileChannel fileChannel;
+	
+	/**
+	 * Whether the channel was opened by this writer, and should be closed by
+	 * it
+	 */
+	private boolean ownsChannel;
+	
+	/**
+	 * The encoded events that haven't been written out yet
+	 */
+	private MidiTrackEncoder encoder;
+	
+	/**
+	 * Holds chunk headers while they're written out
+	 */
+	private ByteBuffer header;
+	
+	/**
+	 * Where the track length goes in the file
+	 */
+	private long lengthPosition;
+	
+	/**
+	 * The number of bytes of events already written out
+	 */
+	private long trackLength;
+	
+	/**
+	 * The number of voices in each beat
+	 */
+	private int numVoices;
+	
+	/**
+	 * The number of beats added so far
+	 */
+	private int numBeats;
+	
+	/**
+	 * Whether close() has been called
+	 */
+	private boolean closed;
+	
+	/**
+	 * Constructor. Writes the start of the file to the channel.
+	 * 
+	 * @param channel
+	 * 			Where to write the file. It's left open by close().
+	 * @param numVoices
+	 * 			The number of voices in each beat, up to 16
+	 * @param beatsPerMinute
+	 * 			The tempo
+	 * @throws IOException
+	 * 			If the channel can't be written to
+	 */
+	public StreamingMidiWriter(WritableByteChannel channel, int numVoices,
+			float beatsPerMinute) throws IOException {
+		// Check for valid input
+		if (numVoices <= 0 || numVoices > 16) {
+			throw new IllegalArgumentException(
+					"Each voice needs its own channel!");
+		}
+		
+		this.channel = channel;
+		this.numVoices = numVoices;
+		this.encoder = new MidiTrackEncoder(FLUSH_THRESHOLD);
+		this.header = ByteBuffer.allocate(MidiFileWriter.HEADER_LENGTH
+				+ MidiFileWriter.TRACK_HEADER_LENGTH);
+		if (channel instanceof FileChannel) {
+			fileChannel = (FileChannel) channel;
+		}
+		
+		// Without a FileChannel, the track header waits for close().
+		MidiFileWriter.putHeader(header, FORMAT, 1);
+		if (fileChannel != null) {
+			lengthPosition = fileChannel.position() + header.position() + 4;
+			MidiFileWriter.putTrackHeader(header, 0);
+		}
+		header.flip();
+		MidiFileWriter.writeFully(channel, header);
+		
+		encoder.tempo(0, beatsPerMinute);
+	}
+	
+	/**
+	 * Opens a file and writes the start of the song to it, replacing the file
+	 * if it's already there. close() closes the file.
+	 * 
+	 * @param outputFile
+	 * 			The file to write
+	 * @param numVoices
+	 * 			The number of voices in each beat, up to 16
+	 * @param beatsPerMinute
+	 * 			The tempo
+	 * @return The writer
+	 * @throws IOException
+	 * 			If the file can't be written
+	 */
+	public static StreamingMidiWriter open(File outputFile, int numVoices,
+			float beatsPerMinute) throws IOException {
+		FileChannel channel = FileChannel.open(outputFile.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			StreamingMidiWriter ret = new StreamingMidiWriter(channel,
+					numVoices, beatsPerMinute);
+			ret.ownsChannel = true;
+			return ret;
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Adds the next beat of the song.
+	 * 
+	 * @param beat
+	 * 			The beat, with its non-chord tones already added
+	 * @throws IOException
+	 * 			If the channel can't be written to
+	 */
+	public void addBeat(Beat beat) throws IOException {
+		addBeat(beat.getNotesFirstHalf(), beat.getNotesSecondHalf());
+	}
+	
+	/**
+	 * Adds the next beat of the song.
+	 * 
+	 * @param firstHalf
+	 * 			The notes played on the first half of the beat, one per voice
+	 * @param secondHalf
+	 * 			The notes played on the second half of the beat, one per voice
+	 * @throws IOException
+	 * 			If the channel can't be written to
+	 */
+	public void addBeat(Note[] firstHalf, Note[] secondHalf)
+			throws IOException {
+		// Check for valid input
+		if (closed) {
+			throw new IllegalStateException("Writer is closed!");
+		}
+		if (firstHalf.length != numVoices || secondHalf.length != numVoices) {
+			throw new IllegalArgumentException("Wrong number of voices!");
+		}
+		
+		// Every voice starts its note on the beat. Voices that change note
+		// halfway through do so next, then every note stops at the end.
+		long startTime = (long) MidiFileWriter.TICKS_PER_BEAT * numBeats;
+		long middle = startTime + MidiFileWriter.TICKS_PER_BEAT / 2;
+		long endTime = startTime + MidiFileWriter.TICKS_PER_BEAT;
+		for (int voice = 0; voice < numVoices; voice++) {
+			encoder.noteOn(startTime, voice, firstHalf[voice].getMidiNumber(),
+					MidiFileWriter.VELOCITY);
+		}
+		for (int voice = 0; voice < numVoices; voice++) {
+			int first = firstHalf[voice].getMidiNumber();
+			int second = secondHalf[voice].getMidiNumber();
+			if (first != second) {
+				encoder.noteOff(middle, voice, first);
+				encoder.noteOn(middle, voice, second, MidiFileWriter.VELOCITY);
+			}
+		}
+		for (int voice = 0; voice < numVoices; voice++) {
+			encoder.noteOff(endTime, voice,
+					secondHalf[voice].getMidiNumber());
+		}
+		numBeats++;
+		
+		if (fileChannel != null && encoder.size() >= FLUSH_THRESHOLD) {
+			flush();
+		}
+	}
+	
+	/**
+	 * Gets the number of beats added so far.
+	 * 
+	 * @return See above
+	 */
+	public int getNumBeats() {
+		return numBeats;
+	}
+	
+	/**
+	 * Ends the track, writes out whatever's left, and fills in the track's
+	 * length. Closes the file if this writer opened it.
+	 * 
+	 * @throws IOException
+	 * 			If the channel can't be written to
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		
+		try {
+			encoder.endOfTrack(encoder.getLastTick());
+			if (fileChannel != null) {
+				flush();
+				header.clear();
+				header.putInt((int) trackLength);
+				header.flip();
+				long position = lengthPosition;
+				while (header.hasRemaining()) {
+					position += fileChannel.write(header, position);
+				}
+			} else {
+				ByteBuffer events = encoder.getBytes();
+				header.clear();
+				MidiFileWriter.putTrackHeader(header, events.remaining());
+				header.flip();
+				MidiFileWriter.writeFully(channel, header);
+				MidiFileWriter.writeFully(channel, events);
+			}
+		} finally {
+			if (ownsChannel) {
+				channel.close();
+			}
+		}
+	}
+	
+	/**
+	 * Writes out the encoded events, and makes room for more.
+	 * 
+	 * @throws IOException
+	 * 			If the channel can't be written to
+	 */
+	private void flush() throws IOException {
+		ByteBuffer events = encoder.getBytes();
+		trackLength += events.remaining();
+		MidiFileWriter.writeFully(channel, events);
+		encoder.clearBytes();
+	}
+}
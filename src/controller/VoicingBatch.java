@@ -0,0 +1,243 @@
+package controller;
+
+import notes.Chord;
+import notes.Note;
+
+/**
+ * The VoicingBatch class checks many candidate voicings of a beat against
+ * the standard rules at once.
+ * 
+ * Candidates are stored a voice at a time: one int array of MIDI numbers per
+ * voice, with one slot per candidate. Each check is a loop over a single
+ * array with no branches and no objects, which the JIT can unroll and turn
+ * into SIMD instructions on its own. Each check sets a non-zero failure flag
+ * for every candidate that breaks its rule. Chord tones are checked with a
+ * bit per pitch class, leaps with a shift into Rules.INVALID_LEAP_MASK, and
+ * parallel fifths only for the pairs of voices that were a fifth apart on the
+ * previous beat.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class VoicingBatch {
+	
+	/**
+	 * The number of voices in each candidate
+	 */
+	private int numVoices;
+	
+	/**
+	 * The number of candidates added so far
+	 */
+	private int size;
+	
+	/**
+	 * The MIDI numbers of each candidate, by voice
+	 */
+	private int[][] pitches;
+	
+	/**
+	 * Scratch space for the failures found so far, one slot per candidate
+	 */
+	private int[] failures;
+	
+	/**
+	 * Scratch space for the pitch classes in each candidate
+	 */
+	private int[] pitchClasses;
+	
+	/**
+	 * Constructor. Sets up an empty batch.
+	 * 
+	 * @param numVoices
+	 * 			The number of voices in each candidate
+	 * @param capacity
+	 * 			The number of candidates to make room for at first
+	 */
+	public VoicingBatch(int numVoices, int capacity) {
+		this.numVoices = numVoices;
+		this.size = 0;
+		this.pitches = new int[numVoices][Math.max(capacity, 1)];
+		this.failures = new int[Math.max(capacity, 1)];
+		this.pitchClasses = new int[Math.max(capacity, 1)];
+	}
+	
+	/**
+	 * Adds a candidate to the batch.
+	 * 
+	 * @param voicing
+	 * 			The candidate's notes, one per voice
+	 */
+	public void add(Note[] voicing) {
+		if (size == failures.length) {
+			grow();
+		}
+		for (int voice = 0; voice < numVoices; voice++) {
+			pitches[voice][size] = voicing[voice].getMidiNumber();
+		}
+		size++;
+	}
+	
+	/**
+	 * Empties the batch, keeping the space it has.
+	 */
+	public void clear() {
+		size = 0;
+	}
+	
+	/**
+	 * Fetches the number of candidates in the batch.
+	 * 
+	 * @return The number of candidates
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Gets one of the candidates back out of the batch.
+	 * 
+	 * @param candidate
+	 * 			The index of the candidate
+	 * @return The candidate's notes, one per voice
+	 */
+	public Note[] getVoicing(int candidate) {
+		Note[] ret = new Note[numVoices];
+		for (int voice = 0; voice < numVoices; voice++) {
+			ret[voice] = new Note(pitches[voice][candidate]);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Checks every candidate against the standard rules: every chord tone
+	 * present, no bad leaps from the previous beat, and no parallel fifths
+	 * with it.
+	 * 
+	 * @param chord
+	 * 			The chord the candidates are voicing
+	 * @param prevNotes
+	 * 			The notes of the previous beat
+	 * @param valid
+	 * 			Filled in with whether each candidate passed. Must have room
+	 * 			for every candidate.
+	 * @return The number of candidates that passed
+	 */
+	public int evaluate(Chord chord, Note[] prevNotes, boolean[] valid) {
+		for (int candidate = 0; candidate < size; candidate++) {
+			failures[candidate] = 0;
+		}
+		
+		findMissingChordTones(chord);
+		findInvalidLeaps(prevNotes);
+		findParallelFifths(prevNotes);
+		
+		int ret = 0;
+		for (int candidate = 0; candidate < size; candidate++) {
+			valid[candidate] = failures[candidate] == 0;
+			ret += valid[candidate] ? 1 : 0;
+		}
+		return ret;
+	}
+	
+	/**
+	 * Flags every candidate that leaves out a chord tone.
+	 * 
+	 * @param chord
+	 * 			The chord the candidates are voicing
+	 */
+	private void findMissingChordTones(Chord chord) {
+		int chordMask = pitchClassBit(chord.getAllRoots()[0])
+				| pitchClassBit(chord.getAllThirds()[0])
+				| pitchClassBit(chord.getAllFifths()[0]);
+		
+		// Collect a bit per pitch class in each candidate.
+		for (int candidate = 0; candidate < size; candidate++) {
+			pitchClasses[candidate] = 0;
+		}
+		for (int voice = 0; voice < numVoices; voice++) {
+			int[] lane = pitches[voice];
+			for (int candidate = 0; candidate < size; candidate++) {
+				pitchClasses[candidate] |= 1 << (lane[candidate]
+						% Rules.OCTAVE_LENGTH);
+			}
+		}
+		
+		for (int candidate = 0; candidate < size; candidate++) {
+			failures[candidate] |=
+					(pitchClasses[candidate] & chordMask) ^ chordMask;
+		}
+	}
+	
+	/**
+	 * Flags every candidate with a voice that leaps by a dissonant interval
+	 * or more than an octave from the previous beat.
+	 * 
+	 * @param prevNotes
+	 * 			The notes of the previous beat
+	 */
+	private void findInvalidLeaps(Note[] prevNotes) {
+		for (int voice = 0; voice < numVoices; voice++) {
+			int[] lane = pitches[voice];
+			int prevPitch = prevNotes[voice].getMidiNumber();
+			for (int candidate = 0; candidate < size; candidate++) {
+				int leap = Math.min(Math.abs(lane[candidate] - prevPitch), 63);
+				failures[candidate] |=
+						(int) ((Rules.INVALID_LEAP_MASK >>> leap) & 1);
+			}
+		}
+	}
+	
+	/**
+	 * Flags every candidate where a pair of voices that was a fifth apart
+	 * on the previous beat is a fifth apart again.
+	 * 
+	 * @param prevNotes
+	 * 			The notes of the previous beat
+	 */
+	private void findParallelFifths(Note[] prevNotes) {
+		long prevSignature = IntervalSignature.of(prevNotes);
+		for (int upper = 1; upper < numVoices; upper++) {
+			for (int lower = 0; lower < upper; lower++) {
+				if (IntervalSignature.getInterval(prevSignature, lower, upper)
+						!= IntervalSignature.FIFTH) {
+					continue;
+				}
+				
+				int[] upperLane = pitches[upper];
+				int[] lowerLane = pitches[lower];
+				for (int candidate = 0; candidate < size; candidate++) {
+					int interval = Math.abs(upperLane[candidate]
+							- lowerLane[candidate]) % Rules.OCTAVE_LENGTH;
+					failures[candidate] |=
+							interval == IntervalSignature.FIFTH ? 1 : 0;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Doubles the room for candidates.
+	 */
+	private void grow() {
+		int capacity = failures.length * 2;
+		for (int voice = 0; voice < numVoices; voice++) {
+			int[] lane = new int[capacity];
+			System.arraycopy(pitches[voice], 0, lane, 0, size);
+			pitches[voice] = lane;
+		}
+		failures = new int[capacity];
+		pitchClasses = new int[capacity];
+	}
+	
+	/**
+	 * Gets the bit for a note's pitch class.
+	 * 
+	 * @param note
+	 * 			The note
+	 * @return A bit from 0 to 11
+	 */
+	static int pitchClassBit(Note note) {
+		return 1 << (note.getMidiNumber() % Rules.OCTAVE_LENGTH);
+	}
+}
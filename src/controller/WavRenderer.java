@@ -0,0 +1,304 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.midi.*;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import exceptions.MidiExportException;
+
+/**
+ * The WavRenderer turns songs into audio and saves them as WAV files,
+ * without playing them.
+ * 
+ * It uses the software synthesizer that comes with Java, opened as a stream
+ * rather than on a sound card. Every note is sent to the synthesizer up front
+ * with the time it should play, in microseconds since the stream started,
+ * and then the audio is read out of the stream as fast as it can be made.
+ * That's much faster than playing the song.
+ * 
+ * The synthesizer is kept open from song to song, since loading its
+ * soundbank is slow. One renderer can only render one song at a time;
+ * renderAll() gives each thread its own.
+ * 
+ * Opening the stream uses com.sun.media.sound.AudioSynthesizer, which isn't
+ * part of the public API, so it's looked up by reflection. On Java 9 and
+ * later, the JVM needs
+ * --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED
+ * 
+ * @author Dan Pang
+ *
+ */
+public class WavRenderer implements Closeable {
+	
+	/**
+	 * The format of the audio: CD quality, 16-bit stereo
+	 */
+	public static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2,
+			true, false);
+	
+	/**
+	 * How long to keep rendering after the last note stops, so it can fade
+	 * out, in microseconds
+	 */
+	private static final long RELEASE_MICROS = 1000000;
+	
+	/**
+	 * The software synthesizer
+	 */
+	private Synthesizer synth;
+	
+	/**
+	 * Where the synthesizer sends the notes
+	 */
+	private Receiver receiver;
+	
+	/**
+	 * The audio coming out of the synthesizer
+	 */
+	private AudioInputStream stream;
+	
+	/**
+	 * The number of frames read out of the stream so far
+	 */
+	private long framesRendered;
+	
+	/**
+	 * Constructor. Opens a synthesizer of its own.
+	 * 
+	 * @throws MidiExportException
+	 * 			If there's no software synthesizer to render with
+	 */
+	public WavRenderer() throws MidiExportException {
+		try {
+			synth = MidiSystem.getSynthesizer();
+			Method openStream = findOpenStream(synth);
+			stream = (AudioInputStream) openStream.invoke(synth, FORMAT, null);
+			receiver = synth.getReceiver();
+		} catch (MidiUnavailableException | IllegalAccessException ex) {
+			close();
+			throw new MidiExportException("Unable to open synthesizer", ex);
+		} catch (InvocationTargetException ex) {
+			close();
+			throw new MidiExportException("Unable to open synthesizer",
+					ex.getCause());
+		}
+	}
+	
+	/**
+	 * Renders a song to a WAV file, replacing it if it's already there.
+	 * Voice v plays on channel v.
+	 * 
+	 * @param song
+	 * 			The song to render
+	 * @param outputFile
+	 * 			The file to write it to
+	 * @throws IOException
+	 * 			If the file can't be written
+	 */
+	public void render(ColumnarSong song, File outputFile) throws IOException {
+		double microsPerHalfBeat = 30000000.0 / song.getBPM();
+		long start = framesRendered * 1000000 / (long) FORMAT.getFrameRate();
+		for (int voice = 0; voice < song.getNumVoices(); voice++) {
+			sendVoice(voice, song.getPitchesFirstHalf(voice),
+					song.getPitchesSecondHalf(voice), song.getNumBeats(),
+					start, microsPerHalfBeat);
+		}
+		
+		long micros = Math.round(2 * song.getNumBeats() * microsPerHalfBeat)
+				+ RELEASE_MICROS;
+		long numFrames = micros * (long) FORMAT.getFrameRate() / 1000000;
+		
+		// Read just this song's frames, leaving the stream open for the next.
+		AudioInputStream songStream = new AudioInputStream(stream, FORMAT,
+				numFrames);
+		AudioSystem.write(songStream, AudioFileFormat.Type.WAVE, outputFile);
+		framesRendered += numFrames;
+	}
+	
+	/**
+	 * Closes the synthesizer.
+	 */
+	@Override
+	public void close() {
+		if (synth != null) {
+			synth.close();
+			synth = null;
+		}
+	}
+	
+	/**
+	 * Renders many songs to WAV files at once, spread over a number of
+	 * threads. Each thread has a renderer of its own.
+	 * 
+	 * @param songs
+	 * 			The songs to render
+	 * @param outputFiles
+	 * 			The file to write each song to
+	 * @param numThreads
+	 * 			The number of threads to render on
+	 * @throws IOException
+	 * 			If a file can't be written
+	 * @throws MidiExportException
+	 * 			If there's no software synthesizer to render with
+	 * @throws InterruptedException
+	 * 			If interrupted while waiting for the threads
+	 */
+	public static void renderAll(final List<ColumnarSong> songs,
+			final List<File> outputFiles, int numThreads)
+			throws IOException, MidiExportException, InterruptedException {
+		// Check for valid input
+		if (songs.size() != outputFiles.size()) {
+			throw new IllegalArgumentException(
+					"Need one output file per song!");
+		}
+		if (numThreads <= 0) {
+			throw new IllegalArgumentException("Invalid number of threads!");
+		}
+		
+		final AtomicInteger nextSong = new AtomicInteger();
+		List<Callable<Void>> workers = new ArrayList<>();
+		for (int indx = 0; indx < Math.min(numThreads, songs.size()); indx++) {
+			workers.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException, MidiExportException {
+					try (WavRenderer renderer = new WavRenderer()) {
+						int song = nextSong.getAndIncrement();
+						while (song < songs.size()) {
+							renderer.render(songs.get(song),
+									outputFiles.get(song));
+							song = nextSong.getAndIncrement();
+						}
+					}
+					return null;
+				}
+			});
+		}
+		
+		if (workers.isEmpty()) {
+			return;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(workers.size());
+		try {
+			for (Future<Void> result : pool.invokeAll(workers)) {
+				try {
+					result.get();
+				} catch (ExecutionException ex) {
+					Throwable cause = ex.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					} else if (cause instanceof MidiExportException) {
+						throw (MidiExportException) cause;
+					}
+					throw new IllegalStateException("Rendering failed", cause);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Sends one voice's notes to the synthesizer, in the same order as
+	 * MidiFileWriter.encodeVoice().
+	 * 
+	 * @param voice
+	 * 			The voice, which is also its channel
+	 * @param firstHalf
+	 * 			The MIDI number played on the first half of each beat
+	 * @param secondHalf
+	 * 			The MIDI number played on the second half of each beat
+	 * @param numBeats
+	 * 			The number of beats to send
+	 * @param start
+	 * 			When the song starts, in microseconds of stream time
+	 * @param microsPerHalfBeat
+	 * 			The length of half a beat, in microseconds
+	 */
+	private void sendVoice(int voice, byte[] firstHalf, byte[] secondHalf,
+			int numBeats, long start, double microsPerHalfBeat) {
+		for (int beat = 0; beat < numBeats; beat++) {
+			long beatStart = start + Math.round(2 * beat * microsPerHalfBeat);
+			long middle = start + Math.round((2 * beat + 1)
+					* microsPerHalfBeat);
+			long beatEnd = start + Math.round((2 * beat + 2)
+					* microsPerHalfBeat);
+			send(ShortMessage.NOTE_ON, voice, firstHalf[beat],
+					MidiFileWriter.VELOCITY, beatStart);
+			if (firstHalf[beat] == secondHalf[beat]) {
+				send(ShortMessage.NOTE_OFF, voice, firstHalf[beat], 0, beatEnd);
+			} else {
+				send(ShortMessage.NOTE_OFF, voice, firstHalf[beat], 0, middle);
+				send(ShortMessage.NOTE_ON, voice, secondHalf[beat],
+						MidiFileWriter.VELOCITY, middle);
+				send(ShortMessage.NOTE_OFF, voice, secondHalf[beat], 0,
+						beatEnd);
+			}
+		}
+	}
+	
+	/**
+	 * Sends a message to the synthesizer, to be played at a given time.
+	 * 
+	 * @param command
+	 * 			The command value for the ShortMessage
+	 * @param channel
+	 * 			The channel to play on
+	 * @param note
+	 * 			The MIDI value for the note
+	 * @param velocity
+	 * 			The velocity of the note
+	 * @param time
+	 * 			When to play it, in microseconds of stream time
+	 */
+	private void send(int command, int channel, int note, int velocity,
+			long time) {
+		try {
+			receiver.send(new ShortMessage(command, channel, note, velocity),
+					time);
+		} catch (InvalidMidiDataException ex) {
+			throw new IllegalArgumentException("Invalid note " + note, ex);
+		}
+	}
+	
+	/**
+	 * Finds the method that opens a synthesizer as a stream of audio.
+	 * 
+	 * @param synth
+	 * 			The synthesizer
+	 * @return AudioSynthesizer.openStream(AudioFormat, Map)
+	 * @throws MidiUnavailableException
+	 * 			If the synthesizer can't be opened as a stream
+	 */
+	private static Method findOpenStream(Synthesizer synth)
+			throws MidiUnavailableException {
+		for (Class<?> type : synth.getClass().getInterfaces()) {
+			if (type.getName().equals("com.sun.media.sound.AudioSynthesizer")) {
+				try {
+					return type.getMethod("openStream", AudioFormat.class,
+							Map.class);
+				} catch (NoSuchMethodException ex) {
+					break;
+				}
+			}
+		}
+		throw new MidiUnavailableException(
+				"Synthesizer can't render to a stream");
+	}
+}
@@ -0,0 +1,30 @@
+package controller.rules;
+
+import notes.Beat;
+import notes.Chord;
+import notes.Note;
+
+/**
+ * A BeatRule checks the notes of a beat once every voice has been picked.
+ * 
+ * @author Dan Pang
+ *
+ */
+public interface BeatRule extends Rule {
+	
+	/**
+	 * Checks whether a beat's notes follow the rule.
+	 * 
+	 * @param notes
+	 * 			The notes of the beat, one per voice
+	 * @param signature
+	 * 			The interval signature of the notes
+	 * @param chord
+	 * 			The chord played on the beat
+	 * @param prevBeat
+	 * 			The previous beat
+	 * @return Whether the notes follow the rule
+	 */
+	public boolean checkBeat(Note[] notes, long signature, Chord chord,
+			Beat prevBeat);
+}
@@ -0,0 +1,44 @@
+package controller.rules;
+
+import notes.Beat;
+import notes.Chord;
+import notes.Note;
+import controller.Rules;
+
+/**
+ * Every beat must have the root, third and fifth of its chord.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class ChordTonesRule implements BeatRule {
+	
+	/**
+	 * Gets a short name for the rule.
+	 * 
+	 * @return The rule's name
+	 */
+	@Override
+	public String getName() {
+		return "chord tones";
+	}
+	
+	/**
+	 * Checks whether a beat's notes follow the rule.
+	 * 
+	 * @param notes
+	 * 			The notes of the beat, one per voice
+	 * @param signature
+	 * 			The interval signature of the notes
+	 * @param chord
+	 * 			The chord played on the beat
+	 * @param prevBeat
+	 * 			The previous beat
+	 * @return Whether the notes follow the rule
+	 */
+	@Override
+	public boolean checkBeat(Note[] notes, long signature, Chord chord,
+			Beat prevBeat) {
+		return Rules.containsAllChordTones(notes, chord);
+	}
+}
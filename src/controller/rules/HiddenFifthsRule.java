@@ -0,0 +1,59 @@
+package controller.rules;
+
+import notes.Beat;
+import notes.Chord;
+import notes.Note;
+import controller.IntervalSignature;
+
+/**
+ * The outer voices may not move in the same direction into a fifth or an
+ * octave while the top voice leaps.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class HiddenFifthsRule implements BeatRule {
+	
+	/**
+	 * Gets a short name for the rule.
+	 * 
+	 * @return The rule's name
+	 */
+	@Override
+	public String getName() {
+		return "hidden fifths";
+	}
+	
+	/**
+	 * Checks whether a beat's notes follow the rule.
+	 * 
+	 * @param notes
+	 * 			The notes of the beat, one per voice
+	 * @param signature
+	 * 			The interval signature of the notes
+	 * @param chord
+	 * 			The chord played on the beat
+	 * @param prevBeat
+	 * 			The previous beat
+	 * @return Whether the notes follow the rule
+	 */
+	@Override
+	public boolean checkBeat(Note[] notes, long signature, Chord chord,
+			Beat prevBeat) {
+		int top = notes.length - 1;
+		int bassMotion = notes[0].getInterval(prevBeat.getChordTone(0));
+		int topMotion = notes[top].getInterval(prevBeat.getChordTone(top));
+		
+		// Only a leap in the top voice in the same direction as the bass
+		// counts.
+		if (bassMotion == 0 || topMotion == 0
+				|| (bassMotion > 0) != (topMotion > 0)
+				|| Math.abs(topMotion) <= 2) {
+			return true;
+		}
+		
+		int interval = IntervalSignature.getInterval(signature, 0, top);
+		return interval != IntervalSignature.OCTAVE
+				&& interval != IntervalSignature.FIFTH;
+	}
+}
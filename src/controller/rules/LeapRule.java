@@ -0,0 +1,44 @@
+package controller.rules;
+
+import notes.Beat;
+import notes.Note;
+import controller.Rules;
+
+/**
+ * No voice may leap more than an octave, or by a dissonant interval.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class LeapRule implements VoiceRule {
+	
+	/**
+	 * Gets a short name for the rule.
+	 * 
+	 * @return The rule's name
+	 */
+	@Override
+	public String getName() {
+		return "leaps";
+	}
+	
+	/**
+	 * Checks whether a note can be used for a voice.
+	 * 
+	 * @param newNote
+	 * 			The note being tried
+	 * @param voice
+	 * 			The voice it's being tried in
+	 * @param notes
+	 * 			The notes of the beat so far
+	 * @param prevBeat
+	 * 			The previous beat
+	 * @return Whether the note follows the rule
+	 */
+	@Override
+	public boolean checkVoice(Note newNote, int voice, Note[] notes,
+			Beat prevBeat) {
+		return Rules.isValidLeap(newNote, prevBeat.getChordTone(voice),
+				prevBeat.getLeap(voice));
+	}
+}
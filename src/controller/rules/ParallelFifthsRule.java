@@ -0,0 +1,46 @@
+package controller.rules;
+
+import notes.Beat;
+import notes.Chord;
+import notes.Note;
+import controller.IntervalSignature;
+
+/**
+ * No two voices may be a fifth (or a compound fifth) apart on two beats in a
+ * row.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class ParallelFifthsRule implements BeatRule {
+	
+	/**
+	 * Gets a short name for the rule.
+	 * 
+	 * @return The rule's name
+	 */
+	@Override
+	public String getName() {
+		return "parallel fifths";
+	}
+	
+	/**
+	 * Checks whether a beat's notes follow the rule.
+	 * 
+	 * @param notes
+	 * 			The notes of the beat, one per voice
+	 * @param signature
+	 * 			The interval signature of the notes
+	 * @param chord
+	 * 			The chord played on the beat
+	 * @param prevBeat
+	 * 			The previous beat
+	 * @return Whether the notes follow the rule
+	 */
+	@Override
+	public boolean checkBeat(Note[] notes, long signature, Chord chord,
+			Beat prevBeat) {
+		return !IntervalSignature.hasParallel(prevBeat.getIntervalSignature(),
+				signature, IntervalSignature.FIFTH);
+	}
+}
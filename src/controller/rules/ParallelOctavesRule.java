@@ -0,0 +1,52 @@
+package controller.rules;
+
+import notes.Beat;
+import notes.Chord;
+import notes.Note;
+import controller.IntervalSignature;
+
+/**
+ * No two voices may move in the same direction from one octave (or unison)
+ * to another.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class ParallelOctavesRule implements BeatRule {
+	
+	/**
+	 * Gets a short name for the rule.
+	 * 
+	 * @return The rule's name
+	 */
+	@Override
+	public String getName() {
+		return "parallel octaves";
+	}
+	
+	/**
+	 * Checks whether a beat's notes follow the rule.
+	 * 
+	 * @param notes
+	 * 			The notes of the beat, one per voice
+	 * @param signature
+	 * 			The interval signature of the notes
+	 * @param chord
+	 * 			The chord played on the beat
+	 * @param prevBeat
+	 * 			The previous beat
+	 * @return Whether the notes follow the rule
+	 */
+	@Override
+	public boolean checkBeat(Note[] notes, long signature, Chord chord,
+			Beat prevBeat) {
+		long octaves = IntervalSignature.findPairs(
+				prevBeat.getIntervalSignature(), IntervalSignature.OCTAVE)
+				& IntervalSignature.findPairs(signature,
+						IntervalSignature.OCTAVE);
+		
+		// Only bother working out the motion if there are octaves at all.
+		return octaves == 0 || (octaves & IntervalSignature.findSimilarMotion(
+				prevBeat.getChordTones(), notes)) == 0;
+	}
+}
@@ -0,0 +1,23 @@
+package controller.rules;
+
+/**
+ * The Rule interface is a single rule of counterpoint that a RuleRegistry can
+ * check notes against.
+ * 
+ * A rule checks notes one voice at a time by implementing VoiceRule, a whole
+ * beat at a time by implementing BeatRule, or both. Rules must not change
+ * the notes they are given or depend on anything but them, so the registry
+ * is free to check them in any order.
+ * 
+ * @author Dan Pang
+ *
+ */
+public interface Rule {
+	
+	/**
+	 * Gets a short name for the rule.
+	 * 
+	 * @return The rule's name
+	 */
+	public String getName();
+}
@@ -0,0 +1,405 @@
+package controller.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import notes.Beat;
+import notes.Chord;
+import notes.Note;
+import controller.IntervalSignature;
+
+/**
+ * The RuleRegistry class holds the rules a song's notes have to follow and
+ * checks notes against them.
+ * 
+ * Checking stops at the first rule that fails, so the order matters. The
+ * registry keeps track of how often each rule turns a note down and, on a
+ * sample of calls, how long it takes. Every so often it re-sorts its rules
+ * so that the ones with the lowest expected cost per rejection go first:
+ * cheap rules that fail a lot run before expensive rules that hardly ever
+ * fail. Since rules only look at the notes they are given, the order never
+ * changes the outcome, only how long it takes to get there.
+ * 
+ * A registry keeps its counts without locking, so each thread generating
+ * notes should have its own. copy() makes one with the same rules.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class RuleRegistry {
+	
+	/**
+	 * Every how many calls to time a rule. Timing every call would cost more
+	 * than the cheap rules do.
+	 */
+	private static final int SAMPLE_INTERVAL = 32;
+	
+	/**
+	 * Every how many checks to re-sort the rules.
+	 */
+	private static final int SORT_INTERVAL = 1024;
+	
+	/**
+	 * Sorts rules by their expected cost per rejection, lowest first.
+	 */
+	private static final Comparator<RuleStats> BY_EXPECTED_COST =
+			new Comparator<RuleStats>() {
+				public int compare(RuleStats stats1, RuleStats stats2) {
+					return Double.compare(stats1.getExpectedCost(),
+							stats2.getExpectedCost());
+				}
+			};
+	
+	/**
+	 * The rules run on every candidate note, in the order to run them
+	 */
+	private RuleStats[] voiceRules;
+	
+	/**
+	 * The rules run on every finished beat, in the order to run them
+	 */
+	private RuleStats[] beatRules;
+	
+	/**
+	 * The number of checks since the rules were last sorted
+	 */
+	private int checksSinceSort;
+	
+	/**
+	 * Constructor. Starts with no rules.
+	 */
+	public RuleRegistry() {
+		voiceRules = new RuleStats[0];
+		beatRules = new RuleStats[0];
+	}
+	
+	/**
+	 * Creates a registry with the rules songs have always followed: no bad
+	 * leaps, every chord tone present, and no parallel fifths.
+	 * 
+	 * @return The registry
+	 */
+	public static RuleRegistry standard() {
+		RuleRegistry ret = new RuleRegistry();
+		ret.add(new LeapRule());
+		ret.add(new ChordTonesRule());
+		ret.add(new ParallelFifthsRule());
+		return ret;
+	}
+	
+	/**
+	 * Creates a registry with the standard rules, plus no parallel octaves,
+	 * no voice crossing and no hidden fifths in the outer voices.
+	 * 
+	 * @return The registry
+	 */
+	public static RuleRegistry strict() {
+		RuleRegistry ret = standard();
+		ret.add(new VoiceCrossingRule());
+		ret.add(new ParallelOctavesRule());
+		ret.add(new HiddenFifthsRule());
+		return ret;
+	}
+	
+	/**
+	 * Creates a registry with the same rules as this one, in the same order.
+	 * 
+	 * @return The copy
+	 */
+	public RuleRegistry copy() {
+		RuleRegistry ret = new RuleRegistry();
+		ret.voiceRules = copyStats(voiceRules);
+		ret.beatRules = copyStats(beatRules);
+		return ret;
+	}
+	
+	/**
+	 * Adds a rule. It goes wherever it applies: a VoiceRule is checked on
+	 * every candidate note, and a BeatRule on every finished beat.
+	 * 
+	 * @param rule
+	 * 			The rule to add
+	 */
+	public void add(Rule rule) {
+		// Check for valid input
+		if (!(rule instanceof VoiceRule) && !(rule instanceof BeatRule)) {
+			throw new IllegalArgumentException(rule.getName()
+					+ " doesn't check voices or beats!");
+		}
+		
+		if (rule instanceof VoiceRule) {
+			voiceRules = append(voiceRules, new RuleStats(rule));
+		}
+		if (rule instanceof BeatRule) {
+			beatRules = append(beatRules, new RuleStats(rule));
+		}
+	}
+	
+	/**
+	 * Checks a candidate note against every VoiceRule.
+	 * 
+	 * @param newNote
+	 * 			The note being tried
+	 * @param voice
+	 * 			The voice it's being tried in
+	 * @param notes
+	 * 			The notes of the beat so far
+	 * @param prevBeat
+	 * 			The previous beat
+	 * @return Whether the note follows every rule
+	 */
+	public boolean checkVoice(Note newNote, int voice, Note[] notes,
+			Beat prevBeat) {
+		countCheck();
+		for (RuleStats stats : voiceRules) {
+			VoiceRule rule = (VoiceRule) stats.rule;
+			boolean passed;
+			if (stats.shouldSample()) {
+				long startTime = System.nanoTime();
+				passed = rule.checkVoice(newNote, voice, notes, prevBeat);
+				stats.addSample(System.nanoTime() - startTime);
+			} else {
+				passed = rule.checkVoice(newNote, voice, notes, prevBeat);
+			}
+			if (!passed) {
+				stats.rejections++;
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks a finished beat against every BeatRule.
+	 * 
+	 * @param notes
+	 * 			The notes of the beat, one per voice
+	 * @param chord
+	 * 			The chord played on the beat
+	 * @param prevBeat
+	 * 			The previous beat
+	 * @return Whether the notes follow every rule
+	 */
+	public boolean checkBeat(Note[] notes, Chord chord, Beat prevBeat) {
+		countCheck();
+		
+		// Work out the intervals once for every rule to share.
+		long signature = IntervalSignature.of(notes);
+		for (RuleStats stats : beatRules) {
+			BeatRule rule = (BeatRule) stats.rule;
+			boolean passed;
+			if (stats.shouldSample()) {
+				long startTime = System.nanoTime();
+				passed = rule.checkBeat(notes, signature, chord, prevBeat);
+				stats.addSample(System.nanoTime() - startTime);
+			} else {
+				passed = rule.checkBeat(notes, signature, chord, prevBeat);
+			}
+			if (!passed) {
+				stats.rejections++;
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Determines whether one beat can be followed by another, given that
+	 * both were voiced separately.
+	 * 
+	 * @param prevBeat
+	 * 			The earlier beat
+	 * @param nextBeat
+	 * 			The later beat
+	 * @return Whether nextBeat follows every rule after prevBeat
+	 */
+	public boolean canPrecede(Beat prevBeat, Beat nextBeat) {
+		return checkVoicing(nextBeat.getChordTones(), nextBeat.getChord(),
+				prevBeat);
+	}
+	
+	/**
+	 * Checks a whole voicing against every rule, VoiceRules first.
+	 * 
+	 * @param notes
+	 * 			The notes of the voicing, one per voice
+	 * @param chord
+	 * 			The chord the voicing plays
+	 * @param prevBeat
+	 * 			The previous beat
+	 * @return Whether the voicing follows every rule
+	 */
+	public boolean checkVoicing(Note[] notes, Chord chord, Beat prevBeat) {
+		for (int voice = 0; voice < notes.length; voice++) {
+			if (!checkVoice(notes[voice], voice, notes, prevBeat)) {
+				return false;
+			}
+		}
+		return checkBeat(notes, chord, prevBeat);
+	}
+	
+	/**
+	 * Lists the VoiceRules in the order they're currently checked.
+	 * 
+	 * @return The rules
+	 */
+	public Rule[] getVoiceRules() {
+		return getRules(voiceRules);
+	}
+	
+	/**
+	 * Lists the BeatRules in the order they're currently checked.
+	 * 
+	 * @return The rules
+	 */
+	public Rule[] getBeatRules() {
+		return getRules(beatRules);
+	}
+	
+	/**
+	 * Counts a check, and re-sorts the rules if it's been long enough.
+	 */
+	private void countCheck() {
+		checksSinceSort++;
+		if (checksSinceSort >= SORT_INTERVAL) {
+			checksSinceSort = 0;
+			Arrays.sort(voiceRules, BY_EXPECTED_COST);
+			Arrays.sort(beatRules, BY_EXPECTED_COST);
+		}
+	}
+	
+	/**
+	 * Adds a rule to the end of a list of rules.
+	 * 
+	 * @param list
+	 * 			The rules so far
+	 * @param stats
+	 * 			The rule to add
+	 * @return The new list
+	 */
+	private static RuleStats[] append(RuleStats[] list, RuleStats stats) {
+		RuleStats[] ret = Arrays.copyOf(list, list.length + 1);
+		ret[list.length] = stats;
+		return ret;
+	}
+	
+	/**
+	 * Copies a list of rules along with what's been measured about them.
+	 * 
+	 * @param list
+	 * 			The rules to copy
+	 * @return The copy
+	 */
+	private static RuleStats[] copyStats(RuleStats[] list) {
+		RuleStats[] ret = new RuleStats[list.length];
+		for (int indx = 0; indx < list.length; indx++) {
+			ret[indx] = new RuleStats(list[indx]);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Gets the rules out of a list of rules.
+	 * 
+	 * @param list
+	 * 			The rules and their measurements
+	 * @return Just the rules
+	 */
+	private static Rule[] getRules(RuleStats[] list) {
+		ArrayList<Rule> ret = new ArrayList<>();
+		for (RuleStats stats : list) {
+			ret.add(stats.rule);
+		}
+		return ret.toArray(new Rule[ret.size()]);
+	}
+	
+	/**
+	 * What the registry has measured about a single rule.
+	 */
+	private static class RuleStats {
+		
+		/**
+		 * The rule being measured
+		 */
+		private final Rule rule;
+		
+		/**
+		 * The number of times the rule has been checked
+		 */
+		private long calls;
+		
+		/**
+		 * The number of times the rule has failed
+		 */
+		private long rejections;
+		
+		/**
+		 * The number of calls that were timed
+		 */
+		private long samples;
+		
+		/**
+		 * The total time of the timed calls, in nanoseconds
+		 */
+		private long sampledNanos;
+		
+		/**
+		 * Constructor. Nothing has been measured yet.
+		 * 
+		 * @param rule
+		 * 			The rule to measure
+		 */
+		RuleStats(Rule rule) {
+			this.rule = rule;
+		}
+		
+		/**
+		 * Copy constructor.
+		 * 
+		 * @param source
+		 * 			The measurements to copy
+		 */
+		RuleStats(RuleStats source) {
+			this.rule = source.rule;
+			this.calls = source.calls;
+			this.rejections = source.rejections;
+			this.samples = source.samples;
+			this.sampledNanos = source.sampledNanos;
+		}
+		
+		/**
+		 * Counts a call, and decides whether to time it.
+		 * 
+		 * @return Whether this call should be timed
+		 */
+		boolean shouldSample() {
+			calls++;
+			return calls % SAMPLE_INTERVAL == 1;
+		}
+		
+		/**
+		 * Records the time a call took.
+		 * 
+		 * @param nanos
+		 * 			The time it took, in nanoseconds
+		 */
+		void addSample(long nanos) {
+			samples++;
+			sampledNanos += nanos;
+		}
+		
+		/**
+		 * Estimates how long it takes this rule to turn down a note, which
+		 * is how long it takes to run divided by how often it fails.
+		 * Both are nudged away from zero so new rules still get a turn.
+		 * 
+		 * @return The expected time per rejection, in nanoseconds
+		 */
+		double getExpectedCost() {
+			double cost = (sampledNanos + 1.0) / (samples + 1.0);
+			double rejectionRate = (rejections + 1.0) / (calls + 2.0);
+			return cost / rejectionRate;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package controller.rules;
+
+import notes.Beat;
+import notes.Note;
+
+/**
+ * No voice may cross the voice below it, or move past where a neighbouring
+ * voice was on the previous beat.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class VoiceCrossingRule implements VoiceRule {
+	
+	/**
+	 * Gets a short name for the rule.
+	 * 
+	 * @return The rule's name
+	 */
+	@Override
+	public String getName() {
+		return "voice crossing";
+	}
+	
+	/**
+	 * Checks whether a note can be used for a voice.
+	 * 
+	 * @param newNote
+	 * 			The note being tried
+	 * @param voice
+	 * 			The voice it's being tried in
+	 * @param notes
+	 * 			The notes of the beat so far
+	 * @param prevBeat
+	 * 			The previous beat
+	 * @return Whether the note follows the rule
+	 */
+	@Override
+	public boolean checkVoice(Note newNote, int voice, Note[] notes,
+			Beat prevBeat) {
+		if (voice > 0) {
+			if (newNote.lessThan(notes[voice - 1])
+					|| newNote.lessThan(prevBeat.getChordTone(voice - 1))) {
+				return false;
+			}
+		}
+		if (voice < notes.length - 1
+				&& newNote.greaterThan(prevBeat.getChordTone(voice + 1))) {
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,31 @@
+package controller.rules;
+
+import notes.Beat;
+import notes.Note;
+
+/**
+ * A VoiceRule checks each note as it is picked for a voice. It runs once per
+ * candidate note, so it should be cheap.
+ * 
+ * @author Dan Pang
+ *
+ */
+public interface VoiceRule extends Rule {
+	
+	/**
+	 * Checks whether a note can be used for a voice.
+	 * 
+	 * @param newNote
+	 * 			The note being tried
+	 * @param voice
+	 * 			The voice it's being tried in
+	 * @param notes
+	 * 			The notes of the beat so far. Every voice below this one has
+	 * 			already been picked.
+	 * @param prevBeat
+	 * 			The previous beat
+	 * @return Whether the note follows the rule
+	 */
+	public boolean checkVoice(Note newNote, int voice, Note[] notes,
+			Beat prevBeat);
+}
@@ -0,0 +1,49 @@
+package exceptions;
+
+/**
+ * Thrown when a song can't be exported or played.
+ * 
+ * @author Dan Pang
+ *
+ */
+@SuppressWarnings("serial") // ignore
+public class MidiExportException extends Exception {
+	
+	/**
+	 * Default constructor. Does nothing.
+	 */
+	public MidiExportException() {
+	}
+	
+	/**
+	 * Constructor. Takes a message to be displayed with the exception.
+	 * 
+	 * @param message
+	 * 			A message to be displayed with the exception
+	 */
+    public MidiExportException (String message) {
+    	super (message);
+	}
+    
+    /**
+     * Constructor. Takes a cause of the exception.
+     * 
+     * @param cause
+     * 			What caused the exception to occur
+     */
+    public MidiExportException (Throwable cause) {
+    	super (cause);
+	}
+    
+    /**
+     * Constructor. Takes both a message and a cause.
+     * 
+     * @param message
+	 * 			A message to be displayed with the exception
+     * @param cause
+     * 			What caused the exception to occur
+     */
+    public MidiExportException (String message, Throwable cause) {
+    	super (message, cause);
+	}
+}
@@ -4,6 +4,7 @@ import java.awt.*;
 import javax.swing.*;
 
 import notes.types.*;
+import controller.MidiDevices;
 import exceptions.InvalidFileFormatException;
 
 /**
@@ -306,6 +307,8 @@ public class FugueMain extends JFrame {
 	 * 			Unused
 	 */
 	public static void main(String[] args) {
+		// Load the soundbank while the user fills in the form.
+		MidiDevices.openInBackground();
 		new FugueMain();
 	}
 
@@ -1,6 +1,10 @@
 package gui;
 
 import java.awt.event.*;
+import java.io.File;
+
+import javax.sound.midi.Receiver;
+import javax.swing.SwingUtilities;
 
 import controller.*;
 import exceptions.InvalidFileFormatException;
@@ -27,9 +31,10 @@ public class PlayController implements ActionListener {
 	private Song song;
 	
 	/**
-	 * The MidiExporter to deal with MIDI data
+	 * Plays the song while it's written, and saves it to the output file
+	 * once it's all written
 	 */
-	private MidiExporter midiInterface;
+	private LivePlayer player;
 	
 	/**
 	 * The song's tempo
@@ -67,8 +72,8 @@ public class PlayController implements ActionListener {
 	}
 	
 	/**
-	 * Overrides the actionPerformed. Sets up the song, exports the MIDI file,
-	 * and plays it.
+	 * Overrides the actionPerformed. Sets up the song, then plays it while
+	 * it's being generated, and exports the MIDI file once it's done.
 	 */
 	@Override
 	public void actionPerformed(ActionEvent event) {
@@ -81,16 +86,18 @@ public class PlayController implements ActionListener {
 			return;
 		}
 		
-		// Create the song and generate it.
+		// Create the song and play it while it's generated. It's saved as
+		// soon as generation finishes, well ahead of playback. The next
+		// song stops this one.
 		song = new Song(startingKey, startingKeyType, tempo, minLength);
-		song.generateSong();
-		
-		// Export to MIDI and then play it using the default synth
 		try {
-			midiInterface = new MidiExporter();
-			midiInterface.importSong(song);
-			midiInterface.exportToFile(outFileName);
-			midiInterface.play();
+			if (player != null) {
+				player.stop();
+			}
+			Receiver receiver = MidiDevices.getSynthesizer().getReceiver();
+			player = new LivePlayer(song, receiver, new File(outFileName));
+			player.start();
+			reportFailure(player);
 		} catch (Exception ex) {
 			String errorMsg = "Error: \n\n" +
 					ex.getMessage();
@@ -98,6 +105,36 @@ public class PlayController implements ActionListener {
 		}
 	}
 	
+	/**
+	 * Waits in the background for a song to finish, and shows an error
+	 * message if it couldn't be played or saved.
+	 * 
+	 * @param songPlayer
+	 * 			The player of the song
+	 */
+	private void reportFailure(final LivePlayer songPlayer) {
+		Thread waiter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					songPlayer.waitForEnd();
+				} catch (InterruptedException ex) {
+					// Nobody is waiting for the song any more.
+				} catch (final Exception ex) {
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							userInterface.displayErrorWindow("Error: \n\n" +
+									ex.getMessage());
+						}
+					});
+				}
+			}
+		}, "live-player-wait");
+		waiter.setDaemon(true);
+		waiter.start();
+	}
+	
 	/**
 	 * Gathers information from the UI in order to create the song.
 	 * 
@@ -2,79 +2,90 @@ package notes;
 
 import java.util.Random;
 
-import notes.scales.Scale;
-
-import static controller.FugueUtil.*;
 import static controller.Rules.*;
 
+import controller.IntervalSignature;
+import controller.VoicingBatch;
+import controller.rules.RuleRegistry;
 import exceptions.*;
 
 /**
  * The Beat class represents a beat of a Song, in simple time.
  * 
+ * A beat's notes are only picked by the thread building it, before it's
+ * added to a song. After that nothing changes it: the getters hand out
+ * copies, and ornamenting makes a new Beat.
+ * 
  * @author Dan Pang
  *
  */
 public class Beat {
 	
 	/**
+	 * The range of each voice, as a PitchMask.
 	 * The bass range is G2 to A3 (43-57).
 	 * The tenor range is E3 to Eb4 (52-63).
 	 * The alto range is Bb3 to C5 (58-72).
 	 * The soprano range is E4 to F#5 (64-78).
 	 */
-	private static final Range[] RANGES = {
-		new Range(new Note(43), new Note(57)),
-		new Range(new Note(52), new Note(63)),
-		new Range(new Note(58), new Note(72)),
-		new Range(new Note(64), new Note(78))
+	private static final long[] RANGES = {
+		PitchMask.between(43, 57),
+		PitchMask.between(52, 63),
+		PitchMask.between(58, 72),
+		PitchMask.between(64, 78)
 	};
 	
 	/**
 	 * The number of voices.
 	 */
-	private int numVoices = 4;
+	private final int numVoices;
 	
 	/**
 	 * The chord followed for this beat.
 	 */
-	private Chord chord;
+	private final Chord chord;
 	
 	/**
 	 * The notes played on this beat
 	 */
-	private Note[] chordTones;
+	private final Note[] chordTones;
 	
 	/**
 	 * The notes played on the first half of the beat.
 	 */
-	private Note[] noteFirstHalf;
+	private final Note[] noteFirstHalf;
 	
 	/**
 	 * The notes played on the second half of the beat.
 	 */
-	private Note[] noteSecondHalf;
+	private final Note[] noteSecondHalf;
 	
 	/**
 	 * Keeps track of whether the previous note was a leap.
 	 */
-	private boolean[] leaped;
+	private final boolean[] leaped;
 	
 	/**
 	 * The previous beat. Some rules of 2nd species counterpoint refer to
 	 * previous notes in the piece.
 	 */
-	private Beat prevBeat;
+	private final Beat prevBeat;
 	
 	/**
 	 * A flag whether or not this beat contains a non chord tone.
 	 */
 	private boolean containsNonChordTone;
 	
+	/**
+	 * The intervals between every pair of voices, packed by
+	 * IntervalSignature. Set once the chord tones are picked.
+	 */
+	private long intervalSignature;
+	
 	/**
 	 * The random number generator
 	 */
-	private Random randomizer;
+	private final Random randomizer;
 	
 	/**
 	 * Constructor. Sets up all the member variables.
@@ -85,6 +96,23 @@ public class Beat {
 	 * 			The previous beat
 	 */
 	public Beat(Chord chord, Beat prevBeat, int numVoices) {
+		this(chord, prevBeat, numVoices, new Random());
+	}
+	
+	/**
+	 * Constructor. Draws its notes from the given random number generator,
+	 * so that the song it's in can be replayed exactly.
+	 * 
+	 * @param chord
+	 * 			The chord to be played on this beat
+	 * @param prevBeat
+	 * 			The previous beat
+	 * @param numVoices
+	 * 			The number of voices
+	 * @param randomizer
+	 * 			The random number generator to use
+	 */
+	public Beat(Chord chord, Beat prevBeat, int numVoices, Random randomizer) {
 		// Check for valid input
 		if (chord == null) {
 			throw new IllegalArgumentException("No chord specified!");
@@ -97,34 +125,104 @@ public class Beat {
 		this.chord = chord;
 		this.prevBeat = prevBeat;
 		this.containsNonChordTone = false;
-		this.randomizer = new Random();
+		this.randomizer = randomizer;
+	}
+	
+	/**
+	 * Constructor. Rebuilds a beat whose notes have already been generated.
+	 * 
+	 * @param chord
+	 * 			The chord played on this beat
+	 * @param prevBeat
+	 * 			The previous beat
+	 * @param notesFirstHalf
+	 * 			The notes played on the first half of the beat
+	 * @param notesSecondHalf
+	 * 			The notes played on the second half of the beat
+	 * @param leaps
+	 * 			Whether each voice leapt into this beat
+	 */
+	public Beat(Chord chord, Beat prevBeat, Note[] notesFirstHalf,
+			Note[] notesSecondHalf, boolean[] leaps) {
+		this(chord, prevBeat, notesFirstHalf.length);
+		for (int voiceIndx = 0; voiceIndx < numVoices; voiceIndx++) {
+			chordTones[voiceIndx] = notesFirstHalf[voiceIndx];
+			noteFirstHalf[voiceIndx] = notesFirstHalf[voiceIndx];
+			setNoteSecondHalf(voiceIndx, notesSecondHalf[voiceIndx]);
+			leaped[voiceIndx] = leaps[voiceIndx];
+		}
+		intervalSignature = IntervalSignature.of(chordTones);
+	}
+	
+	/**
+	 * Copy constructor. The copy gets its own note arrays, so adding
+	 * non-chord tones to one doesn't affect the other. It shares the
+	 * original's random number generator.
+	 * 
+	 * @param source
+	 * 			The Beat to copy
+	 */
+	public Beat(Beat source) {
+		this(source.chord, source.prevBeat, source.numVoices,
+				source.randomizer);
+		copyNotes(source);
+	}
+	
+	/**
+	 * Copy constructor. Puts the copy after a different previous beat, and
+	 * works out which voices leapt into it again.
+	 * 
+	 * @param source
+	 * 			The Beat to copy
+	 * @param prevBeat
+	 * 			The copy's previous beat
+	 */
+	public Beat(Beat source, Beat prevBeat) {
+		this(source.chord, prevBeat, source.numVoices, source.randomizer);
+		copyNotes(source);
+		for (int voiceIndx = 0; voiceIndx < numVoices; voiceIndx++) {
+			leaped[voiceIndx] = Math.abs(chordTones[voiceIndx].getInterval(
+					prevBeat.chordTones[voiceIndx])) > 2;
+		}
 	}
 	
 	/**
 	 * Just gets the notes played in this beat.
 	 * 
-	 * @return The notes played in this beat
+	 * @return A copy of the notes played in this beat
 	 */
 	public Note[] getChordTones() {
-		return chordTones;
+		return chordTones.clone();
 	}
 	
 	/**
-	 * Just gets the notes played on the second half of this beat.
+	 * Gets the note one voice plays in this beat, without copying every
+	 * voice's.
 	 * 
-	 * @return The notes played on the second half of this beat
+	 * @param voice
+	 * 			The voice to look at
+	 * @return The voice's chord tone
+	 */
+	public Note getChordTone(int voice) {
+		return chordTones[voice];
+	}
+	
+	/**
+	 * Just gets the notes played on the first half of this beat.
+	 * 
+	 * @return A copy of the notes played on the first half of this beat
 	 */
 	public Note[] getNotesFirstHalf() {
-		return noteFirstHalf;
+		return noteFirstHalf.clone();
 	}
 	
 	/**
 	 * Gets the notes played on the second half of this beat.
 	 * 
-	 * @return The notes played on the second half of this beat
+	 * @return A copy of the notes played on the second half of this beat
 	 */
 	public Note[] getNotesSecondHalf() {
-		return noteSecondHalf;
+		return noteSecondHalf.clone();
 	}
 	
 	/**
@@ -135,13 +233,30 @@ public class Beat {
 	 * @param newNote
 	 * 			The new note
 	 */
-	public void setNoteSecondHalf(int voice, Note newNote) {
+	private void setNoteSecondHalf(int voice, Note newNote) {
 		noteSecondHalf[voice] = newNote;
 		if (!chord.isInChord(newNote)) {
 			containsNonChordTone = true;
 		}
 	}
 	
+	/**
+	 * Makes a copy of this beat that plays different notes on the second
+	 * half. This beat is left as it is.
+	 * 
+	 * @param notesSecondHalf
+	 * 			The notes to play on the second half, one per voice
+	 * @return The copy
+	 */
+	public Beat withNotesSecondHalf(Note[] notesSecondHalf) {
+		Beat ret = new Beat(this);
+		ret.containsNonChordTone = false;
+		for (int voiceIndx = 0; voiceIndx < numVoices; voiceIndx++) {
+			ret.setNoteSecondHalf(voiceIndx, notesSecondHalf[voiceIndx]);
+		}
+		return ret;
+	}
+	
 	/**
 	 * Just gets the chord played on this beat.
 	 * 
@@ -151,13 +266,34 @@ public class Beat {
 		return chord;
 	}
 	
+	/**
+	 * Gets the intervals between every pair of voices on this beat, packed
+	 * by IntervalSignature.
+	 * 
+	 * @return The beat's interval signature
+	 */
+	public long getIntervalSignature() {
+		return intervalSignature;
+	}
+	
 	/**
 	 * Finds whether or not each voice contains a leap this beat.
 	 * 
-	 * @return See above
+	 * @return A copy of the leaps, one per voice
 	 */
 	public boolean[] getLeaps() {
-		return leaped;
+		return leaped.clone();
+	}
+	
+	/**
+	 * Finds whether or not one voice contains a leap this beat.
+	 * 
+	 * @param voice
+	 * 			The voice to look at
+	 * @return See above
+	 */
+	public boolean getLeap(int voice) {
+		return leaped[voice];
 	}
 	
 	/**
@@ -178,6 +314,21 @@ public class Beat {
 	 * 			If no valid note configuration can be found
 	 */
 	public void generateNotes() throws InvalidChordException {
+		generateNotes(RuleRegistry.standard());
+	}
+	
+	/**
+	 * Generates the next beat, following the given rules.
+	 * If no valid note configuration can be found, throws an
+	 * InvalidChordException.
+	 * 
+	 * @param rules
+	 * 			The rules the notes have to follow
+	 * @throws InvalidChordException
+	 * 			If no valid note configuration can be found
+	 */
+	public void generateNotes(RuleRegistry rules)
+			throws InvalidChordException {
 		// If this is the first chord of the song, treat it differently.
 		if (prevBeat == null) {
 			generateFirstChord();
@@ -191,30 +342,91 @@ public class Beat {
 			// Generate notes for each voice.
 			try {
 				for (int voiceIndx = 0; voiceIndx < numVoices; voiceIndx++) {
-					generateNote(voiceIndx);
+					generateNote(voiceIndx, rules);
 				}
+				
+				// Check to make sure this beat follows all the rules.
+				notesFollowAllRules = rules.checkBeat(chordTones, chord,
+						prevBeat);
 			} catch (InvalidChordException ex) {
-				continue;
+				// A voice had no valid notes. That counts as a failed attempt.
 			}
 			
-			// Check to make sure this beat follows all the rules.
-			notesFollowAllRules = containsAllChordTones(chordTones, chord);
-			notesFollowAllRules &= noParallelFifths(prevBeat.getChordTones(),
-					chordTones);
-			
 			// Keep track of the number of attempts. If it goes on for too
-			// long, give up.
+			// long, try every combination. If none of them work either,
+			// give up.
 			tries++;
-			if (tries >= 100) {
+			if (!notesFollowAllRules && tries >= 100) {
+				if (generateNotesExhaustively(rules)) {
+					break;
+				}
 				System.out.println("Cannot find note combination for this chord");
 				throw new InvalidChordException(
 						"Cannot find note combination for this chord");
 			}
 		}
 		
+		finishNotes();
+	}
+	
+	/**
+	 * Uses chord tones that were picked somewhere else. The caller is
+	 * responsible for making sure they follow the rules.
+	 * 
+	 * @param notes
+	 * 			The chord tones, one per voice
+	 */
+	public void setChordTones(Note[] notes) {
+		// Check for valid input
+		if (prevBeat == null) {
+			throw new IllegalArgumentException("No previous beat!");
+		}
+		
+		Note[] prevNotes = prevBeat.chordTones;
+		for (int voiceIndx = 0; voiceIndx < numVoices; voiceIndx++) {
+			chordTones[voiceIndx] = notes[voiceIndx];
+			leaped[voiceIndx] = Math.abs(notes[voiceIndx].getInterval(
+					prevNotes[voiceIndx])) > 2;
+		}
+		finishNotes();
+	}
+	
+	/**
+	 * Copies another beat's notes into this one.
+	 * 
+	 * @param source
+	 * 			The Beat to copy
+	 */
+	private void copyNotes(Beat source) {
+		System.arraycopy(source.chordTones, 0, chordTones, 0, numVoices);
+		System.arraycopy(source.noteFirstHalf, 0, noteFirstHalf, 0, numVoices);
+		System.arraycopy(source.noteSecondHalf, 0, noteSecondHalf, 0,
+				numVoices);
+		System.arraycopy(source.leaped, 0, leaped, 0, numVoices);
+		containsNonChordTone = source.containsNonChordTone;
+		intervalSignature = source.intervalSignature;
+	}
+	
+	/**
+	 * Gets the range of notes a voice can sing.
+	 * 
+	 * @param voiceIndx
+	 * 			The voice to look at
+	 * @return Every note the voice can sing, as a PitchMask
+	 */
+	public static long getVoiceRange(int voiceIndx) {
+		return RANGES[voiceIndx];
+	}
+	
+	/**
+	 * Fills in the rest of the beat once its chord tones are settled. Both
+	 * halves play the chord tones until the beat is ornamented.
+	 */
+	private void finishNotes() {
+		// Work out the chord tones' intervals once.
+		intervalSignature = IntervalSignature.of(chordTones);
 		for (int voiceIndx = 0; voiceIndx < numVoices; voiceIndx++) {
 			setPlayedNotes(voiceIndx);
-			addNonChordTones(voiceIndx);
 		}
 	}
 	
@@ -231,39 +443,28 @@ public class Beat {
 			leaped[indx] = false;
 		}
 		
-		// Find the root's range
-		// Get a list of all possible notes in that range.
-		Note[] allNotes = chord.getAllRootsBetween(RANGES[0]);
-		// Pick a random note and use it.
-		int noteChoice = randomizer.nextInt(allNotes.length);
-		chordTones[0] = allNotes[noteChoice];
+		// Pick a random root in the bass's range.
+		long possibleNotes = chord.getRootPitchMask() & RANGES[0];
+		chordTones[0] = new Note(PitchMask.pick(possibleNotes, randomizer));
 		setPlayedNotes(0);
 		
 		for (int voiceIndx = 1; voiceIndx < numVoices; voiceIndx++) {
-			// Find the voice's range.
 			// The voice cannot be lower than its lowest note or the note
 			// of the voice below it.
 			// The voice cannot be higher than its highest note or over
 			// an octave above the note below it.
-			Range range = new Range(
-					max(
-							chordTones[voiceIndx - 1].noteAt(1),
-							RANGES[voiceIndx].lower
-							),
-					min(
-							chordTones[voiceIndx - 1].noteAt(OCTAVE_LENGTH),
-							RANGES[voiceIndx].higher
-							)
-					);
-			
-			// Get a list of all notes in that range.
-			allNotes = chord.getAllNotesBetween(range);
+			int lowerPitch = chordTones[voiceIndx - 1].getMidiNumber();
+			possibleNotes = chord.getPitchMask() & RANGES[voiceIndx]
+					& PitchMask.between(lowerPitch + 1,
+							lowerPitch + OCTAVE_LENGTH);
 			
 			// Pick a random one and use it.
-			noteChoice = randomizer.nextInt(allNotes.length);
-			chordTones[voiceIndx] = allNotes[noteChoice];
+			chordTones[voiceIndx] = new Note(
+					PitchMask.pick(possibleNotes, randomizer));
 			setPlayedNotes(voiceIndx);
 		}
+		
+		intervalSignature = IntervalSignature.of(chordTones);
 	}
 	
 	/**
@@ -271,172 +472,131 @@ public class Beat {
 	 * 
 	 * @param voiceIndx
 	 * 			The voice the note should be generated for
-	 * @param range
-	 * 			The voice's range
+	 * @param rules
+	 * 			The rules the note has to follow
 	 * @throws InvalidChordException
 	 * 			If it cannot find a note
 	 */
-	private void generateNote(int voiceIndx) throws InvalidChordException {
+	private void generateNote(int voiceIndx, RuleRegistry rules)
+			throws InvalidChordException {
 		// Find the previous note.
-		Note prevNote = prevBeat.getChordTones()[voiceIndx];
-		boolean doNotLeap = prevBeat.getLeaps()[voiceIndx];
+		Note prevNote = prevBeat.chordTones[voiceIndx];
 		
-		Range range = getNoteRange(voiceIndx);
-		
-		// Get a list of possible notes.
-		Note[] possibleNotes;
+		// Get every possible note.
+		long possibleNotes = getNoteMask(voiceIndx);
 		if (voiceIndx == 0) {
 			// If it's a bass voice, follow the rules for inversions.
-			possibleNotes = chord.getAllBassNotesBetween(range);
+			possibleNotes &= chord.getBassPitchMask();
 		} else {
 			// Otherwise, draw from any of them.
-			possibleNotes = chord.getAllNotesBetween(range);
+			possibleNotes &= chord.getPitchMask();
 		}
 		
 		// Randomly pick a note.
 		// If it works, stick with it.
 		// Otherwise, remove it and try again.
-		while (possibleNotes.length > 0) {
-			int newNoteIndx = randomizer.nextInt(possibleNotes.length);
-			Note newNote = possibleNotes[newNoteIndx];
-			if (isValidLeap(newNote, prevNote, doNotLeap)) {
+		while (possibleNotes != 0) {
+			int newPitch = PitchMask.pick(possibleNotes, randomizer);
+			Note newNote = new Note(newPitch);
+			if (rules.checkVoice(newNote, voiceIndx, chordTones, prevBeat)) {
 				chordTones[voiceIndx] = newNote;
 				leaped[voiceIndx] = Math.abs(newNote.getInterval(prevNote)) > 2;
 				return;
 			}
 			
-			possibleNotes = removeElement(newNoteIndx, possibleNotes);
+			possibleNotes &= ~PitchMask.of(newPitch);
 		}
 		
 		throw new InvalidChordException("Cannot find a valid note!");
 	}
 	
 	/**
-	 * Find this note's range.
+	 * Tries every combination of chord tones that fits in the voices'
+	 * ranges, and picks one of the ones that follow the rules at random.
 	 * 
-	 * @param voiceIndx
-	 * 			The voice to look at
-	 * @return The Range representing this voice's highest and lowest possible
-	 * 		   notes
+	 * @param rules
+	 * 			The rules the notes have to follow
+	 * @return Whether any combination followed the rules
 	 */
-	private Range getNoteRange(int voiceIndx) {
-		Note prevNote = prevBeat.getChordTones()[voiceIndx];
+	private boolean generateNotesExhaustively(RuleRegistry rules) {
+		VoicingBatch batch = new VoicingBatch(numVoices, 256);
+		addVoicings(0, batch);
 		
-		// The lowest this note can be is the lowest note, one half-step higher
-		// than the next lowest voice's note, or an octave below the previous
-		// note.
-		Note lowest;
-		if (voiceIndx == 0) {
-			// If this is the lowest note, there's obviously no note lower than it.
-			lowest = max(
-					RANGES[voiceIndx].lower,
-					prevNote.noteAt(0 - OCTAVE_LENGTH)
-					);
-		} else {
-			// If not, then we need to take that into account.
-			lowest = max(
-					RANGES[voiceIndx].lower,
-					chordTones[voiceIndx - 1].noteAt(1),
-					prevNote.noteAt(0 - OCTAVE_LENGTH)
-					);
+		// Weed out most of the combinations with the batch checks, then
+		// check the rest against the song's rules, which may go further.
+		Note[] prevNotes = prevBeat.chordTones;
+		boolean[] valid = new boolean[batch.size()];
+		batch.evaluate(chord, prevNotes, valid);
+		int[] passed = new int[batch.size()];
+		int numPassed = 0;
+		for (int candidate = 0; candidate < batch.size(); candidate++) {
+			if (valid[candidate] && rules.checkVoicing(
+					batch.getVoicing(candidate), chord, prevBeat)) {
+				passed[numPassed] = candidate;
+				numPassed++;
+			}
+		}
+		if (numPassed == 0) {
+			return false;
 		}
 		
-		// The highest this note can be is either the highest bass note, or
-		// an octave above the previous note.
-		Note highest = min(
-				RANGES[voiceIndx].higher,
-				prevNote.noteAt(OCTAVE_LENGTH)
-				);
-		
-		Range range = new Range(lowest, highest);
-		return range;
+		// Use a random one.
+		Note[] choice = batch.getVoicing(passed[randomizer.nextInt(numPassed)]);
+		for (int voiceIndx = 0; voiceIndx < numVoices; voiceIndx++) {
+			chordTones[voiceIndx] = choice[voiceIndx];
+			leaped[voiceIndx] = Math.abs(choice[voiceIndx].getInterval(
+					prevNotes[voiceIndx])) > 2;
+		}
+		return true;
 	}
 	
 	/**
-	 * Adds non chord tones to the beat.
+	 * Adds every combination of chord tones for this voice and the ones
+	 * above it to a batch, given the notes already picked below it.
 	 * 
 	 * @param voiceIndx
-	 * 			The voice to add non chord tones to
+	 * 			The voice to pick notes for
+	 * @param batch
+	 * 			The batch to add the combinations to
 	 */
-	private void addNonChordTones(int voiceIndx) {
-		// Get the current note, the previous note, and the interval between them.
-		Note currNote = chordTones[voiceIndx];
-		Note prevNote = prevBeat.getChordTones()[voiceIndx];
-		int interval = Math.abs(currNote.getInterval(prevNote));
-		
-		// If you can add a passing tone, add it.
-		if (interval == 3 || interval == 4) {
-			try {
-				generatePassingTone(voiceIndx);
-			} catch (IllegalArgumentException ex) {
-				// whoops
-			}
+	private void addVoicings(int voiceIndx, VoicingBatch batch) {
+		if (voiceIndx == numVoices) {
+			batch.add(chordTones);
+			return;
 		}
 		
-		// If the voice didn't leap into the previous note, but did into this
-		// one, and if there isn't already a non-chord tone, add an
-		// appogiatura
-		boolean prevNoteLeaped = prevBeat.getLeaps()[voiceIndx];
-		if (!containsNonChordTone && !prevNoteLeaped && leaped[voiceIndx]) {
-			// There's only a 60% chance of this happening
-			float insertNonChordTone = randomizer.nextFloat();
-			if (insertNonChordTone < 0.6 - .1 * voiceIndx) {
-				return;
-			}
-			
-			generateNeighborTone(voiceIndx);
+		long possibleNotes = getNoteMask(voiceIndx);
+		if (voiceIndx == 0) {
+			possibleNotes &= chord.getBassPitchMask();
+		} else {
+			possibleNotes &= chord.getPitchMask();
+		}
+		while (possibleNotes != 0) {
+			chordTones[voiceIndx] = new Note(PitchMask.LOWEST
+					+ Long.numberOfTrailingZeros(possibleNotes));
+			addVoicings(voiceIndx + 1, batch);
+			possibleNotes &= possibleNotes - 1;
 		}
 	}
 	
 	/**
-	 * Generates a neighbor tone (or an appogiatura, depending on the
-	 * previous note).
+	 * Find the notes this voice can sing.
 	 * 
 	 * @param voiceIndx
 	 * 			The voice to look at
+	 * @return A PitchMask of every note in the voice's range that's a valid
+	 * 		   leap from its previous note and above the next lowest voice's
+	 * 		   note
 	 */
-	private void generateNeighborTone(int voiceIndx) {
-		Note currNote = chordTones[voiceIndx];
-		Scale prevScale = prevBeat.getChord().getScale();
-		
-		// Pick either an upper or a lower note
-		Note[] neighborTones = new Note[2];
-		neighborTones[0] = prevScale.getLowerNeighbor(currNote);
-		neighborTones[1] = prevScale.getUpperNeighbor(currNote);
-		int choice = randomizer.nextInt(2);
-		
-		// Use it
-		prevBeat.setNoteSecondHalf(voiceIndx, neighborTones[choice]);
-		leaped[voiceIndx] = false;
-		containsNonChordTone = true;
-	}
-	
-	/**
-	 * Creates a passing tone.
-	 * 
-	 * @param voiceIndx
-	 * 			The voice to look at
-	 * @throws IllegalArgumentException
-	 * 			If the current note and the previous note can't have a passing
-	 * 			tone between them
-	 */
-	private void generatePassingTone(int voiceIndx)
-			throws IllegalArgumentException {
-		// Find this beat's note, the previous beat's note, and the scale
-		// used in the previous beat.
-		Note currNote = chordTones[voiceIndx];
-		Note prevNote = prevBeat.getChordTones()[voiceIndx];
-		Scale prevScale = prevBeat.getChord().getScale();
+	private long getNoteMask(int voiceIndx) {
+		int prevPitch = prevBeat.chordTones[voiceIndx].getMidiNumber();
+		long ret = RANGES[voiceIndx] & PitchMask.validLeapsFrom(prevPitch);
 		
-		// Find the lower and higher of the two notes.
-		Note lowerNote = min(currNote, prevNote);
-		Note higherNote = max(currNote, prevNote);
-		
-		// Find the passing tone, set it, and set any associated variables
-		Note passingTone = prevScale.getPassingTone(lowerNote, higherNote);
-		prevBeat.setNoteSecondHalf(voiceIndx, passingTone);
-		leaped[voiceIndx] = false;
-		containsNonChordTone = true;
+		// If this isn't the lowest note, it has to be above the one below.
+		if (voiceIndx > 0) {
+			ret &= PitchMask.above(chordTones[voiceIndx - 1].getMidiNumber());
+		}
+		return ret;
 	}
 	
 	/**
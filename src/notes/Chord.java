@@ -11,6 +11,10 @@ import notes.types.*;
  * 
  * Currently, it supports major, minor, augmented, or diminished triads.
  * 
+ * Chords never change once they're built, so the ones a Key holds can be
+ * shared by every song using it, on any thread. A chord in a particular
+ * inversion is a different Chord; see withInversion().
+ * 
  * @author Dan Pang
  *
  */
@@ -22,61 +26,87 @@ public class Chord {
 	private static final Range RANGE = new Range(
 			new Note(43), new Note (78));
 	
+	/**
+	 * The number of chord types
+	 */
+	private static final int NUM_TYPES = ChordType.values().length;
+	
+	/**
+	 * One more than the largest id a chord can have
+	 */
+	public static final int NUM_IDS = NoteName.values().length * NUM_TYPES;
+	
 	/**
 	 * There should be 3 different possible octaves a note can be.
 	 * **NOTE** In order for this to work, every note must appear the same
 	 * 			number of times within the range given.
 	 */
 	private static final int NUM_NOTES =
-			(RANGE.higher.getMidiNumber() + 1 - RANGE.lower.getMidiNumber())
+			(RANGE.getHigher().getMidiNumber() + 1
+					- RANGE.getLower().getMidiNumber())
 			/ OCTAVE_LENGTH;
 	
 	/**
 	 * The root pitch of the chord, stored as a NoteName.
 	 */
-	private NoteName root;
+	private final NoteName root;
 	
 	/**
 	 * Whether the chord is major, minor, etc.
 	 */
-	private ChordType type;
+	private final ChordType type;
 	
 	/**
 	 * This chord's function (tonic, dominant, etc.)
 	 */
-	private ChordFunction function;
+	private final ChordFunction function;
 	
 	/**
 	 * This chord's inversion.
 	 * 0 for no inversion.
 	 * -1 if no inversion specified.
 	 */
-	private int inversion;
+	private final int inversion;
 	
 	/**
 	 * The scale used for this chord.
 	 */
-	private Scale scale;
+	private final Scale scale;
 	
 	/**
 	 * A list of all the roots of the chord.
 	 */
-	private Note[] roots;
+	private final Note[] roots;
 	
 	/**
 	 * A list of all the thirds of the chord.
 	 */
-	private Note[] thirds;
+	private final Note[] thirds;
 	
 	/**
 	 * A list of all the fifths of the chord.
 	 */
-	private Note[] fifths;
+	private final Note[] fifths;
 	
 	/**
 	 * A list of all the notes in the chord.
 	 */
-	private Note[] notes;
+	private final Note[] notes;
+	
+	/**
+	 * Every root in range, as a PitchMask.
+	 */
+	private final long rootMask;
+	
+	/**
+	 * Every third in range, as a PitchMask.
+	 */
+	private final long thirdMask;
+	
+	/**
+	 * Every fifth in range, as a PitchMask.
+	 */
+	private final long fifthMask;
 	
 	/**
 	 * Constructor. Sets up a Chord with all the information given, where
@@ -93,7 +123,7 @@ public class Chord {
 	 */
 	public Chord(NoteName rootOfChord, ChordType chordType,
 			ChordFunction function, Scale scale) {
-		setUpChord(rootOfChord, chordType, function, scale, -1);
+		this(rootOfChord, chordType, function, scale, -1);
 	}
 	
 	/**
@@ -112,11 +142,6 @@ public class Chord {
 	 */
 	public Chord(NoteName rootOfChord, ChordType chordType,
 			ChordFunction function, Scale scale, int inversion) {
-		setUpChord(rootOfChord, chordType, function, scale, inversion);
-	}
-
-	private void setUpChord(NoteName rootOfChord, ChordType chordType,
-			ChordFunction function, Scale scale, int inversion) {
 		// Check for valid input.
 		if (chordType == null || function == null || rootOfChord == null ||
 				scale == null) {
@@ -156,6 +181,9 @@ public class Chord {
 		thirds = findAllOctaves(chordThird);
 		fifths = findAllOctaves(chordFifth);
 		notes = merge(merge(roots, thirds), fifths);
+		rootMask = toPitchMask(chordRoot);
+		thirdMask = toPitchMask(chordThird);
+		fifthMask = toPitchMask(chordFifth);
 	}
 	
 	/**
@@ -173,6 +201,39 @@ public class Chord {
 		return root == other.getRootName() && type == other.getChordType();
 	}
 	
+	/**
+	 * Checks if another object is a Chord with the same root and type. See
+	 * equals(Chord).
+	 * 
+	 * @param other
+	 * 			The object to compare to
+	 * @return Whether or not they represent the same chord
+	 */
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Chord && equals((Chord) other);
+	}
+	
+	/**
+	 * Hashes the chord by its root and type, to agree with equals().
+	 * 
+	 * @return The hash code
+	 */
+	@Override
+	public int hashCode() {
+		return getId();
+	}
+	
+	/**
+	 * Gets a small number standing for this chord, for indexing arrays.
+	 * Chords that are equal have the same id, from 0 to NUM_IDS - 1.
+	 * 
+	 * @return The id
+	 */
+	public int getId() {
+		return root.ordinal() * NUM_TYPES + type.ordinal();
+	}
+	
 	/**
 	 * ToString
 	 */
@@ -217,14 +278,18 @@ public class Chord {
 	}
 	
 	/**
-	 * Sets the chord's inversion.
+	 * Gets this chord in a different inversion. This chord is left as it is.
 	 * -1 for no inversion specified.
 	 * 
 	 * @param newInversion
 	 * 			The new inversion
+	 * @return The chord in that inversion
 	 */
-	public void setInversion(int newInversion) {
-		inversion = newInversion;
+	public Chord withInversion(int newInversion) {
+		if (newInversion == inversion) {
+			return this;
+		}
+		return new Chord(root, type, function, scale, newInversion);
 	}
 	
 	/**
@@ -246,13 +311,50 @@ public class Chord {
 		return scale;
 	}
 	
+	/**
+	 * Gets every chord tone in range as a PitchMask.
+	 * 
+	 * @return The mask
+	 */
+	public long getPitchMask() {
+		return rootMask | thirdMask | fifthMask;
+	}
+	
+	/**
+	 * Gets every root in range as a PitchMask.
+	 * 
+	 * @return The mask
+	 */
+	public long getRootPitchMask() {
+		return rootMask;
+	}
+	
+	/**
+	 * Gets every note the bass can sing in this chord as a PitchMask,
+	 * following the same rules for inversions as getAllBassNotesBetween().
+	 * 
+	 * @return The mask
+	 */
+	public long getBassPitchMask() {
+		switch (getInversion()) {
+		case 0:
+			return rootMask;
+		case 1:
+			return thirdMask;
+		case 2:
+			return fifthMask;
+		default:
+			return rootMask | thirdMask;
+		}
+	}
+	
 	/**
 	 * Get a list of all possible roots.
 	 * 
 	 * @return An array containing all possible roots of this chord.
 	 */
 	public Note[] getAllRoots() {
-		return roots;
+		return roots.clone();
 	}
 	
 	/**
@@ -277,7 +379,7 @@ public class Chord {
 	 * @return An array containing all possible thirds of this chord.
 	 */
 	public Note[] getAllThirds() {
-		return thirds;
+		return thirds.clone();
 	}
 	
 	/**
@@ -302,7 +404,7 @@ public class Chord {
 	 * @return An array containing all possible fifths of this chord.
 	 */
 	public Note[] getAllFifths() {
-		return fifths;
+		return fifths.clone();
 	}
 	
 	/**
@@ -327,7 +429,7 @@ public class Chord {
 	 * @return An array containing all possible fifths of this chord.
 	 */
 	public Note[] getAllNotes() {
-		return notes;
+		return notes.clone();
 	}
 	
 	/**
@@ -448,8 +550,8 @@ public class Chord {
 	 * @return All the notes in the given range
 	 */
 	private Note[] getAllNotesBetween(Range range, Note[] noteArray) {
-		Note note1 = range.lower;
-		Note note2 = range.higher;
+		Note note1 = range.getLower();
+		Note note2 = range.getHigher();
 		
 		// Declare the two noteIndx variables outside the for loop because
 		// we'll use them later.
@@ -502,6 +604,18 @@ public class Chord {
 		return allNotes;
 	}
 	
+	/**
+	 * Gets every octave of a note in range as a PitchMask.
+	 * 
+	 * @param note
+	 * 			Any octave of the note
+	 * @return The mask
+	 */
+	private static long toPitchMask(Note note) {
+		return PitchMask.ofPitchClasses(
+				1 << (note.getMidiNumber() % OCTAVE_LENGTH));
+	}
+	
 	/**
 	 * Finds the lowest possible octave of a note
 	 * 
@@ -514,7 +628,7 @@ public class Chord {
 		Note lowestOctave = new Note(note.getNoteName().getLowestOctaveMidiNumber());
 		
 		// Bump it up until it's at or above the lowest note.
-		while (RANGE.lower.greaterThan(lowestOctave)) {
+		while (RANGE.getLower().greaterThan(lowestOctave)) {
 			lowestOctave = lowestOctave.noteAt(OCTAVE_LENGTH);
 		}
 		
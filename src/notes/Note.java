@@ -7,25 +7,32 @@ import notes.types.*;
  * The Note class represents a single note and deals with the technicalities
  * of MIDI numbers, etc.
  * 
+ * Notes never change once they're built, so they can be shared freely.
+ * 
  * @author Dan Pang
  *
  */
 public class Note {
 	
+	/**
+	 * One more than the largest id a note can have
+	 */
+	public static final int NUM_IDS = 128;
+	
 	/**
 	 * This note's name
 	 */
-	private NoteName noteName;
+	private final NoteName noteName;
 	
 	/**
 	 * The octave of this note
 	 */
-	private int octave;
+	private final int octave;
 	
 	/**
 	 * The MIDI numerical representation of this note
 	 */
-	private int midiNumber;
+	private final int midiNumber;
 	
 	/**
 	 * Constructor. Takes a MIDI number and turns it into a Note.
@@ -62,6 +69,38 @@ public class Note {
 		return getMidiNumber() == otherNote.getMidiNumber();
 	}
 	
+	/**
+	 * Checks if another object is a Note with the same MIDI number.
+	 * 
+	 * @param other
+	 * 			The object to compare to
+	 * @return Whether or not they're equal
+	 */
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Note && equals((Note) other);
+	}
+	
+	/**
+	 * Hashes the note by its MIDI number, to agree with equals().
+	 * 
+	 * @return The hash code
+	 */
+	@Override
+	public int hashCode() {
+		return midiNumber;
+	}
+	
+	/**
+	 * Gets a small number standing for this note, for indexing arrays. Equal
+	 * notes have the same id, from 0 to NUM_IDS - 1.
+	 * 
+	 * @return The id, which is the MIDI number
+	 */
+	public int getId() {
+		return midiNumber;
+	}
+	
 	/**
 	 * Checks if the two NoteNames are the same.
 	 * 
@@ -0,0 +1,175 @@
+package notes;
+
+import java.util.Random;
+
+import controller.Rules;
+
+/**
+ * The PitchMask class works with sets of pitches packed into a long, one bit
+ * per MIDI number from G2 (43) to F#5 (78). Every voice's range fits, so a
+ * voice's legal notes can be found by ANDing a few masks together instead of
+ * building arrays of Notes.
+ * 
+ * @author Dan Pang
+ *
+ */
+public final class PitchMask {
+	
+	/**
+	 * The MIDI number of bit 0
+	 */
+	public static final int LOWEST = 43;
+	
+	/**
+	 * The MIDI number of the highest bit
+	 */
+	public static final int HIGHEST = 78;
+	
+	/**
+	 * Every pitch a mask can hold
+	 */
+	public static final long ALL = (1L << (HIGHEST - LOWEST + 1)) - 1;
+	
+	/**
+	 * Every pitch that's a valid leap from a note an octave above bit 0,
+	 * from an octave below it to an octave above it
+	 */
+	private static final long VALID_LEAPS = buildValidLeaps();
+	
+	/**
+	 * Every pitch of each pitch class, indexed by pitch class
+	 */
+	private static final long[] PITCH_CLASSES = buildPitchClasses();
+	
+	/**
+	 * Private constructor. Nothing to build.
+	 */
+	private PitchMask() {
+	}
+	
+	/**
+	 * Gets the mask holding a single pitch.
+	 * 
+	 * @param pitch
+	 * 			The MIDI number, from LOWEST to HIGHEST
+	 * @return The mask
+	 */
+	public static long of(int pitch) {
+		return 1L << (pitch - LOWEST);
+	}
+	
+	/**
+	 * Gets the mask of every pitch between two pitches, inclusive. Pitches
+	 * outside the masks' range are left out.
+	 * 
+	 * @param lowest
+	 * 			The lowest MIDI number
+	 * @param highest
+	 * 			The highest MIDI number
+	 * @return The mask
+	 */
+	public static long between(int lowest, int highest) {
+		lowest = Math.max(lowest, LOWEST);
+		highest = Math.min(highest, HIGHEST);
+		if (lowest > highest) {
+			return 0;
+		}
+		return (ALL >>> (HIGHEST - highest)) & (ALL << (lowest - LOWEST));
+	}
+	
+	/**
+	 * Gets the mask of every pitch above a pitch.
+	 * 
+	 * @param pitch
+	 * 			The MIDI number
+	 * @return The mask
+	 */
+	public static long above(int pitch) {
+		return between(pitch + 1, HIGHEST);
+	}
+	
+	/**
+	 * Gets the mask of every pitch whose pitch class is in a set.
+	 * 
+	 * @param pitchClasses
+	 * 			A bit for each pitch class, with C as bit 0
+	 * @return The mask
+	 */
+	public static long ofPitchClasses(int pitchClasses) {
+		long ret = 0;
+		for (int pitchClass = 0; pitchClass < Rules.OCTAVE_LENGTH;
+				pitchClass++) {
+			if ((pitchClasses & (1 << pitchClass)) != 0) {
+				ret |= PITCH_CLASSES[pitchClass];
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Gets the mask of every pitch a voice can move to from a pitch: no more
+	 * than an octave away, and not by a dissonant leap.
+	 * 
+	 * @param pitch
+	 * 			The voice's previous MIDI number
+	 * @return The mask
+	 */
+	public static long validLeapsFrom(int pitch) {
+		int shift = pitch - LOWEST - Rules.OCTAVE_LENGTH;
+		if (shift >= 0) {
+			return (VALID_LEAPS << shift) & ALL;
+		}
+		return VALID_LEAPS >>> -shift;
+	}
+	
+	/**
+	 * Picks one of the pitches in a mask at random.
+	 * 
+	 * @param mask
+	 * 			The mask to pick from
+	 * @param randomizer
+	 * 			The random number generator to use
+	 * @return The MIDI number, or -1 if the mask is empty
+	 */
+	public static int pick(long mask, Random randomizer) {
+		if (mask == 0) {
+			return -1;
+		}
+		
+		// Clear the lowest bit until the chosen one is the lowest.
+		int choice = randomizer.nextInt(Long.bitCount(mask));
+		for (int bit = 0; bit < choice; bit++) {
+			mask &= mask - 1;
+		}
+		return LOWEST + Long.numberOfTrailingZeros(mask);
+	}
+	
+	/**
+	 * Builds VALID_LEAPS.
+	 * 
+	 * @return Bit 12 + n set for every valid leap of n semitones
+	 */
+	private static long buildValidLeaps() {
+		long ret = 0;
+		for (int leap = -Rules.OCTAVE_LENGTH; leap <= Rules.OCTAVE_LENGTH;
+				leap++) {
+			if (((Rules.INVALID_LEAP_MASK >>> Math.abs(leap)) & 1) == 0) {
+				ret |= 1L << (leap + Rules.OCTAVE_LENGTH);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Builds PITCH_CLASSES.
+	 * 
+	 * @return The mask of each pitch class
+	 */
+	private static long[] buildPitchClasses() {
+		long[] ret = new long[Rules.OCTAVE_LENGTH];
+		for (int pitch = LOWEST; pitch <= HIGHEST; pitch++) {
+			ret[pitch % Rules.OCTAVE_LENGTH] |= of(pitch);
+		}
+		return ret;
+	}
+}
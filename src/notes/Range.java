@@ -1,21 +1,22 @@
 package notes;
 
 /**
- * A simple class to represent the range of a voice.
+ * A simple class to represent the range of a voice. Ranges never change once
+ * they're built.
  * 
  * @author Dan Pang
  *
  */
-public class Range {
+public final class Range {
 	/**
 	 * The lowest note
 	 */
-	public Note lower;
+	private final Note lower;
 	
 	/**
 	 * The highest note
 	 */
-	public Note higher;
+	private final Note higher;
 	
 	/**
 	 * Constructor. Sets lower and higher.
@@ -29,4 +30,22 @@ public class Range {
 		this.lower = lower;
 		this.higher = higher;
 	}
+	
+	/**
+	 * Gets the lowest note in the range.
+	 * 
+	 * @return The lowest note
+	 */
+	public Note getLower() {
+		return lower;
+	}
+	
+	/**
+	 * Gets the highest note in the range.
+	 * 
+	 * @return The highest note
+	 */
+	public Note getHigher() {
+		return higher;
+	}
 }
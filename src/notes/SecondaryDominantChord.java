@@ -12,18 +12,52 @@ import notes.types.*;
  */
 public class SecondaryDominantChord extends Chord {
 	
-	private Chord leadsTo;
+	private final Chord leadsTo;
 	
 	public SecondaryDominantChord(NoteName rootOfChord, Scale scale,
 			Chord leadsTo) {
 		
+		this(rootOfChord, scale, leadsTo, -1);
+	}
+	
+	/**
+	 * Constructor. Sets up the chord in the given inversion.
+	 * 
+	 * @param rootOfChord
+	 * 			Root of the chord
+	 * @param scale
+	 * 			The scale used in this chord
+	 * @param leadsTo
+	 * 			The chord this one leads to
+	 * @param inversion
+	 * 			The inversion of the chord
+	 */
+	public SecondaryDominantChord(NoteName rootOfChord, Scale scale,
+			Chord leadsTo, int inversion) {
 		super(rootOfChord, ChordType.MAJOR,
-				ChordFunction.SECONDARY_DOMINANT, scale);
+				ChordFunction.SECONDARY_DOMINANT, scale, inversion);
 		this.leadsTo = leadsTo;
 	}
 	
 	public Chord leadsTo() {
 		return leadsTo;
 	}
+	
+	/**
+	 * Gets this chord in a different inversion, still leading to the same
+	 * chord.
+	 * 
+	 * @param newInversion
+	 * 			The new inversion
+	 * @return The chord in that inversion
+	 */
+	@Override
+	public Chord withInversion(int newInversion) {
+		if (newInversion == getInversion()) {
+			return this;
+		}
+		return new SecondaryDominantChord(getRootName(), getScale(), leadsTo,
+				newInversion);
+	}
 
 }
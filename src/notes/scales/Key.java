@@ -8,6 +8,9 @@ import notes.types.*;
  * The Key class represents the key signature of the song and keeps track of
  * all the possible chords that can be used within this key.
  * 
+ * Keys never change once they're built, and hand out copies of their
+ * arrays, so the keys from valueOf() can be shared across threads.
+ * 
  * @author Dan Pang
  *
  */
@@ -39,6 +42,12 @@ public abstract class Key {
 	
 	protected Chord[] secondaryDominant;
 	
+	/**
+	 * Every key built by valueOf() so far, by scale type and root pitch
+	 */
+	private static final Key[][] KEYS =
+			new Key[ScaleType.values().length][NoteName.values().length];
+	
 	/**
 	 * Constructor. Given a root pitch and a scale type, create lists of every
 	 * chord that exists in the scale.
@@ -58,6 +67,31 @@ public abstract class Key {
 		setUpChords(rootPitch);
 	}
 	
+	/**
+	 * Fetches the key with the given root pitch and scale type. Keys never
+	 * change once they're built, so every caller gets the same one, along
+	 * with the same Chord objects.
+	 * 
+	 * @param rootPitch
+	 * 			The pitch considered tonic
+	 * @param keyType
+	 * 			Whether the key is major or minor
+	 * @return The key
+	 */
+	public static synchronized Key valueOf(NoteName rootPitch,
+			ScaleType keyType) {
+		Key ret = KEYS[keyType.ordinal()][rootPitch.ordinal()];
+		if (ret == null) {
+			if (keyType == ScaleType.MAJOR) {
+				ret = new MajorKey(rootPitch);
+			} else {
+				ret = new MinorKey(rootPitch);
+			}
+			KEYS[keyType.ordinal()][rootPitch.ordinal()] = ret;
+		}
+		return ret;
+	}
+	
 	/**
 	 * Gets all chords fulfilling the given function.
 	 * 
@@ -71,15 +105,16 @@ public abstract class Key {
 			Chord[] ret = {tonic};
 			return ret;
 		case RESOLUTION:
-			return resolution;
+			return resolution.clone();
 		case SUBDOMINANT:
-			return subdominant;
+			return subdominant.clone();
 		case DOMINANT:
-			return dominant;
+			return dominant.clone();
 		case PREDOMINANT:
-			return predominant;
+			// No key sets these up yet.
+			return predominant == null ? null : predominant.clone();
 		case SECONDARY_DOMINANT:
-			return secondaryDominant;
+			return secondaryDominant.clone();
 		}
 		throw new IllegalArgumentException("Invalid chord function!");
 	}
@@ -90,7 +125,7 @@ public abstract class Key {
 	 * @return A list of all the notes in the scale
 	 */
 	public NoteName[] getScale() {
-		return notes;
+		return notes.clone();
 	}
 	
 	/**
@@ -33,11 +33,11 @@ public class MajorKey extends Key {
 	public Key[] getPossibleModulations() {
 		Key[] ret = new Key[3];
 		// Plus one flat
-		ret[0] = new MajorKey(notes[3]);
+		ret[0] = valueOf(notes[3], ScaleType.MAJOR);
 		// Plus one sharp
-		ret[1] = new MajorKey(notes[4]);
+		ret[1] = valueOf(notes[4], ScaleType.MAJOR);
 		// Relative minor
-		ret[2] = new MinorKey(notes[5]);
+		ret[2] = valueOf(notes[5], ScaleType.MINOR);
 		
 		return ret;
 	}
@@ -33,11 +33,11 @@ public class MinorKey extends Key {
 	public Key[] getPossibleModulations() {
 		Key[] ret = new Key[3];
 		// Plus one flat
-		ret[0] = new MinorKey(notes[3]);
+		ret[0] = valueOf(notes[3], ScaleType.MINOR);
 		// Plus one sharp
-		ret[1] = new MinorKey(notes[4]);
+		ret[1] = valueOf(notes[4], ScaleType.MINOR);
 		// Relative major
-		ret[2] = new MajorKey(notes[2]);
+		ret[2] = valueOf(notes[2], ScaleType.MAJOR);
 		
 		return ret;
 	}
@@ -173,4 +173,59 @@ public class ChordTest {
 		assertTrue(arraysAreEqual(expected, result));
 		
 	}
+	
+	/**
+	 * Test that changing the inversion makes a new chord and leaves the
+	 * original alone.
+	 */
+	@Test
+	public void testWithInversion() {
+		Chord chord = new Chord(NoteName.G, ChordType.MAJOR,
+				ChordFunction.TONIC, new MajorScale(NoteName.G));
+		Chord inverted = chord.withInversion(1);
+		assertEquals(-1, chord.getInversion());
+		assertEquals(1, inverted.getInversion());
+		assertTrue(inverted.equals(chord));
+		assertEquals(chord.getPitchMask(), inverted.getPitchMask());
+		assertSame(inverted, inverted.withInversion(1));
+		
+		// A secondary dominant keeps leading to the same chord.
+		Chord secondary = new SecondaryDominantChord(NoteName.D,
+				new MajorScale(NoteName.G), chord);
+		assertSame(chord, secondary.withInversion(0).leadsTo());
+	}
+	
+	/**
+	 * Test that chords with the same root and type are equal as objects,
+	 * hash the same, and have the same id.
+	 */
+	@Test
+	public void testHashing() {
+		Chord chord = new Chord(NoteName.G, ChordType.MAJOR,
+				ChordFunction.TONIC, new MajorScale(NoteName.G));
+		Chord sameChord = new Chord(NoteName.G, ChordType.MAJOR,
+				ChordFunction.DOMINANT, new MajorScale(NoteName.C), 1);
+		Chord minorChord = new Chord(NoteName.G, ChordType.MINOR,
+				ChordFunction.TONIC, new MajorScale(NoteName.G));
+		Object other = sameChord;
+		assertTrue(chord.equals(other));
+		assertEquals(chord.hashCode(), sameChord.hashCode());
+		assertEquals(chord.getId(), sameChord.getId());
+		assertFalse(chord.equals((Object) minorChord));
+		assertTrue(chord.getId() != minorChord.getId());
+		assertTrue(chord.getId() < Chord.NUM_IDS);
+	}
+	
+	/**
+	 * Test that the arrays a chord hands out can't change the chord.
+	 */
+	@Test
+	public void testGettersCopy() {
+		Chord chord = new Chord(NoteName.G, ChordType.MAJOR,
+				ChordFunction.TONIC, new MajorScale(NoteName.G));
+		chord.getAllRoots()[0] = new Note(44);
+		chord.getAllNotes()[0] = null;
+		assertEquals(43, chord.getAllRoots()[0].getMidiNumber());
+		assertEquals(43, chord.getAllNotes()[0].getMidiNumber());
+	}
 }
@@ -0,0 +1,67 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import notes.*;
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.ColumnarSong;
+import controller.Song;
+
+/**
+ * Unit tests for the ColumnarSong class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class ColumnarSongTest {
+	
+	/**
+	 * Test that the columns hold the same notes as the beats.
+	 */
+	@Test
+	public void testFromSong() {
+		Song song = new Song(NoteName.C, ScaleType.MAJOR, 120, 10);
+		song.generateSong();
+		Beat[] beats = song.getBeatArray();
+		ColumnarSong columns = ColumnarSong.fromSong(song);
+		
+		assertEquals(beats.length, columns.getNumBeats());
+		for (int beat = 0; beat < beats.length; beat++) {
+			for (int voice = 0; voice < song.getNumVoices(); voice++) {
+				assertEquals(
+						beats[beat].getNotesFirstHalf()[voice].getMidiNumber(),
+						columns.getPitchesFirstHalf(voice)[beat]);
+				assertEquals(
+						beats[beat].getNotesSecondHalf()[voice].getMidiNumber(),
+						columns.getPitchesSecondHalf(voice)[beat]);
+			}
+			assertTrue(beats[beat].getChord() == columns.getChord(
+					columns.getChordIds()[beat]));
+		}
+	}
+	
+	/**
+	 * Test converting a song to columns and back.
+	 */
+	@Test
+	public void testRoundTrip() {
+		Song song = new Song(NoteName.A, ScaleType.MINOR, 90, 10);
+		song.generateSong();
+		ColumnarSong columns = ColumnarSong.fromSong(song);
+		ColumnarSong result = ColumnarSong.fromSong(columns.toSong());
+		
+		assertEquals(columns.getNumBeats(), result.getNumBeats());
+		for (int voice = 0; voice < columns.getNumVoices(); voice++) {
+			assertArrayEquals(columns.getPitchesFirstHalf(voice),
+					result.getPitchesFirstHalf(voice));
+			assertArrayEquals(columns.getPitchesSecondHalf(voice),
+					result.getPitchesSecondHalf(voice));
+		}
+		assertArrayEquals(columns.getLeaps(), result.getLeaps());
+		assertArrayEquals(columns.getChordIds(), result.getChordIds());
+		assertArrayEquals(columns.getKeyIds(), result.getKeyIds());
+	}
+}
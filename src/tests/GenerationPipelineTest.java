@@ -0,0 +1,99 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import notes.*;
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.GenerationPipeline;
+import controller.GenerationPipeline.EncodedBeat;
+import controller.Ornamenter;
+import controller.Song;
+
+/**
+ * Unit tests for the GenerationPipeline class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class GenerationPipelineTest {
+	
+	/**
+	 * Test that every beat comes out once and in order, ornamented the same
+	 * way as ornamenting the finished song would.
+	 * 
+	 * @throws InterruptedException
+	 * 			If the test is interrupted
+	 */
+	@Test
+	public void testPipeline() throws InterruptedException {
+		Song song = new Song(NoteName.D, ScaleType.MAJOR, 120, 100);
+		GenerationPipeline pipeline = new GenerationPipeline(song, 2);
+		pipeline.start();
+		
+		Beat[] taken = new Beat[song.getPlannedBeatCount()];
+		int count = 0;
+		EncodedBeat beat = pipeline.take();
+		while (beat != null) {
+			assertEquals(count, beat.getIndex());
+			for (int voice = 0; voice < song.getNumVoices(); voice++) {
+				assertTrue(beat.getEvents(voice).length > 0);
+			}
+			taken[count++] = beat.getBeat();
+			beat = pipeline.take();
+		}
+		assertEquals(song.getPlannedBeatCount(), count);
+		assertNull(pipeline.take());
+		
+		// The song keeps its chord tones, so ornamenting it again should give
+		// what came out of the pipeline.
+		Beat[] expected = Ornamenter.ornamentAll(song.getBeatArray(),
+				new ForkJoinPool(2));
+		assertEquals(expected.length, count);
+		for (int indx = 0; indx < count; indx++) {
+			for (int voice = 0; voice < song.getNumVoices(); voice++) {
+				assertEquals(
+						expected[indx].getNotesSecondHalf()[voice].getMidiNumber(),
+						taken[indx].getNotesSecondHalf()[voice].getMidiNumber());
+			}
+		}
+	}
+	
+	/**
+	 * Test that cancelling wakes up a thread waiting for a beat.
+	 * 
+	 * @throws InterruptedException
+	 * 			If the test is interrupted
+	 */
+	@Test
+	public void testCancelWakesTake() throws InterruptedException {
+		Song song = new Song(NoteName.A, ScaleType.MINOR, 120, 100);
+		
+		// Never started, so no beat will ever come.
+		final GenerationPipeline pipeline = new GenerationPipeline(song, 2);
+		final EncodedBeat[] taken = new EncodedBeat[1];
+		final boolean[] returned = {false};
+		Thread waiter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					taken[0] = pipeline.take();
+					returned[0] = true;
+				} catch (InterruptedException ex) {
+					// fall through
+				}
+			}
+		});
+		waiter.start();
+		Thread.sleep(50);
+		pipeline.cancel();
+		waiter.join(2000);
+		assertFalse(waiter.isAlive());
+		assertTrue(returned[0]);
+		assertNull(taken[0]);
+	}
+}
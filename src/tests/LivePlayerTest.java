@@ -0,0 +1,137 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.LivePlayer;
+import controller.Song;
+
+/**
+ * Unit tests for the LivePlayer class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class LivePlayerTest {
+	
+	/**
+	 * Test that every note of the song is played in order, starting well
+	 * before the song could have been generated, and that the saved file
+	 * holds the whole song.
+	 * 
+	 * @throws Exception
+	 * 			If the song can't be played or saved
+	 */
+	@Test
+	public void testPlayWhileGenerating() throws Exception {
+		Song song = new Song(NoteName.E, ScaleType.MINOR, 3000, 10);
+		File file = File.createTempFile("live", ".mid");
+		file.deleteOnExit();
+		final List<ShortMessage> played = new ArrayList<>();
+		Receiver receiver = new Receiver() {
+			@Override
+			public void send(MidiMessage message, long timeStamp) {
+				synchronized (played) {
+					played.add((ShortMessage) message);
+				}
+			}
+			
+			@Override
+			public void close() {
+			}
+		};
+		
+		LivePlayer player = new LivePlayer(song, receiver, file);
+		player.start();
+		player.waitForEnd();
+		assertTrue(player.getTimeToFirstNote() >= 0);
+		assertTrue(player.getTimeToFirstNote() < 1000000000L);
+		
+		// Every note started is stopped, on its voice's channel.
+		int[] sounding = new int[song.getNumVoices()];
+		int numStarted = 0;
+		for (ShortMessage message : played) {
+			if (message.getCommand() == ShortMessage.NOTE_ON
+					&& message.getData2() > 0) {
+				sounding[message.getChannel()]++;
+				numStarted++;
+			} else if (message.getCommand() == ShortMessage.NOTE_OFF) {
+				sounding[message.getChannel()]--;
+			}
+			assertTrue(sounding[message.getChannel()] <= 1);
+		}
+		for (int count : sounding) {
+			assertEquals(0, count);
+		}
+		assertTrue(numStarted >= song.getNumVoices()
+				* song.getState().getNumBeats());
+		
+		// One track per voice, as MidiFileWriter writes it.
+		Sequence sequence = MidiSystem.getSequence(file);
+		assertEquals(2L * song.getState().getNumBeats(),
+				sequence.getTickLength());
+		assertEquals(1, MidiSystem.getMidiFileFormat(file).getType());
+	}
+	
+	/**
+	 * Test that the song is saved as soon as it's written, without waiting
+	 * for it to finish playing.
+	 * 
+	 * @throws Exception
+	 * 			If the song can't be played or saved
+	 */
+	@Test
+	public void testSavedBeforePlaybackEnds() throws Exception {
+		Song song = new Song(NoteName.C, ScaleType.MAJOR, 60, 60);
+		File file = File.createTempFile("live", ".mid");
+		file.deleteOnExit();
+		file.delete();
+		Receiver receiver = new Receiver() {
+			@Override
+			public void send(MidiMessage message, long timeStamp) {
+			}
+			
+			@Override
+			public void close() {
+			}
+		};
+		
+		LivePlayer player = new LivePlayer(song, receiver, file);
+		player.start();
+		try {
+			// The song lasts a minute, so it should be saved long before
+			// it ends.
+			long deadline = System.currentTimeMillis() + 10000;
+			Sequence sequence = null;
+			while (sequence == null) {
+				assertTrue(System.currentTimeMillis() < deadline);
+				Thread.sleep(10);
+				try {
+					sequence = MidiSystem.getSequence(file);
+				} catch (IOException | InvalidMidiDataException ex) {
+					// Not written yet
+				}
+			}
+			assertEquals(song.getNumVoices(), sequence.getTracks().length);
+			assertEquals(2L * song.getPlannedBeatCount(),
+					sequence.getTickLength());
+		} finally {
+			player.stop();
+		}
+	}
+}
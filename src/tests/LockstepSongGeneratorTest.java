@@ -0,0 +1,109 @@
+package tests;
+
+import static controller.Rules.*;
+import static org.junit.Assert.*;
+
+import notes.*;
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.ColumnarSong;
+import controller.LockstepSongGenerator;
+import controller.Song;
+import controller.rules.RuleRegistry;
+
+/**
+ * Unit tests for the LockstepSongGenerator class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class LockstepSongGeneratorTest {
+	
+	/**
+	 * Test that every song is finished and follows the standard rules.
+	 */
+	@Test
+	public void testSongsFollowRules() {
+		Song[] songs = createSongs(40, 0);
+		new LockstepSongGenerator(songs).generateSongs();
+		
+		for (Song song : songs) {
+			Beat[] beats = song.getBeatArray();
+			assertEquals(song.getPlannedBeatCount(), beats.length);
+			assertEquals(ChordFunction.TONIC,
+					beats[beats.length - 1].getChord().getFunction());
+			for (int beat = 1; beat < beats.length; beat++) {
+				Note[] notes = beats[beat].getChordTones();
+				Note[] prevNotes = beats[beat - 1].getChordTones();
+				assertTrue(containsAllChordTones(notes,
+						beats[beat].getChord()));
+				assertTrue(noParallelFifths(notes, prevNotes));
+				for (int voice = 0; voice < notes.length; voice++) {
+					assertTrue(isValidLeap(notes[voice], prevNotes[voice],
+							false));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test that songs with rules beyond the standard ones keep to them.
+	 */
+	@Test
+	public void testSongsFollowOwnRules() {
+		Song[] songs = createSongs(40, 0);
+		for (Song song : songs) {
+			song.setRules(RuleRegistry.strict());
+		}
+		new LockstepSongGenerator(songs).generateSongs();
+		
+		for (Song song : songs) {
+			Beat[] beats = song.getBeatArray();
+			assertEquals(song.getPlannedBeatCount(), beats.length);
+			for (int beat = 1; beat < beats.length; beat++) {
+				assertTrue(song.getRules().canPrecede(beats[beat - 1],
+						beats[beat]));
+			}
+		}
+	}
+	
+	/**
+	 * Test that seeded songs come out the same every time.
+	 */
+	@Test
+	public void testSeededSongsRepeat() {
+		Song[] first = createSongs(10, 99);
+		new LockstepSongGenerator(first).generateSongs();
+		Song[] second = createSongs(10, 99);
+		new LockstepSongGenerator(second).generateSongs();
+		
+		for (int song = 0; song < first.length; song++) {
+			ColumnarSong expected = ColumnarSong.fromSong(first[song]);
+			ColumnarSong actual = ColumnarSong.fromSong(second[song]);
+			for (int voice = 0; voice < expected.getNumVoices(); voice++) {
+				assertArrayEquals(expected.getPitchesSecondHalf(voice),
+						actual.getPitchesSecondHalf(voice));
+			}
+		}
+	}
+	
+	/**
+	 * Creates empty songs, seeded one after another.
+	 * 
+	 * @param numSongs
+	 * 			The number of songs
+	 * @param firstSeed
+	 * 			The seed of the first song
+	 * @return The songs
+	 */
+	private static Song[] createSongs(int numSongs, long firstSeed) {
+		Song[] ret = new Song[numSongs];
+		for (int song = 0; song < numSongs; song++) {
+			ret[song] = new Song(NoteName.C, ScaleType.MAJOR, 120, 30);
+			ret[song].setSeed(firstSeed + song);
+		}
+		return ret;
+	}
+}
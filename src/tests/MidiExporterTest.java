@@ -0,0 +1,87 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.ColumnarSong;
+import controller.MidiExporter;
+import controller.MidiFileWriter;
+import controller.Song;
+import exceptions.InvalidFileFormatException;
+
+/**
+ * Unit tests for the MidiExporter class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class MidiExporterTest {
+	
+	/**
+	 * Test that one exporter can export song after song, without the earlier
+	 * songs leaking into the later files.
+	 * 
+	 * @throws Exception
+	 * 			If a song can't be exported
+	 */
+	@Test
+	public void testReuse() throws Exception {
+		MidiExporter exporter = new MidiExporter();
+		File file = File.createTempFile("export", ".mid");
+		file.deleteOnExit();
+		File expected = File.createTempFile("expected", ".mid");
+		expected.deleteOnExit();
+		
+		for (int count = 0; count < 3; count++) {
+			Song song = new Song(NoteName.A, ScaleType.MINOR, 100,
+					20 + 10 * count);
+			song.generateSong();
+			exporter.importSong(song);
+			exporter.exportToFile(file.getPath());
+			
+			new MidiFileWriter().write(ColumnarSong.fromSong(song), expected);
+			assertArrayEquals(Files.readAllBytes(expected.toPath()),
+					Files.readAllBytes(file.toPath()));
+			Sequence sequence = MidiSystem.getSequence(file);
+			assertEquals(song.getNumVoices(), sequence.getTracks().length);
+		}
+		exporter.close();
+	}
+	
+	/**
+	 * Test that bad file names and missing songs are reported as
+	 * exceptions.
+	 * 
+	 * @throws Exception
+	 * 			If a song can't be exported
+	 */
+	@Test
+	public void testErrors() throws Exception {
+		MidiExporter exporter = new MidiExporter();
+		try {
+			exporter.exportToFile("song.mid");
+			fail("Exported without a song");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+		
+		Song song = new Song(NoteName.C, ScaleType.MAJOR, 100, 20);
+		song.generateSong();
+		exporter.importSong(song);
+		try {
+			exporter.exportToFile("song.txt");
+			fail("Exported to a bad file name");
+		} catch (InvalidFileFormatException ex) {
+			// expected
+		}
+	}
+}
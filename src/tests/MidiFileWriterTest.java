@@ -0,0 +1,167 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import javax.sound.midi.*;
+
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.ColumnarSong;
+import controller.MidiFileWriter;
+import controller.MidiTrackEncoder;
+import controller.Song;
+
+/**
+ * Unit tests for the MidiFileWriter and MidiTrackEncoder classes.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class MidiFileWriterTest {
+	
+	/**
+	 * Test that delta times are written as variable-length quantities, and
+	 * that repeated status bytes are left out.
+	 */
+	@Test
+	public void testEncoder() {
+		MidiTrackEncoder encoder = new MidiTrackEncoder(0);
+		encoder.noteOn(0, 0, 60, 64);
+		encoder.noteOff(200, 0, 60);
+		encoder.noteOff(200, 0, 62);
+		byte[] expected = {0, (byte) 0x90, 60, 64,
+				(byte) 0x81, 0x48, (byte) 0x80, 60, 0,
+				0, 62, 0};
+		byte[] result = new byte[encoder.size()];
+		encoder.getBytes().get(result);
+		assertArrayEquals(expected, result);
+		
+		encoder.reset();
+		assertEquals(0, encoder.size());
+	}
+	
+	/**
+	 * Test that a written song reads back through MidiSystem with the same
+	 * notes, voice by voice.
+	 * 
+	 * @throws IOException
+	 * 			If the song can't be written
+	 * @throws InvalidMidiDataException
+	 * 			If the file can't be read back
+	 */
+	@Test
+	public void testReadBack() throws IOException, InvalidMidiDataException {
+		Song song = new Song(NoteName.F, ScaleType.MAJOR, 90, 40);
+		song.generateSong();
+		ColumnarSong columns = ColumnarSong.fromSong(song);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new MidiFileWriter().write(columns, Channels.newChannel(bytes));
+		
+		Sequence sequence = MidiSystem.getSequence(
+				new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals(MidiFileWriter.TICKS_PER_BEAT, sequence.getResolution());
+		Track[] tracks = sequence.getTracks();
+		assertEquals(columns.getNumVoices(), tracks.length);
+		for (int voice = 0; voice < tracks.length; voice++) {
+			byte[] firstHalf = columns.getPitchesFirstHalf(voice);
+			byte[] secondHalf = columns.getPitchesSecondHalf(voice);
+			int beat = 0;
+			for (int indx = 0; indx < tracks[voice].size(); indx++) {
+				MidiEvent event = tracks[voice].get(indx);
+				if (!(event.getMessage() instanceof ShortMessage)) {
+					continue;
+				}
+				ShortMessage message = (ShortMessage) event.getMessage();
+				if (message.getCommand() != ShortMessage.NOTE_ON) {
+					continue;
+				}
+				
+				// Each beat's first note starts on the beat.
+				if (event.getTick() % MidiFileWriter.TICKS_PER_BEAT == 0) {
+					beat = (int) (event.getTick()
+							/ MidiFileWriter.TICKS_PER_BEAT);
+					assertEquals(firstHalf[beat], message.getData1());
+				} else {
+					assertEquals(secondHalf[beat], message.getData1());
+				}
+			}
+			assertEquals(columns.getNumBeats() - 1, beat);
+		}
+	}
+	
+	/**
+	 * Test that coalescing gives one note per run of the same pitch, holding
+	 * the right pitch at every tick, in a smaller file.
+	 * 
+	 * @throws IOException
+	 * 			If the song can't be written
+	 * @throws InvalidMidiDataException
+	 * 			If the file can't be read back
+	 */
+	@Test
+	public void testCoalescing() throws IOException, InvalidMidiDataException {
+		Song song = new Song(NoteName.E, ScaleType.MINOR, 90, 60);
+		song.generateSong();
+		ColumnarSong columns = ColumnarSong.fromSong(song);
+		MidiFileWriter writer = new MidiFileWriter();
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		writer.write(columns, Channels.newChannel(plain));
+		ByteArrayOutputStream coalesced = new ByteArrayOutputStream();
+		writer.setCoalescing(true);
+		writer.write(columns, Channels.newChannel(coalesced));
+		assertTrue(coalesced.size() < plain.size());
+		
+		Sequence sequence = MidiSystem.getSequence(
+				new ByteArrayInputStream(coalesced.toByteArray()));
+		Track[] tracks = sequence.getTracks();
+		int numHalves = 2 * columns.getNumBeats();
+		for (int voice = 0; voice < tracks.length; voice++) {
+			byte[] firstHalf = columns.getPitchesFirstHalf(voice);
+			byte[] secondHalf = columns.getPitchesSecondHalf(voice);
+			
+			// Play the track back a tick at a time.
+			int[] held = new int[numHalves];
+			int pitch = -1;
+			int tick = 0;
+			int runs = 0;
+			for (int indx = 0; indx < tracks[voice].size(); indx++) {
+				MidiEvent event = tracks[voice].get(indx);
+				if (!(event.getMessage() instanceof ShortMessage)) {
+					continue;
+				}
+				ShortMessage message = (ShortMessage) event.getMessage();
+				assertEquals(ShortMessage.NOTE_ON, message.getCommand());
+				for (; tick < event.getTick(); tick++) {
+					held[tick] = pitch;
+				}
+				if (message.getData2() == 0) {
+					assertEquals(pitch, message.getData1());
+					pitch = -1;
+				} else {
+					assertEquals(-1, pitch);
+					pitch = message.getData1();
+					runs++;
+				}
+			}
+			assertEquals(numHalves, tick);
+			
+			int expectedRuns = 0;
+			for (int half = 0; half < numHalves; half++) {
+				int expected = half % 2 == 0 ? firstHalf[half / 2]
+						: secondHalf[half / 2];
+				assertEquals(expected, held[half]);
+				if (half == 0 || held[half - 1] != expected) {
+					expectedRuns++;
+				}
+			}
+			assertEquals(expectedRuns, runs);
+		}
+	}
+}
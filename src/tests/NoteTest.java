@@ -1,6 +1,10 @@
 package tests;
 
 import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
 import notes.Note;
 import notes.types.NoteName;
 
@@ -71,5 +75,18 @@ public class NoteTest {
 		Note note2 = new Note(64);
 		assertTrue(note2.greaterThan(note));
 	}
+	
+	/**
+	 * Test that equal notes work as keys in a hash set.
+	 */
+	@Test
+	public void testHashing() {
+		Set<Object> notes = new HashSet<>();
+		notes.add(new Note(60));
+		assertTrue(notes.contains(note));
+		assertFalse(notes.contains(new Note(72)));
+		assertFalse(note.equals((Object) NoteName.C));
+		assertEquals(60, note.getId());
+	}
 
 }
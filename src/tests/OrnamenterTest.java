@@ -0,0 +1,69 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import notes.*;
+import notes.scales.MajorScale;
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.Ornamenter;
+import controller.Song;
+
+/**
+ * Unit tests for the Ornamenter class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class OrnamenterTest {
+	
+	/**
+	 * Test that a voice moving by a third gets a passing tone, and that the
+	 * beat being ornamented is left alone.
+	 */
+	@Test
+	public void testPassingTone() {
+		Chord chord = new Chord(NoteName.C, ChordType.MAJOR,
+				ChordFunction.TONIC, new MajorScale(NoteName.C));
+		Note[] notes = {new Note(48), new Note(55), new Note(64),
+				new Note(72)};
+		Note[] nextNotes = {new Note(48), new Note(55), new Note(67),
+				new Note(72)};
+		Beat beat = new Beat(chord, null, notes, notes, new boolean[4]);
+		Beat nextBeat = new Beat(chord, beat, nextNotes, nextNotes,
+				new boolean[4]);
+		
+		Beat result = Ornamenter.ornament(beat, nextBeat);
+		assertEquals(65, result.getNotesSecondHalf()[2].getMidiNumber());
+		assertEquals(64, result.getNotesFirstHalf()[2].getMidiNumber());
+		assertTrue(result.containsNonChordTone());
+		assertEquals(64, beat.getNotesSecondHalf()[2].getMidiNumber());
+		assertFalse(beat.containsNonChordTone());
+	}
+	
+	/**
+	 * Test that ornamenting a finished song in parallel gives the same notes
+	 * as ornamenting it while it was generated.
+	 */
+	@Test
+	public void testParallelPassMatchesSong() {
+		Song song = new Song(NoteName.B, ScaleType.MINOR, 120, 60);
+		song.generateSong();
+		Beat[] beats = song.getBeatArray();
+		Beat[] result = Ornamenter.ornamentAll(beats, new ForkJoinPool(4));
+		
+		assertEquals(beats.length, result.length);
+		for (int beat = 0; beat < beats.length; beat++) {
+			for (int voice = 0; voice < song.getNumVoices(); voice++) {
+				assertEquals(
+						beats[beat].getNotesSecondHalf()[voice].getMidiNumber(),
+						result[beat].getNotesSecondHalf()[voice]
+								.getMidiNumber());
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import notes.*;
+import notes.scales.Key;
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.ParallelSongGenerator;
+import controller.Song;
+import controller.rules.RuleRegistry;
+
+/**
+ * Unit tests for the ParallelSongGenerator class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class ParallelSongGeneratorTest {
+	
+	/**
+	 * Test that the stitched song is as long as planned.
+	 */
+	@Test
+	public void testLength() {
+		ParallelSongGenerator generator =
+				new ParallelSongGenerator(new ForkJoinPool(4));
+		for (int indx = 0; indx < 10; indx++) {
+			Song song = generator.generateSong(NoteName.C, ScaleType.MAJOR,
+					120, 30);
+			assertEquals(song.getPlannedBeatCount(),
+					song.getBeatArray().length);
+			assertEquals(song.getBeatArray().length,
+					song.getKeyArray().length);
+		}
+	}
+	
+	/**
+	 * Test that the first two beats of every phrase follow the rules from
+	 * the end of the phrase before.
+	 */
+	@Test
+	public void testSeams() {
+		ParallelSongGenerator generator =
+				new ParallelSongGenerator(new ForkJoinPool(4));
+		for (int indx = 0; indx < 10; indx++) {
+			Song song = generator.generateSong(NoteName.A, ScaleType.MINOR,
+					120, 30);
+			Beat[] beats = song.getBeatArray();
+			RuleRegistry rules = song.getRules();
+			int beatsPerPhrase = song.getBeatsPerPhrase();
+			for (int start = beatsPerPhrase; start < beats.length;
+					start += beatsPerPhrase) {
+				assertTrue(rules.canPrecede(beats[start - 1], beats[start]));
+				assertTrue(rules.canPrecede(beats[start], beats[start + 1]));
+			}
+		}
+	}
+	
+	/**
+	 * Test that each phrase stays in one key, and only moves to a closely
+	 * related key between phrases.
+	 */
+	@Test
+	public void testKeys() {
+		ParallelSongGenerator generator =
+				new ParallelSongGenerator(new ForkJoinPool(4));
+		for (int indx = 0; indx < 10; indx++) {
+			Song song = generator.generateSong(NoteName.C, ScaleType.MAJOR,
+					120, 30);
+			Key[] keys = song.getKeyArray();
+			int beatsPerPhrase = song.getBeatsPerPhrase();
+			assertTrue(keys[0] == Key.valueOf(NoteName.C, ScaleType.MAJOR));
+			for (int beat = 1; beat < keys.length; beat++) {
+				if (beat % beatsPerPhrase != 0) {
+					assertTrue(keys[beat] == keys[beat - 1]);
+				} else if (keys[beat] != keys[beat - 1]) {
+					assertTrue(isModulation(keys[beat - 1], keys[beat]));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test that every secondary dominant resolves, even though every phrase
+	 * is written as the final phrase of a song of its own.
+	 */
+	@Test
+	public void testSecondaryDominantsResolve() {
+		ParallelSongGenerator generator =
+				new ParallelSongGenerator(new ForkJoinPool(4));
+		for (int indx = 0; indx < 20; indx++) {
+			Song song = generator.generateSong(NoteName.G, ScaleType.MAJOR,
+					120, 120);
+			Beat[] beats = song.getBeatArray();
+			for (int beat = 0; beat < beats.length - 1; beat++) {
+				Chord chord = beats[beat].getChord();
+				if (chord instanceof SecondaryDominantChord) {
+					Chord next = beats[beat + 1].getChord();
+					assertTrue(next.equals(chord)
+							|| next.equals(chord.leadsTo()));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Checks whether one key can modulate to another.
+	 * 
+	 * @param from
+	 * 			The key to modulate from
+	 * @param to
+	 * 			The key to modulate to
+	 * @return Whether it's one of the first key's possible modulations
+	 */
+	private static boolean isModulation(Key from, Key to) {
+		for (Key key : from.getPossibleModulations()) {
+			if (key == to) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,81 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.ColumnarSong;
+import controller.PcmRenderer;
+import controller.Song;
+
+/**
+ * Unit tests for the PcmRenderer class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class PcmRendererTest {
+	
+	/**
+	 * Test that a song renders to the expected number of samples, with sound
+	 * in every half beat and no clipping, and that the WAV file holds the
+	 * same samples.
+	 * 
+	 * @throws Exception
+	 * 			If the song can't be rendered
+	 */
+	@Test
+	public void testRender() throws Exception {
+		Song song = new Song(NoteName.F, ScaleType.MAJOR, 200, 10);
+		song.generateSong();
+		ColumnarSong columns = ColumnarSong.fromSong(song);
+		PcmRenderer renderer = new PcmRenderer();
+		
+		ByteArrayOutputStream raw = new ByteArrayOutputStream();
+		long numFrames = renderer.render(columns, raw);
+		assertEquals(PcmRenderer.getNumFrames(columns), numFrames);
+		assertEquals(numFrames * PcmRenderer.FORMAT.getFrameSize(),
+				raw.size());
+		
+		// Every half beat has something playing, and nothing clips.
+		ByteBuffer samples = ByteBuffer.wrap(raw.toByteArray())
+				.order(ByteOrder.LITTLE_ENDIAN);
+		int halfBeatLength = (int) (30 * PcmRenderer.FORMAT.getSampleRate()
+				/ columns.getBPM());
+		for (int half = 0; half < 2 * columns.getNumBeats(); half++) {
+			int peak = 0;
+			for (int indx = 0; indx < halfBeatLength; indx++) {
+				short sample = samples.getShort(
+						2 * (half * halfBeatLength + indx));
+				peak = Math.max(peak, Math.abs(sample));
+			}
+			assertTrue(peak > 0);
+			assertTrue(peak < Short.MAX_VALUE);
+		}
+		
+		File file = File.createTempFile("preview", ".wav");
+		file.deleteOnExit();
+		renderer.writeWav(columns, file);
+		try (AudioInputStream stream = AudioSystem.getAudioInputStream(file)) {
+			assertTrue(stream.getFormat().matches(PcmRenderer.FORMAT));
+			assertEquals(numFrames, stream.getFrameLength());
+			byte[] fromFile = new byte[raw.size()];
+			int length = 0;
+			while (length < fromFile.length) {
+				length += stream.read(fromFile, length,
+						fromFile.length - length);
+			}
+			assertArrayEquals(raw.toByteArray(), fromFile);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import notes.*;
+import notes.scales.MajorScale;
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.Rules;
+
+/**
+ * Unit tests for the PitchMask class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class PitchMaskTest {
+	
+	/**
+	 * Test that a range includes both ends and is clipped to the masks'
+	 * range.
+	 */
+	@Test
+	public void testBetween() {
+		assertEquals(0x7L, PitchMask.between(43, 45));
+		assertEquals(PitchMask.ALL, PitchMask.between(0, 127));
+		assertEquals(0, PitchMask.between(50, 49));
+		assertEquals(PitchMask.of(78), PitchMask.above(77));
+	}
+	
+	/**
+	 * Test that the leap mask agrees with Rules.isValidLeap().
+	 */
+	@Test
+	public void testValidLeaps() {
+		for (int from = PitchMask.LOWEST; from <= PitchMask.HIGHEST; from++) {
+			long mask = PitchMask.validLeapsFrom(from);
+			for (int to = PitchMask.LOWEST; to <= PitchMask.HIGHEST; to++) {
+				boolean expected = Rules.isValidLeap(new Note(to),
+						new Note(from), false);
+				assertEquals(expected, (mask & PitchMask.of(to)) != 0);
+			}
+		}
+	}
+	
+	/**
+	 * Test that a chord's mask holds the same notes as its note arrays.
+	 */
+	@Test
+	public void testChordMask() {
+		Chord chord = new Chord(NoteName.E, ChordType.MINOR,
+				ChordFunction.SUBDOMINANT, new MajorScale(NoteName.C));
+		long expected = 0;
+		for (Note note : chord.getAllNotes()) {
+			expected |= PitchMask.of(note.getMidiNumber());
+		}
+		assertEquals(expected, chord.getPitchMask());
+		
+		// With no inversion given, the bass can sing a root or a third.
+		long roots = 0;
+		for (Note note : chord.getAllRoots()) {
+			roots |= PitchMask.of(note.getMidiNumber());
+		}
+		assertEquals(roots, chord.getRootPitchMask());
+		assertEquals(0, chord.getBassPitchMask() & ~chord.getPitchMask());
+		assertTrue((chord.getBassPitchMask() & roots) == roots);
+	}
+	
+	/**
+	 * Test that picking only ever returns pitches in the mask, and can return
+	 * each of them.
+	 */
+	@Test
+	public void testPick() {
+		long mask = PitchMask.of(45) | PitchMask.of(60) | PitchMask.of(78);
+		long seen = 0;
+		Random randomizer = new Random(3);
+		for (int pick = 0; pick < 100; pick++) {
+			int pitch = PitchMask.pick(mask, randomizer);
+			assertTrue((mask & PitchMask.of(pitch)) != 0);
+			seen |= PitchMask.of(pitch);
+		}
+		assertEquals(mask, seen);
+		assertEquals(-1, PitchMask.pick(0, randomizer));
+	}
+}
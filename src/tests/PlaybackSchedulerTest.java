@@ -0,0 +1,152 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.ColumnarSong;
+import controller.PlaybackScheduler;
+import controller.Song;
+
+/**
+ * Unit tests for the PlaybackScheduler class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class PlaybackSchedulerTest {
+	
+	/**
+	 * Test that songs played at once each have all their notes started and
+	 * stopped on a channel of their own, and that a 16th song is turned
+	 * away.
+	 * 
+	 * @throws Exception
+	 * 			If interrupted
+	 */
+	@Test
+	public void testManySongs() throws Exception {
+		final int[] started = new int[16];
+		final int[] stopped = new int[16];
+		Receiver receiver = new Receiver() {
+			@Override
+			public void send(MidiMessage message, long timeStamp) {
+				ShortMessage note = (ShortMessage) message;
+				if (note.getCommand() == ShortMessage.NOTE_ON) {
+					started[note.getChannel()]++;
+				} else if (note.getCommand() == ShortMessage.NOTE_OFF) {
+					stopped[note.getChannel()]++;
+				}
+			}
+			
+			@Override
+			public void close() {
+			}
+		};
+		
+		PlaybackScheduler scheduler = new PlaybackScheduler(receiver, null);
+		scheduler.start();
+		ColumnarSong[] songs = new ColumnarSong[16];
+		long startTime = System.nanoTime() + 50000000;
+		int numMessages = 0;
+		for (int indx = 0; indx < 15; indx++) {
+			Song song = new Song(NoteName.values()[indx % 12],
+					ScaleType.MAJOR, 2400, 10);
+			song.generateSong();
+			ColumnarSong columns = ColumnarSong.fromSong(song);
+			int channel = scheduler.addSong(columns, startTime);
+			assertTrue(channel != PlaybackScheduler.PERCUSSION_CHANNEL);
+			assertNull(songs[channel]);
+			songs[channel] = columns;
+			numMessages += 2 * countNotes(columns);
+		}
+		try {
+			scheduler.addSong(songs[0], startTime);
+			fail("A 16th song was given a channel");
+		} catch (IllegalStateException ex) {
+			// Every channel is taken.
+		}
+		
+		long deadline = System.nanoTime() + 10000000000L;
+		while (scheduler.getNumSongs() > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		scheduler.stop();
+		assertEquals(0, scheduler.getNumSongs());
+		assertEquals(numMessages, scheduler.getMessagesSent());
+		for (int channel = 0; channel < 16; channel++) {
+			int expected = songs[channel] == null ? 0
+					: countNotes(songs[channel]);
+			assertEquals(expected, started[channel]);
+			assertEquals(expected, stopped[channel]);
+		}
+		assertTrue(scheduler.getMaxLateness() >= scheduler.getMeanLateness());
+	}
+	
+	/**
+	 * Test that a song's channel is given to the next song once it
+	 * finishes. Each song starts in the past, so all of its notes are due
+	 * at once and it finishes right away.
+	 * 
+	 * @throws Exception
+	 * 			If interrupted
+	 */
+	@Test
+	public void testChannelsReused() throws Exception {
+		Receiver receiver = new Receiver() {
+			@Override
+			public void send(MidiMessage message, long timeStamp) {
+			}
+			
+			@Override
+			public void close() {
+			}
+		};
+		
+		PlaybackScheduler scheduler = new PlaybackScheduler(receiver, null);
+		scheduler.start();
+		Song song = new Song(NoteName.C, ScaleType.MAJOR, 2400, 1);
+		song.generateSong();
+		ColumnarSong columns = ColumnarSong.fromSong(song);
+		
+		// One more song than there are channels to go round
+		for (int indx = 0; indx < 16; indx++) {
+			scheduler.addSong(columns, System.nanoTime() - 60000000000L);
+			long deadline = System.nanoTime() + 1000000000L;
+			while (scheduler.getNumSongs() > 0
+					&& System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals(0, scheduler.getNumSongs());
+		}
+		scheduler.stop();
+	}
+	
+	/**
+	 * Counts the notes a song plays.
+	 * 
+	 * @param song
+	 * 			The song
+	 * @return One per beat per voice, plus one more for each beat that
+	 * 			changes pitch halfway
+	 */
+	private static int countNotes(ColumnarSong song) {
+		int ret = 0;
+		for (int voice = 0; voice < song.getNumVoices(); voice++) {
+			for (int beat = 0; beat < song.getNumBeats(); beat++) {
+				ret++;
+				if (song.getPitchesFirstHalf(voice)[beat]
+						!= song.getPitchesSecondHalf(voice)[beat]) {
+					ret++;
+				}
+			}
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,121 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import notes.*;
+import notes.scales.MajorScale;
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.IntervalSignature;
+import controller.rules.*;
+
+/**
+ * Unit tests for the RuleRegistry class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class RuleRegistryTest {
+	
+	/**
+	 * A rule that never fails, and counts how often it's checked.
+	 */
+	private static class PassingRule implements BeatRule {
+		
+		/**
+		 * The number of times the rule has been checked
+		 */
+		int calls = 0;
+		
+		public String getName() {
+			return "passing";
+		}
+		
+		public boolean checkBeat(Note[] notes, long signature, Chord chord,
+				Beat prevBeat) {
+			calls++;
+			return true;
+		}
+	}
+	
+	/**
+	 * A rule that always fails.
+	 */
+	private static class FailingRule implements BeatRule {
+		
+		public String getName() {
+			return "failing";
+		}
+		
+		public boolean checkBeat(Note[] notes, long signature, Chord chord,
+				Beat prevBeat) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Test that a rule that always fails is moved to the front.
+	 */
+	@Test
+	public void testFailingRulesGoFirst() {
+		PassingRule passing = new PassingRule();
+		FailingRule failing = new FailingRule();
+		RuleRegistry rules = new RuleRegistry();
+		rules.add(passing);
+		rules.add(failing);
+		assertSame(passing, rules.getBeatRules()[0]);
+		
+		Note[] notes = {new Note(48), new Note(55), new Note(64),
+				new Note(72)};
+		for (int check = 0; check < 5000; check++) {
+			assertFalse(rules.checkBeat(notes, null, null));
+		}
+		
+		// Once the failing rule goes first, the passing rule is skipped.
+		assertSame(failing, rules.getBeatRules()[0]);
+		assertTrue(passing.calls < 5000);
+	}
+	
+	/**
+	 * Test parallel octaves between two voices moving the same way.
+	 */
+	@Test
+	public void testParallelOctaves() {
+		Chord chord = new Chord(NoteName.C, ChordType.MAJOR,
+				ChordFunction.TONIC, new MajorScale(NoteName.C));
+		Note[] prevNotes = {new Note(48), new Note(55), new Note(64),
+				new Note(72)};
+		Note[] notes = {new Note(50), new Note(55), new Note(65),
+				new Note(74)};
+		Beat prevBeat = new Beat(chord, null, prevNotes, prevNotes,
+				new boolean[4]);
+		
+		// The bass and soprano both go up a step, two octaves apart.
+		BeatRule rule = new ParallelOctavesRule();
+		assertFalse(rule.checkBeat(notes, IntervalSignature.of(notes), chord,
+				prevBeat));
+		assertTrue(rule.checkBeat(prevNotes, IntervalSignature.of(prevNotes),
+				chord, prevBeat));
+	}
+	
+	/**
+	 * Test a voice moving past where the voice below it just was.
+	 */
+	@Test
+	public void testVoiceCrossing() {
+		Chord chord = new Chord(NoteName.C, ChordType.MAJOR,
+				ChordFunction.TONIC, new MajorScale(NoteName.C));
+		Note[] prevNotes = {new Note(48), new Note(55), new Note(64),
+				new Note(72)};
+		Beat prevBeat = new Beat(chord, null, prevNotes, prevNotes,
+				new boolean[4]);
+		Note[] notes = {new Note(43), null, null, null};
+		
+		VoiceRule rule = new VoiceCrossingRule();
+		assertTrue(rule.checkVoice(new Note(52), 1, notes, prevBeat));
+		assertFalse(rule.checkVoice(new Note(47), 1, notes, prevBeat));
+		assertFalse(rule.checkVoice(new Note(65), 1, notes, prevBeat));
+	}
+}
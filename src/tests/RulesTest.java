@@ -77,4 +77,17 @@ public class RulesTest {
 		Note[] beat2 = {new Note(4), new Note(5), new Note(11), new Note(12)};
 		assertFalse(noParallelFifths(beat1, beat2));
 	}
+	
+	/**
+	 * Test parallelFifths a whole octave apart.
+	 */
+	@Test
+	public void testCompoundParallelFifths() {
+		Note[] beat1 = {new Note(48), new Note(67)};
+		Note[] beat2 = {new Note(50), new Note(69)};
+		assertFalse(noParallelFifths(beat2, beat1));
+		
+		Note[] beat3 = {new Note(50), new Note(68)};
+		assertTrue(noParallelFifths(beat3, beat1));
+	}
 }
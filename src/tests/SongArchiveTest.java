@@ -0,0 +1,93 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.ColumnarSong;
+import controller.MidiFileWriter;
+import controller.Song;
+import controller.SongArchive;
+import controller.SongArchiveWriter;
+
+/**
+ * Unit tests for the SongArchive and SongArchiveWriter classes.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class SongArchiveTest {
+	
+	/**
+	 * The number of songs to archive
+	 */
+	private static final int NUM_SONGS = 12;
+	
+	/**
+	 * Test that songs appended from several threads at once all read back
+	 * as the same MIDI files MidiFileWriter writes.
+	 * 
+	 * @throws Exception
+	 * 			If the archive can't be written or read
+	 */
+	@Test
+	public void testConcurrentAppend() throws Exception {
+		final ColumnarSong[] songs = new ColumnarSong[NUM_SONGS];
+		for (int indx = 0; indx < NUM_SONGS; indx++) {
+			Song song = new Song(NoteName.values()[indx], ScaleType.MINOR,
+					100, 20);
+			song.generateSong();
+			songs[indx] = ColumnarSong.fromSong(song);
+		}
+		
+		File file = File.createTempFile("songs", ".fga");
+		file.deleteOnExit();
+		final int[] ids = new int[NUM_SONGS];
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try (final SongArchiveWriter writer =
+				new SongArchiveWriter(file, NUM_SONGS)) {
+			List<Future<Void>> results = new ArrayList<>();
+			for (int indx = 0; indx < NUM_SONGS; indx++) {
+				final int songIndx = indx;
+				results.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						ids[songIndx] = writer.append(songs[songIndx]);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		
+		try (SongArchive archive = new SongArchive(file)) {
+			assertEquals(NUM_SONGS, archive.getNumSongs());
+			for (int indx = 0; indx < NUM_SONGS; indx++) {
+				ByteArrayOutputStream expected = new ByteArrayOutputStream();
+				new MidiFileWriter().write(songs[indx],
+						Channels.newChannel(expected));
+				ByteBuffer song = archive.getSong(ids[indx]);
+				byte[] result = new byte[song.remaining()];
+				song.get(result);
+				assertArrayEquals(expected.toByteArray(), result);
+			}
+		}
+	}
+}
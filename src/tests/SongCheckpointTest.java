@@ -0,0 +1,84 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.ColumnarSong;
+import controller.Song;
+import controller.SongCheckpoint;
+import exceptions.InvalidFileFormatException;
+
+/**
+ * Unit tests for the SongCheckpoint class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class SongCheckpointTest {
+	
+	/**
+	 * Test that a song loaded from a checkpoint finishes the same way the
+	 * original does.
+	 */
+	@Test
+	public void testResumeMatchesOriginal() throws Exception {
+		Song song = new Song(NoteName.D, ScaleType.MAJOR, 120, 30);
+		song.setSeed(42);
+		for (int beat = 0; beat < 20; beat++) {
+			song.addBeat();
+		}
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		SongCheckpoint.write(song, out);
+		Song resumed = SongCheckpoint.read(
+				new ByteArrayInputStream(out.toByteArray()));
+		
+		song.generateSong();
+		resumed.generateSong();
+		ColumnarSong expected = ColumnarSong.fromSong(song);
+		ColumnarSong result = ColumnarSong.fromSong(resumed);
+		assertEquals(expected.getNumBeats(), result.getNumBeats());
+		for (int voice = 0; voice < expected.getNumVoices(); voice++) {
+			assertArrayEquals(expected.getPitchesFirstHalf(voice),
+					result.getPitchesFirstHalf(voice));
+			assertArrayEquals(expected.getPitchesSecondHalf(voice),
+					result.getPitchesSecondHalf(voice));
+		}
+		assertArrayEquals(expected.getLeaps(), result.getLeaps());
+	}
+	
+	/**
+	 * Test that a finished song can be saved to a file and loaded back.
+	 */
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		File file = File.createTempFile("song", ".ckpt");
+		try {
+			Song song = new Song(NoteName.B, ScaleType.MINOR, 90, 10);
+			song.generateSong(file, 8);
+			Song loaded = SongCheckpoint.load(file);
+			
+			ColumnarSong expected = ColumnarSong.fromSong(song);
+			ColumnarSong result = ColumnarSong.fromSong(loaded);
+			assertEquals(expected.getNumBeats(), result.getNumBeats());
+			assertArrayEquals(expected.getChordIds(), result.getChordIds());
+			assertArrayEquals(expected.getKeyIds(), result.getKeyIds());
+		} finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Test that anything other than a checkpoint is turned down.
+	 */
+	@Test(expected = InvalidFileFormatException.class)
+	public void testNotACheckpoint() throws Exception {
+		byte[] bytes = "MThd is not a checkpoint".getBytes("US-ASCII");
+		SongCheckpoint.read(new ByteArrayInputStream(bytes));
+	}
+}
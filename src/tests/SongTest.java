@@ -0,0 +1,216 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import notes.*;
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.ColumnarSong;
+import controller.FugueUtil;
+import controller.Ornamenter;
+import controller.Song;
+import controller.rules.BeatRule;
+import exceptions.InvalidChordException;
+
+/**
+ * Unit tests for the Song class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class SongTest {
+	
+	/**
+	 * Test that every secondary dominant in the last phrase resolves to the
+	 * chord it leads to, rather than being cut off by the final cadence.
+	 */
+	@Test
+	public void testFinalSecondaryDominantsResolve() {
+		for (int indx = 0; indx < 300; indx++) {
+			Song song = new Song(NoteName.C, ScaleType.MAJOR, 120, 20);
+			song.generateSong();
+			Beat[] beats = song.getBeatArray();
+			int start = (song.getPlannedPhraseCount() - 1)
+					* song.getBeatsPerPhrase();
+			for (int beat = start; beat < beats.length - 1; beat++) {
+				Chord chord = beats[beat].getChord();
+				if (chord instanceof SecondaryDominantChord) {
+					Chord next = beats[beat + 1].getChord();
+					assertTrue(next.equals(chord)
+							|| next.equals(chord.leadsTo()));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test that a forked song shares the beats written before the fork.
+	 */
+	@Test
+	public void testForkSharesBeats() {
+		Song song = new Song(NoteName.C, ScaleType.MAJOR, 120, 10);
+		for (int beat = 0; beat < 8; beat++) {
+			song.addBeat();
+		}
+		Song fork = song.fork();
+		
+		Beat[] original = song.getBeatArray();
+		Beat[] forked = fork.getBeatArray();
+		assertEquals(original.length, forked.length);
+		for (int beat = 0; beat < original.length; beat++) {
+			assertSame(original[beat], forked[beat]);
+		}
+	}
+	
+	/**
+	 * Test that generating a forked song leaves the original untouched.
+	 */
+	@Test
+	public void testForkIsIndependent() {
+		Song song = new Song(NoteName.D, ScaleType.MINOR, 120, 10);
+		for (int beat = 0; beat < 8; beat++) {
+			song.addBeat();
+		}
+		ColumnarSong before = ColumnarSong.fromSong(song);
+		
+		// Keep going on the fork, which may add non-chord tones to the last
+		// shared beat.
+		Song fork = song.fork();
+		for (int beat = 0; beat < 8; beat++) {
+			fork.addBeat();
+		}
+		ColumnarSong after = ColumnarSong.fromSong(song);
+		
+		assertEquals(8, song.getBeatArray().length);
+		assertEquals(16, fork.getBeatArray().length);
+		for (int voice = 0; voice < song.getNumVoices(); voice++) {
+			assertArrayEquals(before.getPitchesSecondHalf(voice),
+					after.getPitchesSecondHalf(voice));
+		}
+	}
+	
+	/**
+	 * Test that a song is exactly as many phrases long as it needs to be.
+	 */
+	@Test
+	public void testPlannedLength() {
+		// 30 seconds at 120 BPM is 60 beats, which takes 4 phrases of 16.
+		Song song = new Song(NoteName.G, ScaleType.MAJOR, 120, 30);
+		assertEquals(4, song.getPlannedPhraseCount());
+		song.generateSong();
+		assertEquals(64, song.getBeatArray().length);
+	}
+	
+	/**
+	 * Test that the last phrase ends with an authentic cadence.
+	 */
+	@Test
+	public void testEndsWithAuthenticCadence() {
+		Song song = new Song(NoteName.E, ScaleType.MINOR, 100, 20);
+		song.generateSong();
+		Beat[] beats = song.getBeatArray();
+		
+		// The last measure holds out the tonic, after a dominant.
+		int lastMeasure = beats.length - 4;
+		assertEquals(ChordFunction.DOMINANT,
+				beats[lastMeasure - 2].getChord().getFunction());
+		for (int beat = lastMeasure - 1; beat < beats.length; beat++) {
+			assertEquals(ChordFunction.TONIC,
+					beats[beat].getChord().getFunction());
+		}
+	}
+	
+	/**
+	 * Test that regenerating a window leaves the beats around it alone.
+	 */
+	@Test
+	public void testRegenerateKeepsOutsideBeats() throws Exception {
+		Song song = new Song(NoteName.F, ScaleType.MAJOR, 120, 30);
+		song.generateSong();
+		Beat[] before = song.getBeatArray();
+		
+		song.regenerate(20, 24);
+		Beat[] after = song.getBeatArray();
+		
+		assertEquals(before.length, after.length);
+		for (int beat = 0; beat < 19; beat++) {
+			assertSame(before[beat], after[beat]);
+		}
+		for (int beat = 25; beat < before.length; beat++) {
+			assertSame(before[beat], after[beat]);
+		}
+		
+		// The beat after the window keeps its notes.
+		assertTrue(FugueUtil.arraysAreEqual(before[24].getChordTones(),
+				after[24].getChordTones()));
+	}
+	
+	/**
+	 * Test that regenerating a window never rewrites the beats before it,
+	 * even when nothing can follow the beat before the window.
+	 */
+	@Test
+	public void testRegenerateKeepsPrefix() {
+		Song song = new Song(NoteName.B, ScaleType.MINOR, 120, 30);
+		song.generateSong();
+		Beat[] before = song.getBeatArray();
+		
+		// Reject every beat after the one before the window, so the only way
+		// to fill the window would be to write that beat over again.
+		final Beat blocked = before[19];
+		song.getRules().add(new BeatRule() {
+			@Override
+			public String getName() {
+				return "Blocked";
+			}
+			
+			@Override
+			public boolean checkBeat(Note[] notes, long signature,
+					Chord chord, Beat prevBeat) {
+				return prevBeat != blocked;
+			}
+		});
+		
+		try {
+			song.regenerate(20, 24);
+			fail("Rewrote the beat before the window");
+		} catch (InvalidChordException ex) {
+			// expected
+		}
+		Beat[] after = song.getBeatArray();
+		assertEquals(before.length, after.length);
+		for (int beat = 0; beat < before.length; beat++) {
+			assertSame(before[beat], after[beat]);
+		}
+	}
+	
+	/**
+	 * Test that a regenerated song is ornamented just as ornamenting its
+	 * beats from scratch would, seams included.
+	 * 
+	 * @throws Exception
+	 * 			If a window can't be regenerated
+	 */
+	@Test
+	public void testRegenerateOrnaments() throws Exception {
+		for (int count = 0; count < 10; count++) {
+			Song song = new Song(NoteName.values()[count], ScaleType.MAJOR,
+					120, 30);
+			song.generateSong();
+			song.regenerate(20, 24);
+			
+			Beat[] beats = song.getBeatArray();
+			Beat[] expected = Ornamenter.ornamentAll(beats,
+					new ForkJoinPool(2));
+			for (int beat = 0; beat < beats.length; beat++) {
+				assertTrue(FugueUtil.arraysAreEqual(
+						expected[beat].getNotesSecondHalf(),
+						beats[beat].getNotesSecondHalf()));
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+
+import javax.sound.midi.*;
+
+import notes.*;
+import notes.scales.MajorScale;
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.MidiFileWriter;
+import controller.StreamingMidiWriter;
+
+/**
+ * Unit tests for the StreamingMidiWriter class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class StreamingMidiWriterTest {
+	
+	/**
+	 * The number of beats to write, enough to be written out in pieces
+	 */
+	private static final int NUM_BEATS = 4000;
+	
+	/**
+	 * Test that a long song written to a file, in pieces, comes out the same
+	 * as one written to a pipe all at once, and reads back with every note.
+	 * 
+	 * @throws IOException
+	 * 			If the song can't be written
+	 * @throws InvalidMidiDataException
+	 * 			If the file can't be read back
+	 */
+	@Test
+	public void testFileMatchesPipe()
+			throws IOException, InvalidMidiDataException {
+		File file = File.createTempFile("stream", ".mid");
+		file.deleteOnExit();
+		ByteArrayOutputStream piped = new ByteArrayOutputStream();
+		try (StreamingMidiWriter fileWriter =
+					StreamingMidiWriter.open(file, 4, 120);
+				StreamingMidiWriter pipeWriter = new StreamingMidiWriter(
+					Channels.newChannel(piped), 4, 120)) {
+			writeBeats(fileWriter);
+			writeBeats(pipeWriter);
+			assertEquals(NUM_BEATS, fileWriter.getNumBeats());
+		}
+		
+		byte[] written = Files.readAllBytes(file.toPath());
+		assertArrayEquals(piped.toByteArray(), written);
+		
+		Sequence sequence = MidiSystem.getSequence(file);
+		assertEquals(1, sequence.getTracks().length);
+		assertEquals(MidiFileWriter.TICKS_PER_BEAT * NUM_BEATS,
+				sequence.getTickLength());
+		int noteOns = 0;
+		Track track = sequence.getTracks()[0];
+		for (int indx = 0; indx < track.size(); indx++) {
+			MidiMessage message = track.get(indx).getMessage();
+			if (message instanceof ShortMessage && ((ShortMessage) message)
+					.getCommand() == ShortMessage.NOTE_ON) {
+				noteOns++;
+			}
+		}
+		
+		// Every other beat moves the soprano halfway through.
+		assertEquals(4 * NUM_BEATS + NUM_BEATS / 2, noteOns);
+	}
+	
+	/**
+	 * Writes the test's beats.
+	 * 
+	 * @param writer
+	 * 			Where to write them
+	 * @throws IOException
+	 * 			If the beats can't be written
+	 */
+	private void writeBeats(StreamingMidiWriter writer) throws IOException {
+		Chord chord = new Chord(NoteName.C, ChordType.MAJOR,
+				ChordFunction.TONIC, new MajorScale(NoteName.C));
+		Note[] notes = {new Note(48), new Note(55), new Note(64),
+				new Note(72)};
+		Note[] passing = {new Note(48), new Note(55), new Note(64),
+				new Note(74)};
+		for (int beat = 0; beat < NUM_BEATS; beat++) {
+			Note[] secondHalf = beat % 2 == 0 ? passing : notes;
+			writer.addBeat(new Beat(chord, null, notes, secondHalf,
+					new boolean[4]));
+		}
+	}
+}
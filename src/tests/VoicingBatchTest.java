@@ -0,0 +1,64 @@
+package tests;
+
+import static controller.Rules.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import notes.*;
+import notes.scales.MajorScale;
+import notes.types.*;
+
+import org.junit.Test;
+
+import controller.VoicingBatch;
+
+/**
+ * Unit tests for the VoicingBatch class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class VoicingBatchTest {
+	
+	/**
+	 * Test that the batch agrees with the Rules class on random voicings.
+	 */
+	@Test
+	public void testMatchesRules() {
+		Chord chord = new Chord(NoteName.G, ChordType.MAJOR,
+				ChordFunction.DOMINANT, new MajorScale(NoteName.C));
+		Note[] prevNotes = {new Note(48), new Note(55), new Note(64),
+				new Note(72)};
+		Random randomizer = new Random(7);
+		
+		// Add more voicings than the batch starts with room for.
+		VoicingBatch batch = new VoicingBatch(4, 16);
+		Note[][] voicings = new Note[500][];
+		for (int candidate = 0; candidate < voicings.length; candidate++) {
+			voicings[candidate] = new Note[4];
+			for (int voice = 0; voice < 4; voice++) {
+				voicings[candidate][voice] =
+						new Note(43 + randomizer.nextInt(36));
+			}
+			batch.add(voicings[candidate]);
+		}
+		
+		boolean[] valid = new boolean[batch.size()];
+		int numValid = batch.evaluate(chord, prevNotes, valid);
+		
+		int expectedValid = 0;
+		for (int candidate = 0; candidate < voicings.length; candidate++) {
+			Note[] voicing = voicings[candidate];
+			boolean expected = containsAllChordTones(voicing, chord)
+					&& noParallelFifths(voicing, prevNotes);
+			for (int voice = 0; voice < 4; voice++) {
+				expected &= isValidLeap(voicing[voice], prevNotes[voice],
+						false);
+			}
+			assertEquals(expected, valid[candidate]);
+			expectedValid += expected ? 1 : 0;
+		}
+		assertEquals(expectedValid, numValid);
+	}
+}
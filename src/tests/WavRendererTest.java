@@ -0,0 +1,89 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import notes.types.*;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import controller.ColumnarSong;
+import controller.Song;
+import controller.WavRenderer;
+import exceptions.MidiExportException;
+
+/**
+ * Unit tests for the WavRenderer class.
+ * 
+ * @author Dan Pang
+ *
+ */
+public class WavRendererTest {
+	
+	/**
+	 * Test that a batch of songs renders to WAV files of the right length,
+	 * with sound in them.
+	 * 
+	 * @throws Exception
+	 * 			If a song can't be rendered
+	 */
+	@Test
+	public void testRenderAll() throws Exception {
+		assumeRendererAvailable();
+		
+		List<ColumnarSong> songs = new ArrayList<>();
+		List<File> files = new ArrayList<>();
+		for (int indx = 0; indx < 3; indx++) {
+			Song song = new Song(NoteName.D, ScaleType.MAJOR, 240, 8 + indx);
+			song.generateSong();
+			songs.add(ColumnarSong.fromSong(song));
+			File file = File.createTempFile("render", ".wav");
+			file.deleteOnExit();
+			files.add(file);
+		}
+		WavRenderer.renderAll(songs, files, 2);
+		
+		for (int indx = 0; indx < songs.size(); indx++) {
+			// The song, plus a second for the last notes to fade out
+			float seconds = songs.get(indx).getNumBeats() * 60
+					/ songs.get(indx).getBPM() + 1;
+			try (AudioInputStream stream =
+					AudioSystem.getAudioInputStream(files.get(indx))) {
+				assertEquals(seconds * WavRenderer.FORMAT.getFrameRate(),
+						stream.getFrameLength(), 1);
+				byte[] audio = new byte[(int) stream.getFrameLength()
+						* WavRenderer.FORMAT.getFrameSize()];
+				int length = 0;
+				while (length < audio.length) {
+					length += stream.read(audio, length,
+							audio.length - length);
+				}
+				boolean silent = true;
+				for (byte sample : audio) {
+					silent &= sample == 0;
+				}
+				assertFalse(silent);
+			}
+		}
+	}
+	
+	/**
+	 * Skips the test if the JVM won't let a renderer open the synthesizer
+	 * as a stream, which needs
+	 * --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED
+	 */
+	private static void assumeRendererAvailable() {
+		try {
+			new WavRenderer().close();
+		} catch (MidiExportException ex) {
+			Assume.assumeNoException(ex);
+		}
+	}
+}